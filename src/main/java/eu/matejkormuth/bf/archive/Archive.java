@@ -26,16 +26,105 @@
  */
 package eu.matejkormuth.bf.archive;
 
-import lombok.Data;
+import lombok.Getter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-@Data
+/**
+ * Opened BF Archive (pack) file. Whole file is memory mapped and entries
+ * are handed out as read-only zero-copy slices of the mapping.
+ *
+ * @see ArchiveFile
+ */
 public class Archive {
 
-    private final Map<String, File> files = new HashMap<>();
-    private final byte[] data; // long array maybe?
+    @Getter
+    private final Path path;
+    private final MappedByteBuffer data;
+    // sorted by name, binary searched on lookup
+    private final File[] files;
+
+    Archive(Path path, MappedByteBuffer data, File[] files) {
+        this.path = path;
+        this.data = data;
+        this.files = files;
+    }
+
+    public int size() {
+        return files.length;
+    }
+
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(Arrays.asList(files));
+    }
+
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(files.length);
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Finds entry with specified name.
+     *
+     * @param name normalized name of entry (see {@link ArchiveFile#normalize(String)})
+     * @return entry or null if this archive does not contain such entry
+     */
+    public File find(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : files[index];
+    }
+
+    /**
+     * Returns read-only slice of mapped data for entry with specified name. No data is
+     * copied, returned buffer starts at position zero and its limit is the entry length.
+     *
+     * @param name normalized name of entry
+     * @return slice of the entry data
+     */
+    public ByteBuffer slice(String name) {
+        File file = find(name);
+        if (file == null) {
+            throw new IllegalArgumentException("File \"" + name + "\" not found in archive " + path + "!");
+        }
+        return slice(file);
+    }
+
+    public ByteBuffer slice(File file) {
+        ByteBuffer buffer = data.asReadOnlyBuffer();
+        buffer.position((int) file.getAddress());
+        buffer.limit((int) (file.getAddress() + file.getLength()));
+        return buffer.slice();
+    }
+
+    private int indexOf(String name) {
+        int low = 0;
+        int high = files.length - 1;
 
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = files[mid].getName().compareTo(name);
 
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
 }
@@ -26,6 +26,177 @@
  */
 package eu.matejkormuth.bf.archive;
 
+import eu.matejkormuth.bf.BFUtils;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BF Archive (pack) file. Holds many content files in one file so they can be
+ * read trough single memory mapping instead of opening each of them.
+ * <p>
+ * Layout: header, raw data of all entries, name index, address of name index (long).
+ * Name index is sorted by name so entries can be looked up by binary search.
+ */
+@UtilityClass
+@Slf4j
 public class ArchiveFile {
 
+    public static final byte BF_TYPE = 'A';
+
+    /*
+     * Version history:
+     * 1 - initial version with sorted name index at the tail
+     */
+    public static final byte VERSION = 1;
+
+    public static final String EXTENSION = ".baf";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int HEADER_LENGTH = 4;
+
+    /**
+     * Files that are used by the engine at runtime (images, geometry, shaders and materials).
+     */
+    public static final Predicate<Path> CONTENT_FILES = path -> {
+        String name = path.getFileName().toString();
+        return name.endsWith(".bif") || name.endsWith(".bgf") || name.endsWith(".json")
+                || name.endsWith(".vert") || name.endsWith(".frag") || name.endsWith(".geom")
+                || name.endsWith(".tcs") || name.endsWith(".tes") || name.endsWith(".glsl");
+    };
+
+    /**
+     * Converts path relative to content root to name used in archive index.
+     */
+    public static String normalize(String name) {
+        name = name.replace('\\', '/');
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+    public static String normalize(Path relative) {
+        return normalize(relative.toString());
+    }
+
+    public static Archive open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("Can't map archive larger than 2 GB! (" + path + ")");
+            }
+            if (size < HEADER_LENGTH + 8) {
+                throw new RuntimeException("Not a BF Archive file! (File too short)");
+            }
+            // mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (data.get() != BFUtils.HEADER[0] || data.get() != BFUtils.HEADER[1]) {
+            throw new RuntimeException("Not a BF file! (Header mismatch)");
+        }
+        if (data.get() != BF_TYPE) {
+            throw new RuntimeException("Not a BF Archive file! (File Type mismatch)");
+        }
+        if (data.get() > VERSION) {
+            throw new RuntimeException("Can't read this file! (Version mismatch)");
+        }
+
+        long indexAddress = data.getLong(data.capacity() - 8);
+        data.position((int) indexAddress);
+
+        File[] files = new File[data.getInt()];
+        for (int i = 0; i < files.length; i++) {
+            byte[] name = new byte[data.getInt()];
+            data.get(name);
+            files[i] = new File(new String(name, CHARSET), data.getLong(), data.getLong());
+
+            if (i > 0 && files[i - 1].getName().compareTo(files[i].getName()) >= 0) {
+                throw new RuntimeException("Archive index is not sorted! (" + files[i].getName() + ")");
+            }
+        }
+        data.clear();
+
+        log.info("Mounted archive {} with {} files.", path, files.length);
+        return new Archive(path, data, files);
+    }
+
+    /**
+     * Packs all files from specified root accepted by filter to one archive.
+     *
+     * @param root   content root
+     * @param output archive file to create
+     * @param filter filter of files to include
+     * @return index of created archive
+     * @throws IOException
+     */
+    public static List<File> save(Path root, Path output, Predicate<Path> filter) throws IOException {
+        SortedMap<String, Path> entries = new TreeMap<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.filter(Files::isRegularFile).filter(filter).collect(Collectors.toList())) {
+                entries.put(normalize(root.relativize(path)), path);
+            }
+        }
+        return save(entries, output);
+    }
+
+    /**
+     * Writes specified entries to archive.
+     *
+     * @param entries map of normalized names to source files
+     * @param output  archive file to create
+     * @return index of created archive
+     * @throws IOException
+     */
+    public static List<File> save(SortedMap<String, Path> entries, Path output) throws IOException {
+        List<File> index = new ArrayList<>(entries.size());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            BFUtils.writeHeader(out);
+            out.writeByte(BF_TYPE);
+            out.writeByte(VERSION);
+
+            long address = HEADER_LENGTH;
+            for (Map.Entry<String, Path> entry : entries.entrySet()) {
+                long length = Files.copy(entry.getValue(), out);
+                index.add(new File(entry.getKey(), address, length));
+                address += length;
+
+                if (address > Integer.MAX_VALUE) {
+                    throw new RuntimeException("Archive would be larger than 2 GB!");
+                }
+            }
+
+            out.writeInt(index.size());
+            for (File file : index) {
+                byte[] name = file.getName().getBytes(CHARSET);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(file.getAddress());
+                out.writeLong(file.getLength());
+            }
+
+            out.writeLong(address);
+        }
+
+        return index;
+    }
 }
@@ -28,6 +28,9 @@ package eu.matejkormuth.bf.archive;
 
 import lombok.Data;
 
+/**
+ * Entry of the archive index. Address is absolute offset of entry data in the archive file.
+ */
 @Data
 public class File {
     private final String name;
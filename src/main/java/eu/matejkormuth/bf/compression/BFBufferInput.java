@@ -0,0 +1,358 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import eu.matejkormuth.lpsim.ColorSpace;
+import eu.matejkormuth.lpsim.Format;
+import eu.matejkormuth.math.vectors.Vector2f;
+import eu.matejkormuth.math.vectors.Vector3f;
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * BF reader backed by ByteBuffer (usually memory mapped file or slice of mapped archive).
+ * After decompression whole payload is in one buffer and arrays are read in bulk trough
+ * float and int views instead of element by element.
+ */
+public class BFBufferInput implements BFInput {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @Getter
+    private ByteBuffer buffer;
+
+    /**
+     * Creates a reader of remaining bytes of specified buffer. Buffer itself is not modified.
+     *
+     * @param buffer source buffer
+     */
+    public BFBufferInput(ByteBuffer buffer) {
+        // BF files are big-endian as they are written by DataOutputStream
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    public void decompress() throws IOException {
+        decompressBlocks();
+    }
+
+    @Override
+    public void decompressLZ4() throws IOException {
+        int uncompressedLength = buffer.getInt();
+        int compressedLength = buffer.getInt();
+
+        ByteBuffer uncompressed = ByteBuffer.allocate(uncompressedLength);
+        CompressionUtil.decompressor().decompress(buffer, buffer.position(), uncompressed, 0, uncompressedLength);
+        buffer.position(buffer.position() + compressedLength);
+
+        buffer = uncompressed;
+    }
+
+    @Override
+    public void decompressBlocks() throws IOException {
+        decompressBlocks(BlockFraming.PREFIXED);
+    }
+
+    @Override
+    public void decompressBlocks(BlockFraming framing) throws IOException {
+        ByteBuffer uncompressed = ByteBuffer.allocate(buffer.getInt(buffer.position()));
+        readBlocks(uncompressed, framing);
+        buffer = uncompressed;
+    }
+
+    @Override
+    public void readBlocks(ByteBuffer dest) throws IOException {
+        readBlocks(dest, BlockFraming.PREFIXED);
+    }
+
+    @Override
+    public void readBlocks(ByteBuffer dest, BlockFraming framing) {
+        int uncompressedLength = buffer.getInt();
+        if (uncompressedLength != dest.remaining()) {
+            throw new RuntimeException("Invalid length of framed data! (" + uncompressedLength
+                    + " bytes, expected " + dest.remaining() + ")");
+        }
+        int blockSize = buffer.getInt();
+        CompressionUtil.checkBlockSize(blockSize);
+
+        int blocks;
+        Codec[] codecs = null;
+        int[] compressedLengths = null;
+        if (framing == BlockFraming.PREFIXED) {
+            blocks = BlockInputStream.blockCount(uncompressedLength, blockSize);
+        } else {
+            blocks = buffer.getInt();
+            codecs = new Codec[blocks];
+            compressedLengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                codecs[i] = framing == BlockFraming.TABLE ? CodecRegistry.get(buffer.get() & 0xFF) : CodecRegistry.LZ4_HC;
+                compressedLengths[i] = buffer.getInt();
+            }
+        }
+
+        // Blocks are decompressed straight from the source buffer.
+        for (int i = 0; i < blocks; i++) {
+            Codec codec;
+            int compressedLength;
+            if (codecs == null) {
+                codec = CodecRegistry.get(buffer.get() & 0xFF);
+                compressedLength = buffer.getInt();
+            } else {
+                codec = codecs[i];
+                compressedLength = compressedLengths[i];
+            }
+
+            int offset = i * blockSize;
+            codec.decompress(buffer, buffer.position(), compressedLength, dest, dest.position() + offset, Math.min(blockSize, uncompressedLength - offset));
+            buffer.position(buffer.position() + compressedLength);
+        }
+    }
+
+    @Override
+    public byte[] readCompressed(Codec codec, int compressedLength, int length) throws IOException {
+        // decompressed straight from the source buffer
+        byte[] data = new byte[length];
+        codec.decompress(buffer, buffer.position(), compressedLength, ByteBuffer.wrap(data), 0, length);
+        buffer.position(buffer.position() + compressedLength);
+        return data;
+    }
+
+    @Override
+    public void readCompressed(Codec codec, int compressedLength, ByteBuffer dest) throws IOException {
+        codec.decompress(buffer, buffer.position(), compressedLength, dest, dest.position(), dest.remaining());
+        buffer.position(buffer.position() + compressedLength);
+    }
+
+    /**
+     * Returns view of next bytes and skips them.
+     */
+    public ByteBuffer sliceBytes(int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Returns float view of next floats and skips them. No data is copied.
+     */
+    public FloatBuffer sliceFloats(int count) {
+        FloatBuffer slice = buffer.asFloatBuffer();
+        slice.limit(count);
+        buffer.position(buffer.position() + count * Float.BYTES);
+        return slice;
+    }
+
+    /**
+     * Returns int view of next ints and skips them. No data is copied.
+     */
+    public IntBuffer sliceInts(int count) {
+        IntBuffer slice = buffer.asIntBuffer();
+        slice.limit(count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return slice;
+    }
+
+    @Override
+    public void readFully(ByteBuffer dest) throws IOException {
+        dest.put(sliceBytes(dest.remaining()));
+    }
+
+    @Override
+    public void readFloats(FloatBuffer dest) throws IOException {
+        dest.put(sliceFloats(dest.remaining()));
+    }
+
+    @Override
+    public void readInts(IntBuffer dest) throws IOException {
+        dest.put(sliceInts(dest.remaining()));
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (buffer.remaining() < len) {
+            throw new EOFException();
+        }
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return buffer.getDouble();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    @Override
+    public Format readImageFormat() throws IOException {
+        int bitsPerPixel = readUnsignedByte();
+        int channels = readUnsignedByte();
+        int colorSpaceCode = readUnsignedByte();
+        return new Format(channels, bitsPerPixel, ColorSpace.valueOf(colorSpaceCode));
+    }
+
+    @Override
+    public String readString() throws IOException {
+        byte[] array = new byte[buffer.getInt()];
+        readFully(array);
+        return new String(array, CHARSET);
+    }
+
+    @Override
+    public Vector3f[] readVector3fArray() throws IOException {
+        int length = buffer.getInt();
+        float[] floats = new float[length * 3];
+        sliceFloats(floats.length).get(floats);
+
+        Vector3f[] array = new Vector3f[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = new Vector3f(floats[i * 3], floats[i * 3 + 1], floats[i * 3 + 2]);
+        }
+        return array;
+    }
+
+    @Override
+    public Vector2f[] readVector2fArray() throws IOException {
+        int length = buffer.getInt();
+        float[] floats = new float[length * 2];
+        sliceFloats(floats.length).get(floats);
+
+        Vector2f[] array = new Vector2f[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = new Vector2f(floats[i * 2], floats[i * 2 + 1]);
+        }
+        return array;
+    }
+
+    @Override
+    public int[] readIntArray() throws IOException {
+        int[] array = new int[buffer.getInt()];
+        sliceInts(array.length).get(array);
+        return array;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import eu.matejkormuth.lpsim.Format;
+import eu.matejkormuth.math.vectors.Vector2f;
+import eu.matejkormuth.math.vectors.Vector3f;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Source of BF file data. Implemented by stream based {@link BFInputStream} and
+ * ByteBuffer based {@link BFBufferInput}.
+ */
+public interface BFInput extends DataInput, Closeable {
+
+    /**
+     * Automatically decompresses remaining bytes with current compression type.
+     */
+    void decompress() throws IOException;
+
+    /**
+     * Decompresses remaining bytes compressed as one LZ4 stream (BF files version 1).
+     */
+    void decompressLZ4() throws IOException;
+
+    /**
+     * Decompresses remaining bytes framed as independently compressed blocks written
+     * by {@link BlockOutputStream} ({@link BlockFraming#PREFIXED}).
+     */
+    void decompressBlocks() throws IOException;
+
+    /**
+     * Decompresses remaining bytes framed as independently compressed blocks with
+     * specified layout (older BF files have block table before blocks).
+     */
+    void decompressBlocks(BlockFraming framing) throws IOException;
+
+    /**
+     * Reads next compressedLength bytes and decompresses them with specified codec.
+     *
+     * @param length uncompressed length
+     * @return uncompressed bytes
+     */
+    byte[] readCompressed(Codec codec, int compressedLength, int length) throws IOException;
+
+    /**
+     * Reads next compressedLength bytes and decompresses them with specified codec to
+     * remaining bytes of specified buffer. Position of buffer is not modified.
+     */
+    void readCompressed(Codec codec, int compressedLength, ByteBuffer dest) throws IOException;
+
+    /**
+     * Reads data framed as independently compressed blocks (see {@link BlockOutputStream}) and
+     * decompresses it block by block to remaining bytes of specified buffer. Uncompressed length
+     * of framed data must match remaining bytes. Position of buffer is not modified.
+     */
+    void readBlocks(ByteBuffer dest) throws IOException;
+
+    /**
+     * Reads data framed as independently compressed blocks with specified layout, otherwise
+     * the same as {@link #readBlocks(ByteBuffer)}.
+     */
+    void readBlocks(ByteBuffer dest, BlockFraming framing) throws IOException;
+
+    /**
+     * Reads bytes until specified buffer is full.
+     */
+    void readFully(ByteBuffer dest) throws IOException;
+
+    /**
+     * Reads floats until specified buffer is full.
+     */
+    void readFloats(FloatBuffer dest) throws IOException;
+
+    /**
+     * Reads ints until specified buffer is full.
+     */
+    void readInts(IntBuffer dest) throws IOException;
+
+    Format readImageFormat() throws IOException;
+
+    String readString() throws IOException;
+
+    Vector3f[] readVector3fArray() throws IOException;
+
+    Vector2f[] readVector2fArray() throws IOException;
+
+    int[] readIntArray() throws IOException;
+}
@@ -33,14 +33,19 @@ import eu.matejkormuth.math.vectors.Vector3f;
 import net.jpountz.lz4.LZ4FastDecompressor;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.Charset;
 
-public class BFInputStream implements DataInput {
+public class BFInputStream implements BFInput {
 
     public static long totalAllocatedLength;
 
     private InputStream original;
     private DataInputStream in;
+    // For block framed LZ4 compression.
+    private BlockInputStream blocks;
 
     /**
      * Creates a BFInputStream that uses the specified
@@ -60,7 +65,22 @@ public class BFInputStream implements DataInput {
      * @throws IOException
      */
     public void decompress() throws IOException {
-        decompressLZ4();
+        decompressBlocks();
+    }
+
+    /**
+     * Starts streaming decompression of remaining bytes in stream framed as independently
+     * compressed blocks. Only one block is held in memory at a time.
+     *
+     * @throws IOException
+     */
+    public void decompressBlocks() throws IOException {
+        decompressBlocks(BlockFraming.PREFIXED);
+    }
+
+    public void decompressBlocks(BlockFraming framing) throws IOException {
+        blocks = new BlockInputStream(in, framing);
+        in = new DataInputStream(blocks);
     }
 
 
@@ -87,6 +107,40 @@ public class BFInputStream implements DataInput {
         in = new DataInputStream(new ByteArrayInputStream(uncompressed));
     }
 
+    @Override
+    public byte[] readCompressed(Codec codec, int compressedLength, int length) throws IOException {
+        byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed);
+
+        byte[] data = new byte[length];
+        codec.decompress(compressed, 0, compressedLength, data, 0, length);
+        return data;
+    }
+
+    @Override
+    public void readCompressed(Codec codec, int compressedLength, ByteBuffer dest) throws IOException {
+        byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed);
+
+        codec.decompress(ByteBuffer.wrap(compressed), 0, compressedLength, dest, dest.position(), dest.remaining());
+    }
+
+    @Override
+    public void readBlocks(ByteBuffer dest) throws IOException {
+        readBlocks(dest, BlockFraming.PREFIXED);
+    }
+
+    @Override
+    public void readBlocks(ByteBuffer dest, BlockFraming framing) throws IOException {
+        // Only one compressed block is held in memory, whole blocks go straight to dest.
+        BlockInputStream blocks = new BlockInputStream(in, framing);
+        if (blocks.getUncompressedLength() != dest.remaining()) {
+            throw new RuntimeException("Invalid length of framed data! (" + blocks.getUncompressedLength()
+                    + " bytes, expected " + dest.remaining() + ")");
+        }
+        blocks.readFully(dest.duplicate());
+    }
+
     public void close() throws IOException {
         in.close();
         this.original = null;
@@ -102,6 +156,38 @@ public class BFInputStream implements DataInput {
         in.readFully(b, off, len);
     }
 
+    /**
+     * Reads bytes until specified buffer is full. If block compression is used, blocks
+     * are decompressed directly into the buffer without intermediate arrays.
+     *
+     * @param dest buffer to fill
+     * @throws IOException
+     */
+    public void readFully(ByteBuffer dest) throws IOException {
+        if (blocks != null) {
+            blocks.readFully(dest);
+            return;
+        }
+
+        byte[] array = new byte[dest.remaining()];
+        in.readFully(array);
+        dest.put(array);
+    }
+
+    @Override
+    public void readFloats(FloatBuffer dest) throws IOException {
+        while (dest.hasRemaining()) {
+            dest.put(in.readFloat());
+        }
+    }
+
+    @Override
+    public void readInts(IntBuffer dest) throws IOException {
+        while (dest.hasRemaining()) {
+            dest.put(in.readInt());
+        }
+    }
+
     @Override
     public int skipBytes(int n) throws IOException {
         return in.skipBytes(n);
@@ -41,6 +41,8 @@ public class BFOutputStream implements DataOutput {
 
     // For LZ4 compression.
     private ByteArrayOutputStream lz4FakeStream = null;
+    // For block framed LZ4 compression.
+    private BlockOutputStream blockStream = null;
 
     /**
      * Creates a new BFOutputStream to write data to the specified
@@ -61,7 +63,7 @@ public class BFOutputStream implements DataOutput {
     }
 
     public void close() throws IOException {
-        if (lz4FakeStream != null) {
+        if (lz4FakeStream != null || blockStream != null) {
             throw new RuntimeException("Forget to call compressFinish()?");
         }
 
@@ -70,14 +72,27 @@ public class BFOutputStream implements DataOutput {
     }
 
     /**
-     * Automatically starts compression in specified format. Uncompressed size is used for
-     * optimizing memory usage of compression with reflection hack.
+     * Automatically starts compression in specified format.
      *
-     * @param uncompressedSize amount of bytes that will be written before calling compressFinish()
+     * @param uncompressedSize exact amount of bytes that will be written before calling compressFinish()
      * @throws IOException
      */
     public void compressStart(int uncompressedSize) throws IOException {
-        this.compressStartLZ4(uncompressedSize);
+        this.compressStartBlocks(uncompressedSize);
+    }
+
+    /**
+     * Starts compression of independent blocks with codec from {@link CompressionUtil#getCodec()} and
+     * block size from {@link CompressionUtil#getBlockSize()}. Blocks are written to underlying stream
+     * as they are compressed.
+     *
+     * @param uncompressedSize exact amount of bytes that will be written before calling compressFinish()
+     * @throws IOException
+     */
+    public void compressStartBlocks(int uncompressedSize) throws IOException {
+        out.flush();
+        blockStream = new BlockOutputStream(original, CompressionUtil.getCodec(), CompressionUtil.getBlockSize(), uncompressedSize);
+        out = new DataOutputStream(blockStream);
     }
 
 
@@ -91,6 +106,15 @@ public class BFOutputStream implements DataOutput {
     }
 
     public void compressFinish() throws IOException {
+        // If we were compressing blocks write remaining blocks.
+        if (blockStream != null) {
+            out.flush();
+
+            blockStream.finish();
+            original.close();
+            blockStream = null;
+        }
+
         // If we were compressing LZ4 finish compression.
         if (lz4FakeStream != null) {
             out.flush();
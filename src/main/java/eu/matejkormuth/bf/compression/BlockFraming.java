@@ -0,0 +1,52 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+/**
+ * Layouts of data framed as independently compressed blocks. All of them start with
+ * uncompressed length and block size (ints).
+ *
+ * @see BlockOutputStream
+ * @see BlockInputStream
+ */
+public enum BlockFraming {
+    /**
+     * Block count and table of compressed block lengths (ints) before blocks, all blocks
+     * are LZ4 HC (BF files version 2).
+     */
+    TABLE_WITHOUT_CODECS,
+    /**
+     * Block count and table of codec ids and compressed block lengths (byte, int) before
+     * blocks (BIF version 3, BGF versions 3 and 12).
+     */
+    TABLE,
+    /**
+     * Codec id and compressed length (byte, int) before each block. Blocks are written as
+     * soon as they are compressed. Written by {@link BlockOutputStream}.
+     */
+    PREFIXED
+}
@@ -0,0 +1,222 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams data framed by {@link BlockOutputStream}. Blocks are read and decompressed one
+ * at a time into single reusable buffer, so memory usage does not depend on the size of file.
+ */
+public class BlockInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final BlockFraming framing;
+    @Getter
+    private final int uncompressedLength;
+    private final int blockCount;
+    // codecs and compressed lengths of block table, null for prefixed blocks
+    private final Codec[] codecs;
+    private final int[] compressedLengths;
+
+    private byte[] compressed;
+    private ByteBuffer compressedBuffer;
+    private int compressedLength = 0;
+    private final byte[] block;
+    private int nextBlock = 0;
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Reads framing header (and block table) from specified stream. Stream must be
+     * positioned at the start of framed data.
+     *
+     * @param in      stream with compressed data
+     * @param framing layout of blocks, depends on version of BF file
+     * @throws IOException
+     */
+    public BlockInputStream(DataInputStream in, BlockFraming framing) throws IOException {
+        this.in = in;
+        this.framing = framing;
+        this.uncompressedLength = in.readInt();
+        int blockSize = in.readInt();
+        CompressionUtil.checkBlockSize(blockSize);
+
+        int maxCompressedLength = 0;
+        if (framing == BlockFraming.PREFIXED) {
+            this.blockCount = blockCount(uncompressedLength, blockSize);
+            this.codecs = null;
+            this.compressedLengths = null;
+            // raw blocks are not larger than block size, it is grown if some block is
+            maxCompressedLength = Math.min(blockSize, uncompressedLength);
+        } else {
+            this.blockCount = in.readInt();
+            this.codecs = new Codec[blockCount];
+            this.compressedLengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                codecs[i] = framing == BlockFraming.TABLE ? CodecRegistry.get(in.readUnsignedByte()) : CodecRegistry.LZ4_HC;
+                compressedLengths[i] = in.readInt();
+                maxCompressedLength = Math.max(maxCompressedLength, compressedLengths[i]);
+            }
+        }
+
+        this.compressed = new byte[maxCompressedLength];
+        this.compressedBuffer = ByteBuffer.wrap(compressed);
+        this.block = new byte[Math.min(blockSize, uncompressedLength)];
+    }
+
+    /**
+     * Returns count of blocks of data of specified length.
+     */
+    public static int blockCount(int uncompressedLength, int blockSize) {
+        return (int) ((uncompressedLength + (long) blockSize - 1) / blockSize);
+    }
+
+    // Reads compressed data of next block to compressed array and returns its codec.
+    private Codec readBlock() throws IOException {
+        Codec codec;
+        if (framing == BlockFraming.PREFIXED) {
+            codec = CodecRegistry.get(in.readUnsignedByte());
+            compressedLength = in.readInt();
+        } else {
+            codec = codecs[nextBlock];
+            compressedLength = compressedLengths[nextBlock];
+        }
+
+        if (compressedLength > compressed.length) {
+            compressed = new byte[compressedLength];
+            compressedBuffer = ByteBuffer.wrap(compressed);
+        }
+        in.readFully(compressed, 0, compressedLength);
+        return codec;
+    }
+
+    private boolean fill() throws IOException {
+        if (nextBlock == blockCount) {
+            return false;
+        }
+
+        int length = blockLength(nextBlock);
+        Codec codec = readBlock();
+        codec.decompress(compressed, 0, compressedLength, block, 0, length);
+
+        nextBlock++;
+        position = 0;
+        limit = length;
+        return true;
+    }
+
+    private int blockLength(int index) {
+        return Math.min(block.length, uncompressedLength - index * block.length);
+    }
+
+    /**
+     * Reads bytes until specified buffer is full. Whole blocks are decompressed directly
+     * into the buffer (for example pooled direct buffer) without going trough block buffer.
+     *
+     * @param dest buffer to fill
+     * @throws IOException
+     */
+    public void readFully(ByteBuffer dest) throws IOException {
+        // rest of current block first
+        int count = Math.min(dest.remaining(), limit - position);
+        dest.put(block, position, count);
+        position += count;
+
+        while (dest.hasRemaining()) {
+            if (nextBlock == blockCount) {
+                throw new EOFException();
+            }
+
+            int length = blockLength(nextBlock);
+            if (dest.remaining() >= length) {
+                Codec codec = readBlock();
+                codec.decompress(compressedBuffer, 0, compressedLength, dest, dest.position(), length);
+                dest.position(dest.position() + length);
+                nextBlock++;
+            } else {
+                fill();
+                count = dest.remaining();
+                dest.put(block, 0, count);
+                position = count;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !fill()) {
+            return -1;
+        }
+
+        int count = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            int count = (int) Math.min(n - skipped, limit - position);
+            position += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits written bytes into blocks of fixed size, compresses each block independently
+ * with specified codec and writes it to underlying stream as soon as it is compressed.
+ * Only one uncompressed block (and blocks being compressed in parallel) are held in memory.
+ * Blocks that do not compress below {@link CompressionUtil#getRawThreshold()} of their size
+ * are stored raw, so they cost nothing to decode.
+ * <p>
+ * When parallel compression is enabled blocks are compressed on ForkJoin pool and
+ * written in order. At most two blocks per worker thread are in flight.
+ * <p>
+ * Framing ({@link BlockFraming#PREFIXED}): uncompressed length (int), block size (int), then
+ * codec id and compressed length (byte, int) followed by compressed data of each block.
+ *
+ * @see BlockInputStream
+ */
+public class BlockOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Codec codec;
+    private final float rawThreshold = CompressionUtil.getRawThreshold();
+
+    private byte[] block;
+    private final byte[] scratch;
+    private int position = 0;
+
+    private final ForkJoinPool pool;
+    private final Queue<ForkJoinTask<Block>> pending = new ArrayDeque<>();
+
+    private final int expectedLength;
+    private int uncompressedLength = 0;
+    private long compressedLength = 0;
+
+    /**
+     * Writes framing header to specified stream.
+     *
+     * @param out                stream to write framed blocks to
+     * @param codec              codec to compress blocks with
+     * @param blockSize          size of one uncompressed block
+     * @param uncompressedLength exact amount of bytes that will be written before {@link #finish()}
+     * @throws IOException
+     */
+    public BlockOutputStream(OutputStream out, Codec codec, int blockSize, int uncompressedLength) throws IOException {
+        CompressionUtil.checkBlockSize(blockSize);
+        this.out = out;
+        this.codec = codec;
+        this.block = new byte[blockSize];
+        this.scratch = new byte[codec.maxCompressedLength(blockSize)];
+        this.pool = CompressionUtil.isParallelCompression() ? ForkJoinPool.commonPool() : null;
+        this.expectedLength = uncompressedLength;
+
+        BFOutputStream.streamWrite(out, uncompressedLength);
+        BFOutputStream.streamWrite(out, blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[position++] = (byte) b;
+        if (position == block.length) {
+            compressBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, block.length - position);
+            System.arraycopy(b, off, block, position, count);
+            position += count;
+            off += count;
+            len -= count;
+
+            if (position == block.length) {
+                compressBlock();
+            }
+        }
+    }
+
+    private Block compress(byte[] data, int length, byte[] dest) {
+        int compressedLength = codec.compress(data, 0, length, dest, 0, dest.length);
+        if (compressedLength > length * rawThreshold) {
+            // not worth decoding, store raw
+            return new Block(CodecRegistry.NONE.getId(), data, length);
+        }
+        return new Block(codec.getId(), dest, compressedLength);
+    }
+
+    private void compressBlock() throws IOException {
+        if (pool != null) {
+            compressBlockParallel();
+            return;
+        }
+
+        write(compress(block, position, scratch));
+        uncompressedLength += position;
+        position = 0;
+    }
+
+    private void compressBlockParallel() throws IOException {
+        // Hand the filled block to the task and continue writing to a new one.
+        final byte[] data = block;
+        final int length = position;
+        pending.add(pool.submit(() -> compress(data, length, new byte[codec.maxCompressedLength(length)])));
+
+        uncompressedLength += position;
+        block = new byte[block.length];
+        position = 0;
+
+        while (pending.size() > 2 * pool.getParallelism()) {
+            write(pending.remove().join());
+        }
+    }
+
+    private void write(Block block) throws IOException {
+        out.write(block.codec);
+        BFOutputStream.streamWrite(out, block.length);
+        out.write(block.data, 0, block.length);
+        compressedLength += block.length;
+    }
+
+    /**
+     * Compresses and writes last partial block and blocks still being compressed. Underlying
+     * stream is not closed.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (position > 0) {
+            compressBlock();
+        }
+        while (!pending.isEmpty()) {
+            write(pending.remove().join());
+        }
+
+        if (uncompressedLength != expectedLength) {
+            throw new IllegalStateException("Framed " + uncompressedLength + " bytes, but "
+                    + expectedLength + " bytes were declared in header!");
+        }
+    }
+
+    /**
+     * Returns ratio of compressed and uncompressed bytes written so far.
+     */
+    public float getRatio() {
+        return uncompressedLength == 0 ? 1 : compressedLength / (float) uncompressedLength;
+    }
+
+    private static final class Block {
+        private final byte codec;
+        private final byte[] data;
+        private final int length;
+
+        private Block(byte codec, byte[] data, int length) {
+            this.codec = codec;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
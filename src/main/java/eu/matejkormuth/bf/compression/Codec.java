@@ -0,0 +1,65 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compression codec used for blocks of BF files. Codecs are identified in files by their id,
+ * see {@link CodecRegistry}. Implementations must be thread safe.
+ */
+public interface Codec {
+
+    /**
+     * Id of this codec stored in BF files.
+     */
+    byte getId();
+
+    /**
+     * Name of this codec used by tools.
+     */
+    String getName();
+
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses bytes to specified array.
+     *
+     * @return length of compressed data
+     */
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int maxDestLen);
+
+    /**
+     * Decompresses exactly destLen bytes to specified array.
+     */
+    void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen);
+
+    /**
+     * Decompresses exactly destLen bytes to specified buffer. Positions of buffers are not modified.
+     */
+    void decompress(ByteBuffer src, int srcOff, int srcLen, ByteBuffer dest, int destOff, int destLen);
+}
@@ -0,0 +1,92 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per asset type (extension of BF file) overrides of codec assets are compressed with.
+ * Types without override use {@link #DEFAULT}, LZ4 HC. Overrides are set explicitly by asset tools, for example deflate
+ * for cold assets which are rarely loaded and where ratio matters more than decode speed.
+ * <p>
+ * Regardless of codec, blocks which do not compress below {@link CompressionUtil#getRawThreshold()}
+ * of their size are stored raw by {@link BlockOutputStream}.
+ */
+@UtilityClass
+public class CodecOverrides {
+
+    public static final String IMAGE = "bif";
+    public static final String GEOMETRY = "bgf";
+
+    public static final Codec DEFAULT = CodecRegistry.LZ4_HC;
+
+    private static final Map<String, Codec> overrides = new HashMap<>();
+
+    public static Codec get(String type) {
+        Codec codec = overrides.get(type.toLowerCase(Locale.ENGLISH));
+        return codec == null ? DEFAULT : codec;
+    }
+
+    public static void set(String type, Codec codec) {
+        overrides.put(type.toLowerCase(Locale.ENGLISH), codec);
+    }
+
+    /**
+     * Returns asset type of specified file name (its extension).
+     */
+    public static String typeOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot == -1 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Sets overrides by specification in format <code>type=codec[,type=codec...]</code>,
+     * for example <code>bif=lz4,bgf=deflate</code>.
+     */
+    public static void parse(String spec) {
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid codec override " + entry + "! (expected type=codec)");
+            }
+            set(parts[0].trim(), CodecRegistry.get(parts[1].trim()));
+        }
+    }
+
+    /**
+     * Sets codec of {@link CompressionUtil} to the one used for specified asset type.
+     */
+    public static Codec apply(String type) {
+        Codec codec = get(type);
+        CompressionUtil.setCodec(codec);
+        return codec;
+    }
+}
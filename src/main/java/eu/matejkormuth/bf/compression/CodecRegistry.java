@@ -0,0 +1,93 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import lombok.experimental.UtilityClass;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Registry of codecs that can be used in BF files. Ids of built-in codecs must never change
+ * as they are stored in files.
+ */
+@UtilityClass
+public class CodecRegistry {
+
+    private static final LZ4Factory factory = LZ4Factory.fastestInstance();
+
+    public static final Codec NONE = new NoneCodec((byte) 0, "none");
+    public static final Codec LZ4_FAST = new LZ4Codec((byte) 1, "lz4", factory.fastCompressor(), factory.fastDecompressor());
+    public static final Codec LZ4_HC = new LZ4Codec((byte) 2, "lz4hc", factory.highCompressor(17), factory.fastDecompressor()); // 17 is max compression level
+    public static final Codec DEFLATE = new DeflateCodec((byte) 3, "deflate", Deflater.BEST_COMPRESSION);
+
+    private static final Codec[] codecs = new Codec[256];
+
+    static {
+        register(NONE);
+        register(LZ4_FAST);
+        register(LZ4_HC);
+        register(DEFLATE);
+    }
+
+    public static void register(Codec codec) {
+        int id = codec.getId() & 0xFF;
+        if (codecs[id] != null) {
+            throw new RuntimeException("Codec id " + id + " is already used by " + codecs[id].getName() + "!");
+        }
+        codecs[id] = codec;
+    }
+
+    public static Codec get(int id) {
+        Codec codec = codecs[id & 0xFF];
+        if (codec == null) {
+            throw new RuntimeException("Unknown codec id " + id + "!");
+        }
+        return codec;
+    }
+
+    public static Codec get(String name) {
+        for (Codec codec : codecs) {
+            if (codec != null && codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        throw new RuntimeException("Unknown codec " + name + "!");
+    }
+
+    public static List<Codec> all() {
+        List<Codec> list = new ArrayList<>();
+        for (Codec codec : codecs) {
+            if (codec != null) {
+                list.add(codec);
+            }
+        }
+        return list;
+    }
+}
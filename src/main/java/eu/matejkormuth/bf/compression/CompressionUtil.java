@@ -26,6 +26,7 @@
  */
 package eu.matejkormuth.bf.compression;
 
+import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.UtilityClass;
 import net.jpountz.lz4.LZ4Compressor;
@@ -36,14 +37,57 @@ import net.jpountz.lz4.LZ4FastDecompressor;
 public class CompressionUtil {
     private static LZ4Factory factory = LZ4Factory.fastestInstance();
 
+    /**
+     * Bounds of block size used by block framed compression.
+     */
+    public static final int MIN_BLOCK_SIZE = 64 * 1024;
+    public static final int MAX_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * Codec used to compress blocks of BF files.
+     */
+    @Getter
+    @Setter
+    private Codec codec = CodecRegistry.LZ4_HC;
+
+    /**
+     * Blocks that compress to more than this fraction of their size are stored raw.
+     */
+    @Getter
+    @Setter
+    private float rawThreshold = 0.9f;
+
+    @Getter
+    private int blockSize = 128 * 1024;
+
+    /**
+     * Compress blocks on ForkJoin common pool.
+     */
+    @Getter
     @Setter
-    private boolean fastCompressor = false;
+    private boolean parallelCompression = true;
+
+    public static void setBlockSize(int blockSize) {
+        checkBlockSize(blockSize);
+        CompressionUtil.blockSize = blockSize;
+    }
+
+    public static void checkBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new RuntimeException("Invalid block size " + blockSize + "! (must be between "
+                    + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE + ")");
+        }
+    }
 
     public static LZ4FastDecompressor decompressor() {
         return factory.fastDecompressor();
     }
 
+    public static void setFastCompressor(boolean fastCompressor) {
+        codec = fastCompressor ? CodecRegistry.LZ4_FAST : CodecRegistry.LZ4_HC;
+    }
+
     public static LZ4Compressor compressor() {
-        return fastCompressor ? factory.fastCompressor() : factory.highCompressor(17); // 17 is max compression level
+        return codec == CodecRegistry.LZ4_FAST ? factory.fastCompressor() : factory.highCompressor(17); // 17 is max compression level
     }
 }
@@ -0,0 +1,147 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * JDK Deflater codec. Slow to decode compared to LZ4, intended for archival of cold assets.
+ */
+public class DeflateCodec implements Codec {
+
+    private static final int SCRATCH_SIZE = 32 * 1024;
+    // input and output scratch arrays for decompression from and to direct buffers
+    private static final ThreadLocal<byte[][]> scratch = ThreadLocal.withInitial(
+            () -> new byte[][]{new byte[SCRATCH_SIZE], new byte[SCRATCH_SIZE]});
+
+    @Getter
+    private final byte id;
+    @Getter
+    private final String name;
+
+    private final int level;
+
+    public DeflateCodec(byte id, String name, int level) {
+        this.id = id;
+        this.name = name;
+        this.level = level;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // zlib compressBound + zlib header and trailer
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 6;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int maxDestLen) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(src, srcOff, srcLen);
+            deflater.finish();
+            int length = deflater.deflate(dest, destOff, maxDestLen);
+            if (!deflater.finished()) {
+                throw new RuntimeException("Deflate output buffer too small!");
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(src, srcOff, srcLen);
+            int length = inflater.inflate(dest, destOff, destLen);
+            if (length != destLen) {
+                throw new RuntimeException("Corrupted deflate block! (Length mismatch)");
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupted deflate block!", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuffer src, int srcOff, int srcLen, ByteBuffer dest, int destOff, int destLen) {
+        if (src.hasArray() && dest.hasArray()) {
+            decompress(src.array(), src.arrayOffset() + srcOff, srcLen, dest.array(), dest.arrayOffset() + destOff, destLen);
+            return;
+        }
+
+        // Inflater only works with arrays, direct buffers are streamed through scratch arrays of this thread.
+        byte[][] buffers = scratch.get();
+        ByteBuffer from = src.duplicate();
+        from.limit(srcOff + srcLen);
+        from.position(srcOff);
+        ByteBuffer to = dest.duplicate();
+        to.limit(destOff + destLen);
+        to.position(destOff);
+
+        Inflater inflater = new Inflater();
+        try {
+            if (src.hasArray()) {
+                inflater.setInput(src.array(), src.arrayOffset() + srcOff, srcLen);
+                from.position(from.limit());
+            }
+            while (to.hasRemaining()) {
+                if (inflater.needsInput()) {
+                    if (!from.hasRemaining()) {
+                        throw new RuntimeException("Corrupted deflate block! (Length mismatch)");
+                    }
+                    int length = Math.min(SCRATCH_SIZE, from.remaining());
+                    from.get(buffers[0], 0, length);
+                    inflater.setInput(buffers[0], 0, length);
+                }
+
+                int length;
+                if (dest.hasArray()) {
+                    length = inflater.inflate(dest.array(), dest.arrayOffset() + to.position(), to.remaining());
+                    to.position(to.position() + length);
+                } else {
+                    length = inflater.inflate(buffers[1], 0, Math.min(SCRATCH_SIZE, to.remaining()));
+                    to.put(buffers[1], 0, length);
+                }
+                if (length == 0 && !inflater.needsInput()) {
+                    throw new RuntimeException("Corrupted deflate block! (Length mismatch)");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupted deflate block!", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
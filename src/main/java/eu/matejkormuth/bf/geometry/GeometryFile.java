@@ -27,14 +27,35 @@
 package eu.matejkormuth.bf.geometry;
 
 import eu.matejkormuth.bf.BFUtils;
-import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BFInput;
 import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.BlockFraming;
+import eu.matejkormuth.bf.compression.BlockOutputStream;
+import eu.matejkormuth.bf.compression.Codec;
+import eu.matejkormuth.bf.compression.CodecRegistry;
+import eu.matejkormuth.bf.compression.CompressionUtil;
 import eu.matejkormuth.lpsim.Application;
+import eu.matejkormuth.lpsim.Bounds;
 import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.IndexType;
+import eu.matejkormuth.lpsim.InterleavedVertexLayout;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import eu.matejkormuth.lpsim.Meshlet;
+import eu.matejkormuth.lpsim.VertexBufferBuilder;
+import eu.matejkormuth.lpsim.VertexData;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.BufferUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 @UtilityClass
 @Slf4j
@@ -45,23 +66,58 @@ public class GeometryFile {
     /*
      * Version history:
      * 1 - initial version with LZ4 compression
+     * 2 - block framed LZ4 compression (streaming decompression)
+     * 3 - codec id of each block in block table
+     * 4 - sections with pre-filter flags and element count, see GeometryFilter
+     * 5 - table of contents, each section compressed independently (sections can be skipped)
+     * 6 - vertex layout after table of contents, optional interleaved vertex and index buffer sections
+     * 7 - index size after vertex layout, index buffer uses narrowest index type
+     * 8 - level of detail sections after index section
+     * 9 - meshlet section
+     * 10 - packed attribute types in vertex layout (half floats, 2_10_10_10, octahedral, unorm16)
+     * 11 - bounding box and bounding sphere after version
+     * 12 - each section framed as independently compressed blocks (streaming and parallel compression of sections)
+     * 13 - codec id and compressed length before each block of section instead of block table
      */
-    public static final byte VERSION = 1;
+    public static final byte VERSION = 13;
 
-    private static void verifyCanReadVersion(BFInputStream in) throws IOException {
-        if (in.readByte() > VERSION) {
+    /**
+     * Pre-filters applied to float vertex sections and index section when saving. None by
+     * default, gains depend on the assets and should be measured with BgfFilterBench.
+     */
+    @Getter
+    @Setter
+    private int vertexFilter = GeometryFilter.NONE;
+    @Getter
+    @Setter
+    private int indexFilter = GeometryFilter.NONE;
+
+    private static int verifyCanReadVersion(BFInput in) throws IOException {
+        int version = in.readByte();
+        if (version > VERSION) {
             throw new RuntimeException("Can't read this file! (Version mismatch)");
         }
+        return version;
     }
 
-    private static void readHeader(BFInputStream in) throws IOException {
+    private static int readHeader(BFInput in) throws IOException {
         BFUtils.readHeader(in);
 
         if (in.readByte() != BF_TYPE) {
             throw new RuntimeException("Not a BF Image file! (File Type mismatch)");
         }
 
-        verifyCanReadVersion(in);
+        return verifyCanReadVersion(in);
+    }
+
+    private static void decompress(BFInput in, int version) throws IOException {
+        if (version < 2) {
+            in.decompressLZ4();
+        } else if (version < 3) {
+            in.decompressBlocks(BlockFraming.TABLE_WITHOUT_CODECS);
+        } else {
+            in.decompressBlocks(BlockFraming.TABLE);
+        }
     }
 
     private static void writeHeader(BFOutputStream out) throws IOException {
@@ -70,71 +126,612 @@ public class GeometryFile {
         out.writeByte(VERSION);
     }
 
+    // box (min and max) followed by sphere (center and radius)
+    private static void writeBounds(BFOutputStream out, Bounds bounds) throws IOException {
+        out.writeFloat(bounds.getMinX());
+        out.writeFloat(bounds.getMinY());
+        out.writeFloat(bounds.getMinZ());
+        out.writeFloat(bounds.getMaxX());
+        out.writeFloat(bounds.getMaxY());
+        out.writeFloat(bounds.getMaxZ());
+        out.writeFloat(bounds.getCenterX());
+        out.writeFloat(bounds.getCenterY());
+        out.writeFloat(bounds.getCenterZ());
+        out.writeFloat(bounds.getRadius());
+    }
+
+    private static Bounds readBounds(BFInput in, int version) throws IOException {
+        if (version < 11) {
+            return null;
+        }
+        return new Bounds(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+    }
+
     private static final byte LIST_POSITIONS = 1;
     private static final byte LIST_NORMALS = 2;
     private static final byte LIST_TEXCOORDS = 3;
     private static final byte LIST_TANGENTS = 4;
     private static final byte LIST_BITANGENTS = 5;
     private static final byte LIST_INDICES = 6;
+    // GPU ready buffers in little endian byte order: vertices interleaved by layout, indices of narrowest type
+    private static final byte LIST_VERTEX_BUFFER = 7;
+    private static final byte LIST_INDEX_BUFFER = 8;
+    // level of detail from finest to coarsest: error (float) and indices of index type, little endian
+    private static final byte LIST_LOD = 9;
+    // meshlets of full detail indices: first index and index count (ints), bounding sphere and normal cone (floats), little endian
+    private static final byte LIST_MESHLETS = 10;
+    private static final int MESHLET_SIZE = 2 * Integer.BYTES + 8 * Float.BYTES;
+
+    /**
+     * Attribute masks for selective loading. Indices are an attribute too, so
+     * callers that only need vertex data can skip them.
+     */
+    public static final int POSITIONS = 1 << LIST_POSITIONS;
+    public static final int NORMALS = 1 << LIST_NORMALS;
+    public static final int TEXCOORDS = 1 << LIST_TEXCOORDS;
+    public static final int TANGENTS = 1 << LIST_TANGENTS;
+    public static final int BITANGENTS = 1 << LIST_BITANGENTS;
+    public static final int INDICES = 1 << LIST_INDICES;
+    public static final int LODS = 1 << LIST_LOD;
+    public static final int MESHLETS = 1 << LIST_MESHLETS;
+    public static final int ALL = POSITIONS | NORMALS | TEXCOORDS | TANGENTS | BITANGENTS | INDICES | LODS | MESHLETS;
+
+    /**
+     * Returns attributes needed to build mesh with specified layout (always including indices,
+     * levels of detail and meshlets).
+     */
+    public static int attributesOf(InterleavedVertexLayout layout) {
+        int attributes = POSITIONS | INDICES | LODS | MESHLETS;
+        for (InterleavedVertexLayout.VertexAttribute attribute : layout.getAttributes()) {
+            switch (attribute.getName()) {
+                case "normal":
+                    attributes |= NORMALS;
+                    break;
+                case "texCoord":
+                    attributes |= TEXCOORDS;
+                    break;
+                case "tangent":
+                    attributes |= TANGENTS;
+                    break;
+                case "bitangent":
+                    attributes |= BITANGENTS;
+                    break;
+            }
+        }
+        return attributes;
+    }
+
+    // attributes provided by section, interleaved vertex buffer provides all vertex attributes
+    private static int attributesOf(byte type) {
+        switch (type) {
+            case LIST_VERTEX_BUFFER:
+                return ALL & ~(INDICES | LODS | MESHLETS);
+            case LIST_INDEX_BUFFER:
+                return INDICES;
+            default:
+                return 1 << type;
+        }
+    }
 
     public static void save(Geometry geometry, BFOutputStream out) throws IOException {
+        save(geometry, out, null);
+    }
+
+    /**
+     * Saves geometry. If layout is specified, vertices are stored interleaved for this layout
+     * together with indices of narrowest type, both in little endian byte order, so they can be uploaded
+     * to GPU right after decompression (see {@link #loadVertexData(BFInput, InterleavedVertexLayout)}).
+     * Otherwise each attribute is stored in its own filtered section.
+     */
+    public static void save(Geometry geometry, BFOutputStream out, InterleavedVertexLayout layout) throws IOException {
         writeHeader(out);
+        // always computed from current positions, stored bounds may be outdated
+        writeBounds(out, Bounds.of(geometry.getPositionData()));
+
+        Codec codec = CompressionUtil.getCodec();
+
+        IndexType indexType = layout == null ? IndexType.UNSIGNED_INT : IndexType.forVertexCount(geometry.getVertexCount());
+        List<Section> sections = layout == null ? attributeSections(geometry, codec) : bufferSections(geometry, layout, indexType, codec);
+        if (geometry.hasLods()) {
+            for (LevelOfDetail lod : geometry.getLods()) {
+                ByteBuffer data = ByteBuffer.allocate(Float.BYTES + lod.getIndices().length * indexType.getBytes()).order(ByteOrder.LITTLE_ENDIAN);
+                data.putFloat(lod.getError());
+                indexType.put(data, lod.getIndices());
+                sections.add(new Section(LIST_LOD, GeometryFilter.NONE, data.array(), codec));
+            }
+        }
+        if (geometry.hasMeshlets()) {
+            sections.add(new Section(LIST_MESHLETS, GeometryFilter.NONE, writeMeshlets(geometry.getMeshlets()), codec));
+        }
 
-        // 1 byte for section type + 1 integer for array length + array items
-        int size = (geometry.hasFaces() ? Byte.BYTES + Integer.BYTES + Float.BYTES * 3 * geometry.getPositions().length : 0) +
-                (geometry.hasNormals() ? Byte.BYTES + Integer.BYTES + Float.BYTES * 3 * geometry.getNormals().length : 0) +
-                (geometry.hasTexCoords() ? Byte.BYTES + Integer.BYTES + Float.BYTES * 2 * geometry.getTexCoords().length : 0) +
-                (geometry.hasTangents() ? Byte.BYTES + Integer.BYTES + Float.BYTES * 3 * geometry.getTangents().length : 0) +
-                (geometry.hasBitangets() ? Byte.BYTES + Integer.BYTES + Float.BYTES * 3 * geometry.getBitangents().length : 0) +
-                (1 + Integer.BYTES + Integer.BYTES * geometry.getIndices().length);
+        writeSections(out, sections, layout, indexType);
+    }
 
+    /**
+     * Saves vertex data as vertex and index buffer of its layout together with its levels of detail,
+     * meshlets and bounds. Buffers are written as they are, so packed attributes are not quantized
+     * again and narrow indices stay narrow. Buffers must be little endian (native order of every
+     * platform we run on), see {@link #loadVertexData(BFInput, InterleavedVertexLayout)}.
+     */
+    public static void save(VertexData data, BFOutputStream out) throws IOException {
+        writeHeader(out);
+        writeBounds(out, data.getBounds() != null ? data.getBounds() : Bounds.of(data.getVertices(), data.getLayout()));
+
+        Codec codec = CompressionUtil.getCodec();
+        IndexType indexType = data.getIndexType();
+        int[] lodOffsets = data.getLodOffsets();
+        float[] lodErrors = data.getLodErrors();
+        ByteBuffer indices = data.getIndices();
+
+        List<Section> sections = new ArrayList<>(lodErrors.length + 2);
+        sections.add(new Section(LIST_VERTEX_BUFFER, GeometryFilter.NONE, bytes(data.getVertices(), 0, data.getVertices().remaining()), codec));
+        sections.add(new Section(LIST_INDEX_BUFFER, GeometryFilter.NONE, bytes(indices, 0, lodOffsets[1] * indexType.getBytes()), codec));
+        for (int lod = 1; lod < lodErrors.length; lod++) {
+            int length = (lodOffsets[lod + 1] - lodOffsets[lod]) * indexType.getBytes();
+            ByteBuffer section = ByteBuffer.allocate(Float.BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+            section.putFloat(lodErrors[lod]);
+            section.put(bytes(indices, lodOffsets[lod] * indexType.getBytes(), length));
+            sections.add(new Section(LIST_LOD, GeometryFilter.NONE, section.array(), codec));
+        }
+        if (data.getMeshlets() != null && data.getMeshlets().length > 0) {
+            sections.add(new Section(LIST_MESHLETS, GeometryFilter.NONE, writeMeshlets(data.getMeshlets()), codec));
+        }
 
-        out.compressStart(size);
+        writeSections(out, sections, data.getLayout(), indexType);
+    }
 
-        out.writeByte(LIST_POSITIONS);
-        out.writeVector3fArray(geometry.getPositions());
+    // relative to position of buffer
+    private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(source.position() + offset);
+        source.get(bytes);
+        return bytes;
+    }
 
-        if (geometry.hasNormals()) {
-            out.writeByte(LIST_NORMALS);
-            out.writeVector3fArray(geometry.getNormals());
+    private static void writeSections(BFOutputStream out, List<Section> sections, InterleavedVertexLayout layout,
+                                      IndexType indexType) throws IOException {
+        // Table of contents and layout, offsets are relative to end of the layout.
+        out.writeByte(sections.size());
+        int offset = 0;
+        for (Section section : sections) {
+            section.offset = offset;
+            section.write(out);
+            offset += section.compressedLength;
         }
+        writeLayout(out, layout);
+        out.writeByte(indexType.getBytes());
 
-        if (geometry.hasTexCoords()) {
-            out.writeByte(LIST_TEXCOORDS);
-            out.writeVector2fArray(geometry.getTexCoords());
+        for (Section section : sections) {
+            out.write(section.data, 0, section.compressedLength);
         }
 
-        if (geometry.hasTangents()) {
-            out.writeByte(LIST_TANGENTS);
-            out.writeVector3fArray(geometry.getTangents());
+        out.flush();
+        out.close();
+    }
+
+    private static List<Section> bufferSections(Geometry geometry, InterleavedVertexLayout layout, IndexType indexType,
+                                                Codec codec) throws IOException {
+        int vertexCount = geometry.getVertexCount();
+
+        ByteBuffer vertices = ByteBuffer.allocate(vertexCount * layout.getVertexSize()).order(ByteOrder.LITTLE_ENDIAN);
+        VertexBufferBuilder.of(layout, geometry).fill(vertices, vertexCount);
+
+        ByteBuffer indices = ByteBuffer.allocate(geometry.getIndices().length * indexType.getBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        indexType.put(indices, geometry.getIndices());
+
+        List<Section> sections = new ArrayList<>(2);
+        sections.add(new Section(LIST_VERTEX_BUFFER, GeometryFilter.NONE, vertices.array(), codec));
+        sections.add(new Section(LIST_INDEX_BUFFER, GeometryFilter.NONE, indices.array(), codec));
+        return sections;
+    }
+
+    private static List<Section> attributeSections(Geometry geometry, Codec codec) throws IOException {
+        List<Section> sections = new ArrayList<>(6);
+        sections.add(new Section(LIST_POSITIONS, vertexFilter, GeometryFilter.encodeFloats(geometry.getPositionData(), 3, vertexFilter), codec));
+        if (geometry.hasNormals())
+            sections.add(new Section(LIST_NORMALS, vertexFilter, GeometryFilter.encodeFloats(geometry.getNormalData(), 3, vertexFilter), codec));
+        if (geometry.hasTexCoords())
+            sections.add(new Section(LIST_TEXCOORDS, vertexFilter, GeometryFilter.encodeFloats(geometry.getTexCoordData(), 2, vertexFilter), codec));
+        if (geometry.hasTangents())
+            sections.add(new Section(LIST_TANGENTS, vertexFilter, GeometryFilter.encodeFloats(geometry.getTangentData(), 3, vertexFilter), codec));
+        if (geometry.hasBitangets())
+            sections.add(new Section(LIST_BITANGENTS, vertexFilter, GeometryFilter.encodeFloats(geometry.getBitangentData(), 3, vertexFilter), codec));
+        sections.add(new Section(LIST_INDICES, indexFilter, GeometryFilter.encodeInts(geometry.getIndices(), indexFilter), codec));
+        return sections;
+    }
+
+    // attribute count (byte), name and type of each attribute (strings) in location order
+    private static void writeLayout(BFOutputStream out, InterleavedVertexLayout layout) throws IOException {
+        if (layout == null) {
+            out.writeByte(0);
+            return;
         }
 
-        if (geometry.hasBitangets()) {
-            out.writeByte(LIST_BITANGENTS);
-            out.writeVector3fArray(geometry.getBitangents());
+        out.writeByte(layout.size());
+        for (int i = 0; i < layout.size(); i++) {
+            out.writeString(layout.getAttribute(i).getName());
+            out.writeString(layout.getAttribute(i).getType().name());
         }
+    }
 
-        out.writeByte(LIST_INDICES);
-        out.writeIntArray(geometry.getIndices());
+    private static InterleavedVertexLayout readLayout(BFInput in) throws IOException {
+        int count = in.readUnsignedByte();
+        if (count == 0) {
+            return null;
+        }
 
-        out.compressFinish();
-        out.flush();
-        out.close();
+        InterleavedVertexLayout.VertexLayoutBuilder builder = InterleavedVertexLayout.builder();
+        for (int i = 0; i < count; i++) {
+            builder.attribute(in.readString(), InterleavedVertexLayout.AttributeType.valueOf(in.readString()));
+        }
+        return builder.build();
+    }
+
+    private static byte[] readSection(BFInput in, int count, int components) throws IOException {
+        byte[] data = new byte[count * components * Float.BYTES];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Returns layout of vertex buffer stored in file or null if file stores each attribute
+     * in its own section. Only header and table of contents are read.
+     */
+    public static InterleavedVertexLayout loadLayout(BFInput in) throws IOException {
+        int version = readHeader(in);
+        readBounds(in, version);
+
+        InterleavedVertexLayout layout = null;
+        if (version >= 6) {
+            readSections(in);
+            layout = readLayout(in);
+        }
+        in.close();
+        return layout;
+    }
+
+    public static Geometry loadToGeometry(BFInput in, Geometry geometry) throws IOException {
+        return loadToGeometry(in, geometry, ALL);
+    }
+
+    /**
+     * Loads only specified attributes of geometry. Files of version 5 and newer skip other
+     * sections without decompressing them, older files are decompressed whole and all
+     * attributes are loaded.
+     *
+     * @param attributes mask of attributes to load, see {@link #POSITIONS}, {@link #attributesOf(InterleavedVertexLayout)}
+     */
+    public static Geometry loadToGeometry(BFInput in, Geometry geometry, int attributes) throws IOException {
+        Application.P.modelsIO.end();
+
+        Application.P.modelsProcessing.start();
+        Application.P.modelsParse.start();
+        int version = readHeader(in);
+        Bounds bounds = readBounds(in, version);
+
+        if (version < 5) {
+            loadLegacy(in, geometry, version);
+        } else {
+            Section[] sections = readSections(in);
+            InterleavedVertexLayout layout = version < 6 ? null : readLayout(in);
+            IndexType indexType = version < 7 ? IndexType.UNSIGNED_INT : IndexType.ofBytes(in.readUnsignedByte());
+            loadSections(in, version, geometry, sections, layout, indexType, attributes);
+        }
+        geometry.setBounds(bounds);
+
+        in.close();
+        Application.P.modelsParse.end();
+
+        return geometry;
     }
 
-    public static Geometry loadToGeometry(BFInputStream in, Geometry geometry) throws IOException {
+    /**
+     * Loads vertex and index buffer for specified layout. If file contains vertex buffer interleaved
+     * for the same layout, both buffers are decompressed straight to direct buffers without any
+     * per vertex work. Otherwise needed attributes are loaded and interleaved. Levels of detail
+     * are appended to the index buffer.
+     */
+    public static VertexData loadVertexData(BFInput in, InterleavedVertexLayout layout) throws IOException {
         Application.P.modelsIO.end();
 
         Application.P.modelsProcessing.start();
         Application.P.modelsParse.start();
-        readHeader(in);
+        int version = readHeader(in);
+        Bounds bounds = readBounds(in, version);
+
+        Geometry geometry = new Geometry();
+        if (version < 5) {
+            loadLegacy(in, geometry, version);
+        } else {
+            Section[] sections = readSections(in);
+            InterleavedVertexLayout stored = version < 6 ? null : readLayout(in);
+            IndexType indexType = version < 7 ? IndexType.UNSIGNED_INT : IndexType.ofBytes(in.readUnsignedByte());
+
+            // buffers are little endian, which is native order of every platform we run on
+            if (stored != null && stored.matches(layout) && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                VertexData data = loadBuffers(in, version, sections, layout, indexType);
+                data.setBounds(bounds != null ? bounds : Bounds.of(data.getVertices(), layout));
+                in.close();
+                Application.P.modelsParse.end();
+                return data;
+            }
+
+            loadSections(in, version, geometry, sections, stored, indexType, attributesOf(layout));
+        }
+        geometry.setBounds(bounds);
+
+        in.close();
+        Application.P.modelsParse.end();
+
+        return VertexData.of(geometry, layout);
+    }
+
+    private static VertexData loadBuffers(BFInput in, int version, Section[] sections, InterleavedVertexLayout layout,
+                                          IndexType indexType) throws IOException {
+        // Levels of detail are appended to index buffer, so all of them can be uploaded to one buffer.
+        int indexBytes = 0;
+        int lodCount = 0;
+        for (Section section : sections) {
+            if (section.type == LIST_INDEX_BUFFER) {
+                indexBytes += section.length;
+            } else if (section.type == LIST_LOD) {
+                indexBytes += section.length - Float.BYTES;
+                lodCount++;
+            }
+        }
+
+        ByteBuffer vertices = null;
+        ByteBuffer indices = BufferUtils.createByteBuffer(indexBytes);
+        boolean hasIndices = false;
+        int[] lodOffsets = new int[lodCount + 2];
+        float[] lodErrors = new float[lodCount + 1];
+        int lod = 0;
+        Meshlet[] meshlets = null;
+
+        int position = 0;
+        for (Section section : sections) {
+            if (section.type != LIST_VERTEX_BUFFER && section.type != LIST_INDEX_BUFFER && section.type != LIST_LOD
+                    && section.type != LIST_MESHLETS) {
+                continue;
+            }
+
+            skipFully(in, section.offset - position);
+
+            Application.P.modelsParse.end();
+            Application.P.modelsDecompress.start();
+            if (section.type == LIST_VERTEX_BUFFER) {
+                vertices = BufferUtils.createByteBuffer(section.length);
+                decompressSection(in, version, section, vertices);
+            } else if (section.type == LIST_INDEX_BUFFER) {
+                indices.limit(section.length);
+                decompressSection(in, version, section, indices);
+                indices.position(section.length).limit(indexBytes);
+                hasIndices = true;
+            } else if (section.type == LIST_MESHLETS) {
+                meshlets = readMeshlets(decompressSection(in, version, section));
+            } else {
+                byte[] data = decompressSection(in, version, section);
+                lod++;
+                lodErrors[lod] = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+                lodOffsets[lod] = indices.position() / indexType.getBytes();
+                indices.put(data, Float.BYTES, data.length - Float.BYTES);
+            }
+            Application.P.modelsDecompress.end();
+            Application.P.modelsParse.start();
 
+            position = section.offset + section.compressedLength;
+        }
+
+        if (vertices == null || !hasIndices) {
+            throw new RuntimeException("File has no vertex or index buffer!");
+        }
+
+        lodOffsets[lodCount + 1] = indices.position() / indexType.getBytes();
+        indices.flip();
+        VertexData data = new VertexData(layout, vertices, indices, indexType, lodOffsets, lodErrors);
+        data.setMeshlets(meshlets);
+        return data;
+    }
+
+    // versions 1 to 4
+    private static void loadLegacy(BFInput in, Geometry geometry, int version) throws IOException {
         Application.P.modelsParse.end();
         Application.P.modelsDecompress.start();
-        in.decompress();
+        decompress(in, version);
         Application.P.modelsDecompress.end();
-
         Application.P.modelsParse.start();
+
+        if (version < 4) {
+            loadUnfiltered(in, geometry);
+        } else {
+            loadFiltered(in, geometry);
+        }
+    }
+
+    private static Section[] readSections(BFInput in) throws IOException {
+        int count = in.readUnsignedByte();
+        Section[] sections = new Section[count];
+        for (int i = 0; i < count; i++) {
+            sections[i] = Section.read(in);
+        }
+        return sections;
+    }
+
+    private static void loadSections(BFInput in, int version, Geometry geometry, Section[] sections,
+                                     InterleavedVertexLayout layout, IndexType indexType, int attributes) throws IOException {
+        // Sections are stored in order of the table, skip those that are not needed.
+        List<LevelOfDetail> lods = new ArrayList<>();
+        int position = 0;
+        for (Section section : sections) {
+            if ((attributes & attributesOf(section.type)) == 0) {
+                continue;
+            }
+
+            skipFully(in, section.offset - position);
+
+            Application.P.modelsParse.end();
+            Application.P.modelsDecompress.start();
+            byte[] data = decompressSection(in, version, section);
+            Application.P.modelsDecompress.end();
+            Application.P.modelsParse.start();
+
+            position = section.offset + section.compressedLength;
+            if (section.type == LIST_VERTEX_BUFFER) {
+                deinterleave(geometry, layout, ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+            } else if (section.type == LIST_INDEX_BUFFER) {
+                geometry.setIndices(indexType.get(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)));
+            } else if (section.type == LIST_MESHLETS) {
+                geometry.setMeshlets(readMeshlets(data));
+            } else if (section.type == LIST_LOD) {
+                ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+                float error = buffer.getFloat();
+                lods.add(new LevelOfDetail(indexType.get(buffer), error));
+            } else {
+                setSection(geometry, section.type, section.filter, data);
+            }
+        }
+
+        if (!lods.isEmpty()) {
+            geometry.setLods(lods.toArray(new LevelOfDetail[lods.size()]));
+        }
+    }
+
+    /**
+     * Decompresses section to remaining bytes of specified buffer. Sections of version 12 and newer
+     * are block framed and streamed one block at a time, older sections are compressed whole.
+     */
+    private static void decompressSection(BFInput in, int version, Section section, ByteBuffer dest) throws IOException {
+        if (version < 12) {
+            in.readCompressed(CodecRegistry.get(section.codec), section.compressedLength, dest);
+        } else if (version < 13) {
+            in.readBlocks(dest, BlockFraming.TABLE);
+        } else {
+            in.readBlocks(dest);
+        }
+    }
+
+    private static byte[] decompressSection(BFInput in, int version, Section section) throws IOException {
+        byte[] data = new byte[section.length];
+        decompressSection(in, version, section, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    private static byte[] writeMeshlets(Meshlet[] meshlets) {
+        ByteBuffer buffer = ByteBuffer.allocate(meshlets.length * MESHLET_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Meshlet meshlet : meshlets) {
+            buffer.putInt(meshlet.getFirstIndex()).putInt(meshlet.getIndexCount())
+                    .putFloat(meshlet.getCenterX()).putFloat(meshlet.getCenterY()).putFloat(meshlet.getCenterZ())
+                    .putFloat(meshlet.getRadius())
+                    .putFloat(meshlet.getConeX()).putFloat(meshlet.getConeY()).putFloat(meshlet.getConeZ())
+                    .putFloat(meshlet.getConeCutoff());
+        }
+        return buffer.array();
+    }
+
+    private static Meshlet[] readMeshlets(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        Meshlet[] meshlets = new Meshlet[data.length / MESHLET_SIZE];
+        for (int i = 0; i < meshlets.length; i++) {
+            meshlets[i] = new Meshlet(buffer.getInt(), buffer.getInt(), buffer.getFloat(), buffer.getFloat(),
+                    buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(),
+                    buffer.getFloat());
+        }
+        return meshlets;
+    }
+
+    private static void deinterleave(Geometry geometry, InterleavedVertexLayout layout, ByteBuffer vertices) {
+        int stride = layout.getVertexSize();
+        int vertexCount = vertices.remaining() / stride;
+
+        int offset = 0;
+        for (int i = 0; i < layout.size(); i++) {
+            InterleavedVertexLayout.VertexAttribute attribute = layout.getAttribute(i);
+            InterleavedVertexLayout.AttributeType type = attribute.getType();
+            int components = type.getComponents();
+
+            float[] data = new float[vertexCount * components];
+            for (int v = 0; v < vertexCount; v++) {
+                vertices.position(v * stride + offset);
+                type.get(vertices, data, v * components);
+            }
+            offset += type.getBytes();
+
+            switch (attribute.getName()) {
+                case "position":
+                    geometry.setPositionData(data);
+                    break;
+                case "normal":
+                    geometry.setNormalData(data);
+                    break;
+                case "texCoord":
+                    geometry.setTexCoordData(data);
+                    break;
+                case "tangent":
+                    geometry.setTangentData(data);
+                    break;
+                case "bitangent":
+                    geometry.setBitangentData(data);
+                    break;
+                default:
+                    log.warn("Unknown vertex attribute {}, skipping.", attribute.getName());
+                    break;
+            }
+        }
+    }
+
+    private static void skipFully(BFInput in, int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0) {
+                throw new RuntimeException("Unexpected end of file!");
+            }
+            n -= skipped;
+        }
+    }
+
+    // version 4
+    private static void loadFiltered(BFInput in, Geometry geometry) throws IOException {
+        for (; ; ) {
+            byte listType = in.readByte();
+            int filter = in.readUnsignedByte();
+            int count = in.readInt();
+
+            setSection(geometry, listType, filter, readSection(in, count, listType == LIST_TEXCOORDS ? 2 : listType == LIST_INDICES ? 1 : 3));
+            if (listType == LIST_INDICES) {
+                return;
+            }
+        }
+    }
+
+    private static void setSection(Geometry geometry, byte listType, int filter, byte[] data) {
+        switch (listType) {
+            case LIST_POSITIONS:
+                geometry.setPositionData(GeometryFilter.decodeFloats(data, 3, filter));
+                break;
+            case LIST_NORMALS:
+                geometry.setNormalData(GeometryFilter.decodeFloats(data, 3, filter));
+                break;
+            case LIST_TEXCOORDS:
+                geometry.setTexCoordData(GeometryFilter.decodeFloats(data, 2, filter));
+                break;
+            case LIST_TANGENTS:
+                geometry.setTangentData(GeometryFilter.decodeFloats(data, 3, filter));
+                break;
+            case LIST_BITANGENTS:
+                geometry.setBitangentData(GeometryFilter.decodeFloats(data, 3, filter));
+                break;
+            case LIST_INDICES:
+                geometry.setIndices(GeometryFilter.decodeInts(data, filter));
+                break;
+            default:
+                throw new RuntimeException("Unknown section type " + listType + "!");
+        }
+    }
+
+    // versions 1 to 3
+    private static void loadUnfiltered(BFInput in, Geometry geometry) throws IOException {
         for (; ; ) {
             byte listType = in.readByte();
 
@@ -143,29 +740,85 @@ public class GeometryFile {
 
             switch (listType) {
                 case LIST_POSITIONS:
-                    geometry.setPositions(in.readVector3fArray());
+                    geometry.setPositionData(readFloatArray(in, 3));
                     break;
                 case LIST_NORMALS:
-                    geometry.setNormals(in.readVector3fArray());
+                    geometry.setNormalData(readFloatArray(in, 3));
                     break;
                 case LIST_TEXCOORDS:
-                    geometry.setTexCoords(in.readVector2fArray());
+                    geometry.setTexCoordData(readFloatArray(in, 2));
                     break;
                 case LIST_TANGENTS:
-                    geometry.setTangents(in.readVector3fArray());
+                    geometry.setTangentData(readFloatArray(in, 3));
                     break;
                 case LIST_BITANGENTS:
-                    geometry.setBitangents(in.readVector3fArray());
+                    geometry.setBitangentData(readFloatArray(in, 3));
                     break;
             }
         }
 
         geometry.setIndices(in.readIntArray());
+    }
 
-        in.close();
-        Application.P.modelsParse.end();
-
-        return geometry;
+    // vector array of versions 1 to 3: int count followed by floats
+    private static float[] readFloatArray(BFInput in, int components) throws IOException {
+        float[] floats = new float[in.readInt() * components];
+        in.readFloats(FloatBuffer.wrap(floats));
+        return floats;
     }
 
+    /**
+     * Entry of table of contents: type, filter and codec id (bytes), offset, compressed
+     * length and uncompressed length (ints). When saving it also holds compressed data.
+     * Since version 12 compressed length includes block framing and codec id is the codec
+     * requested when saving, codec of each block is stored in its framing.
+     */
+    private static final class Section {
+        private final byte type;
+        private final int filter;
+        private final byte codec;
+        private int offset;
+        private final int compressedLength;
+        private final int length;
+        private final byte[] data;
+
+        private Section(byte type, int filter, byte codec, int offset, int compressedLength, int length) {
+            this.type = type;
+            this.filter = filter;
+            this.codec = codec;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.length = length;
+            this.data = null;
+        }
+
+        private Section(byte type, int filter, byte[] filtered, Codec codec) throws IOException {
+            // Blocks are compressed in parallel and those that do not compress well are stored raw.
+            ByteArrayOutputStream framed = new ByteArrayOutputStream(filtered.length / 2);
+            BlockOutputStream blocks = new BlockOutputStream(framed, codec, CompressionUtil.getBlockSize(), filtered.length);
+            blocks.write(filtered);
+            blocks.finish();
+
+            this.type = type;
+            this.filter = filter;
+            this.codec = codec.getId();
+            this.length = filtered.length;
+            this.compressedLength = framed.size();
+            this.data = framed.toByteArray();
+        }
+
+        private void write(BFOutputStream out) throws IOException {
+            out.writeByte(type);
+            out.writeByte(filter);
+            out.writeByte(codec);
+            out.writeInt(offset);
+            out.writeInt(compressedLength);
+            out.writeInt(length);
+        }
+
+        private static Section read(BFInput in) throws IOException {
+            return new Section(in.readByte(), in.readUnsignedByte(), in.readByte(),
+                    in.readInt(), in.readInt(), in.readInt());
+        }
+    }
 }
@@ -0,0 +1,167 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Reversible pre-filters applied to geometry sections before compression. Filters are
+ * bit flags stored in section header, so they can be combined.
+ * <p>
+ * Raw IEEE floats compress poorly because the bytes that change the most (low mantissa bytes)
+ * are interleaved with the bytes that rarely change (sign, exponent). Shuffle groups equal
+ * bytes of all elements together, delta removes redundancy between consecutive vertices.
+ */
+@UtilityClass
+public class GeometryFilter {
+
+    public static final int NONE = 0;
+
+    /**
+     * XOR of float bits with the same component of previous vertex. For index lists
+     * zig-zag encoded difference from previous index.
+     */
+    public static final int DELTA = 1;
+
+    /**
+     * Stores first bytes of all elements, then second bytes of all elements and so on.
+     */
+    public static final int SHUFFLE = 2;
+
+    public static String toString(int filter) {
+        if (filter == NONE) {
+            return "none";
+        }
+        return ((filter & DELTA) != 0 ? "delta" : "") + ((filter & DELTA) != 0 && (filter & SHUFFLE) != 0 ? "+" : "")
+                + ((filter & SHUFFLE) != 0 ? "shuffle" : "");
+    }
+
+    public static byte[] encodeFloats(float[] data, int components, int filter) {
+        int[] bits = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            bits[i] = Float.floatToRawIntBits(data[i]);
+        }
+
+        if ((filter & DELTA) != 0) {
+            for (int i = bits.length - 1; i >= components; i--) {
+                bits[i] ^= bits[i - components];
+            }
+        }
+
+        return toBytes(bits, filter);
+    }
+
+    public static float[] decodeFloats(byte[] bytes, int components, int filter) {
+        int[] bits = fromBytes(bytes, filter);
+
+        if ((filter & DELTA) != 0) {
+            for (int i = components; i < bits.length; i++) {
+                bits[i] ^= bits[i - components];
+            }
+        }
+
+        float[] data = new float[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            data[i] = Float.intBitsToFloat(bits[i]);
+        }
+        return data;
+    }
+
+    public static byte[] encodeInts(int[] data, int filter) {
+        int[] values = data;
+
+        if ((filter & DELTA) != 0) {
+            values = new int[data.length];
+            int previous = 0;
+            for (int i = 0; i < data.length; i++) {
+                int delta = data[i] - previous;
+                values[i] = (delta << 1) ^ (delta >> 31);
+                previous = data[i];
+            }
+        }
+
+        return toBytes(values, filter);
+    }
+
+    public static int[] decodeInts(byte[] bytes, int filter) {
+        int[] values = fromBytes(bytes, filter);
+
+        if ((filter & DELTA) != 0) {
+            int previous = 0;
+            for (int i = 0; i < values.length; i++) {
+                int delta = (values[i] >>> 1) ^ -(values[i] & 1);
+                values[i] = previous + delta;
+                previous = values[i];
+            }
+        }
+
+        return values;
+    }
+
+    // Big-endian bytes of each value, or byte planes when shuffled.
+    private static byte[] toBytes(int[] values, int filter) {
+        int n = values.length;
+        byte[] bytes = new byte[n * Integer.BYTES];
+
+        if ((filter & SHUFFLE) != 0) {
+            for (int i = 0; i < n; i++) {
+                int v = values[i];
+                bytes[i] = (byte) (v >>> 24);
+                bytes[n + i] = (byte) (v >>> 16);
+                bytes[2 * n + i] = (byte) (v >>> 8);
+                bytes[3 * n + i] = (byte) v;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                int v = values[i];
+                bytes[i * 4] = (byte) (v >>> 24);
+                bytes[i * 4 + 1] = (byte) (v >>> 16);
+                bytes[i * 4 + 2] = (byte) (v >>> 8);
+                bytes[i * 4 + 3] = (byte) v;
+            }
+        }
+        return bytes;
+    }
+
+    private static int[] fromBytes(byte[] bytes, int filter) {
+        int n = bytes.length / Integer.BYTES;
+        int[] values = new int[n];
+
+        if ((filter & SHUFFLE) != 0) {
+            for (int i = 0; i < n; i++) {
+                values[i] = (bytes[i] & 0xFF) << 24 | (bytes[n + i] & 0xFF) << 16
+                        | (bytes[2 * n + i] & 0xFF) << 8 | (bytes[3 * n + i] & 0xFF);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                values[i] = (bytes[i * 4] & 0xFF) << 24 | (bytes[i * 4 + 1] & 0xFF) << 16
+                        | (bytes[i * 4 + 2] & 0xFF) << 8 | (bytes[i * 4 + 3] & 0xFF);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,438 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * Reorders triangles and vertices of geometry so GPU transforms and fetches each vertex
+ * as few times as possible. Does not change the rendered image, only order of triangles
+ * and vertices.
+ * <p>
+ * Triangle order is optimized with Tipsify (Sander, Nehab, Barczak: Fast Triangle Reordering
+ * for Vertex Locality and Reduced Overdraw) for post-transform vertex cache, then clusters of
+ * triangles found by Tipsify are sorted so outer clusters, that tend to occlude the rest of
+ * the mesh, are drawn first. At last vertices are stored in order of their first use.
+ */
+@Slf4j
+@UtilityClass
+public class GeometryOptimizer {
+
+    /**
+     * Size of simulated post-transform vertex cache (FIFO).
+     */
+    public static final int CACHE_SIZE = 16;
+
+    /**
+     * How much worse than ACMR of whole cluster can be ACMR of its part to split the cluster
+     * for overdraw sorting. Greater values produce more clusters and less overdraw.
+     */
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    /**
+     * Runs all optimizations on specified geometry in place.
+     */
+    public static Geometry optimize(Geometry geometry) {
+        int[] indices = geometry.getIndices();
+        if ((indices.length % 3) != 0) {
+            throw new RuntimeException("We have incomplete face.");
+        }
+
+        long start = System.nanoTime();
+        CacheStatistics before = analyzeVertexCache(indices, geometry.getVertexCount(), CACHE_SIZE);
+
+        int[] clusters = new int[indices.length / 3 + 1];
+        int[] optimized = optimizeVertexCache(indices, geometry.getVertexCount(), CACHE_SIZE, clusters);
+        geometry.setIndices(optimizeOverdraw(optimized, geometry.getPositionData(), clusters, OVERDRAW_THRESHOLD));
+        // triangles were reordered, meshlet ranges are no longer valid
+        geometry.setMeshlets(null);
+        optimizeVertexFetch(geometry);
+
+        CacheStatistics after = analyzeVertexCache(geometry.getIndices(), geometry.getVertexCount(), CACHE_SIZE);
+        log.info("Optimized {} in {} ms. Before: {}, after: {}", geometry, (System.nanoTime() - start) / 1e6f, before, after);
+        return geometry;
+    }
+
+    /**
+     * Reorders triangles for post-transform vertex cache of specified size. If clusters
+     * array (of length triangle count + 1) is not null, it is filled with indices of first
+     * triangles of clusters (parts of output separated by dead ends) terminated by the
+     * triangle count.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount, int cacheSize, int[] clusters) {
+        int triangles = indices.length / 3;
+
+        // Vertex to triangle adjacency in compressed rows.
+        int[] live = new int[vertexCount];
+        for (int index : indices) {
+            live[index]++;
+        }
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] = offsets[v] + live[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] timestamps = new int[vertexCount];
+        int[] deadEnd = new int[indices.length];
+        int deadEndSize = 0;
+        boolean[] emitted = new boolean[triangles];
+        int[] candidates = new int[indices.length];
+
+        int[] output = new int[indices.length];
+        int written = 0;
+        int clusterCount = 0;
+        if (clusters != null && triangles > 0) {
+            clusters[clusterCount++] = 0;
+        }
+
+        int timestamp = cacheSize + 1;
+        int cursor = 0;
+        int fanning = 0;
+
+        while (fanning >= 0) {
+            int candidateCount = 0;
+
+            for (int a = offsets[fanning]; a < offsets[fanning + 1]; a++) {
+                int triangle = adjacency[a];
+                if (emitted[triangle]) {
+                    continue;
+                }
+
+                for (int k = 0; k < 3; k++) {
+                    int v = indices[triangle * 3 + k];
+                    output[written++] = v;
+                    deadEnd[deadEndSize++] = v;
+                    candidates[candidateCount++] = v;
+                    live[v]--;
+
+                    if (timestamp - timestamps[v] > cacheSize) {
+                        timestamps[v] = timestamp++;
+                    }
+                }
+                emitted[triangle] = true;
+            }
+
+            // Pick candidate that will still be in cache and has most live triangles.
+            int next = -1;
+            int best = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                int v = candidates[c];
+                if (live[v] > 0) {
+                    int priority = 0;
+                    if (timestamp - timestamps[v] + 2 * live[v] <= cacheSize) {
+                        priority = timestamp - timestamps[v];
+                    }
+                    if (priority > best) {
+                        best = priority;
+                        next = v;
+                    }
+                }
+            }
+
+            if (next == -1) {
+                // Dead end, continue with recently used vertex or with next vertex in input order.
+                while (deadEndSize > 0 && next == -1) {
+                    int v = deadEnd[--deadEndSize];
+                    if (live[v] > 0) {
+                        next = v;
+                    }
+                }
+                while (next == -1 && cursor < vertexCount) {
+                    if (live[cursor] > 0) {
+                        next = cursor;
+                    }
+                    cursor++;
+                }
+
+                if (clusters != null && next != -1 && written / 3 > clusters[clusterCount - 1]) {
+                    clusters[clusterCount++] = written / 3;
+                }
+            }
+
+            fanning = next;
+        }
+
+        if (clusters != null) {
+            clusters[clusterCount] = triangles;
+        }
+
+        return output;
+    }
+
+    /**
+     * Sorts clusters of triangles produced by {@link #optimizeVertexCache(int[], int, int, int[])}
+     * so clusters facing out from center of the mesh are drawn first. Clusters are split
+     * further where ACMR of the part is not worse than threshold times ACMR of whole cluster.
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, int[] clusters, float threshold) {
+        int[] boundaries = splitClusters(indices, clusters, threshold);
+        int clusterCount = boundaries.length - 1;
+
+        // Area weighted centroid of whole mesh.
+        float mx = 0, my = 0, mz = 0, area = 0;
+        float[] centroids = new float[clusterCount * 3];
+        float[] normals = new float[clusterCount * 3];
+
+        for (int c = 0; c < clusterCount; c++) {
+            float cx = 0, cy = 0, cz = 0, clusterArea = 0;
+            float nx = 0, ny = 0, nz = 0;
+
+            for (int t = boundaries[c]; t < boundaries[c + 1]; t++) {
+                int i = indices[t * 3] * 3;
+                int j = indices[t * 3 + 1] * 3;
+                int k = indices[t * 3 + 2] * 3;
+
+                float ax = positions[j] - positions[i], ay = positions[j + 1] - positions[i + 1], az = positions[j + 2] - positions[i + 2];
+                float bx = positions[k] - positions[i], by = positions[k + 1] - positions[i + 1], bz = positions[k + 2] - positions[i + 2];
+                float x = ay * bz - az * by;
+                float y = az * bx - ax * bz;
+                float z = ax * by - ay * bx;
+                float a = (float) Math.sqrt(x * x + y * y + z * z);
+
+                cx += (positions[i] + positions[j] + positions[k]) / 3 * a;
+                cy += (positions[i + 1] + positions[j + 1] + positions[k + 1]) / 3 * a;
+                cz += (positions[i + 2] + positions[j + 2] + positions[k + 2]) / 3 * a;
+                clusterArea += a;
+
+                nx += x;
+                ny += y;
+                nz += z;
+            }
+
+            mx += cx;
+            my += cy;
+            mz += cz;
+            area += clusterArea;
+
+            float inv = clusterArea == 0 ? 0 : 1 / clusterArea;
+            centroids[c * 3] = cx * inv;
+            centroids[c * 3 + 1] = cy * inv;
+            centroids[c * 3 + 2] = cz * inv;
+
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            float invLength = length == 0 ? 0 : 1 / length;
+            normals[c * 3] = nx * invLength;
+            normals[c * 3 + 1] = ny * invLength;
+            normals[c * 3 + 2] = nz * invLength;
+        }
+
+        float inv = area == 0 ? 0 : 1 / area;
+        mx *= inv;
+        my *= inv;
+        mz *= inv;
+
+        // Sort by dot(centroid - mesh centroid, normal) descending. Key is stored in high bits
+        // so that primitive sort can be used; cluster index in low bits keeps it stable.
+        long[] keys = new long[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            float dot = (centroids[c * 3] - mx) * normals[c * 3]
+                    + (centroids[c * 3 + 1] - my) * normals[c * 3 + 1]
+                    + (centroids[c * 3 + 2] - mz) * normals[c * 3 + 2];
+            keys[c] = (long) sortableBits(-dot) << 32 | c;
+        }
+        Arrays.sort(keys);
+
+        int[] output = new int[indices.length];
+        int written = 0;
+        for (long key : keys) {
+            int c = (int) key;
+            int length = (boundaries[c + 1] - boundaries[c]) * 3;
+            System.arraycopy(indices, boundaries[c] * 3, output, written, length);
+            written += length;
+        }
+        return output;
+    }
+
+    /**
+     * Reorders vertices of geometry in order of their first use by indices and drops
+     * vertices that are not used at all. Levels of detail are remapped too, they only
+     * use vertices of full detail indices.
+     */
+    public static Geometry optimizeVertexFetch(Geometry geometry) {
+        int[] indices = geometry.getIndices();
+        int[] remap = new int[geometry.getVertexCount()];
+        Arrays.fill(remap, -1);
+
+        int vertices = 0;
+        int[] newIndices = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] == -1) {
+                remap[v] = vertices++;
+            }
+            newIndices[i] = remap[v];
+        }
+
+        geometry.setPositionData(remap(geometry.getPositionData(), 3, remap, vertices));
+        geometry.setNormalData(remap(geometry.getNormalData(), 3, remap, vertices));
+        geometry.setTexCoordData(remap(geometry.getTexCoordData(), 2, remap, vertices));
+        geometry.setTangentData(remap(geometry.getTangentData(), 3, remap, vertices));
+        geometry.setBitangentData(remap(geometry.getBitangentData(), 3, remap, vertices));
+        geometry.setIndices(newIndices);
+
+        if (geometry.hasLods()) {
+            LevelOfDetail[] lods = geometry.getLods();
+            for (int l = 0; l < lods.length; l++) {
+                int[] lodIndices = lods[l].getIndices().clone();
+                for (int i = 0; i < lodIndices.length; i++) {
+                    lodIndices[i] = remap[lodIndices[i]];
+                }
+                lods[l] = new LevelOfDetail(lodIndices, lods[l].getError());
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * Simulates FIFO post-transform vertex cache of specified size.
+     */
+    public static CacheStatistics analyzeVertexCache(int[] indices, int vertexCount, int cacheSize) {
+        int[] timestamps = new int[vertexCount];
+        boolean[] used = new boolean[vertexCount];
+        int timestamp = cacheSize + 1;
+        int misses = 0;
+        int unique = 0;
+
+        for (int v : indices) {
+            if (timestamp - timestamps[v] > cacheSize) {
+                timestamps[v] = timestamp++;
+                misses++;
+            }
+            if (!used[v]) {
+                used[v] = true;
+                unique++;
+            }
+        }
+
+        int triangles = indices.length / 3;
+        return new CacheStatistics(triangles == 0 ? 0 : (float) misses / triangles, unique == 0 ? 0 : (float) misses / unique);
+    }
+
+    // Splits clusters at soft boundaries, where ACMR of part is close enough to ACMR of whole cluster.
+    private static int[] splitClusters(int[] indices, int[] clusters, float threshold) {
+        int triangles = indices.length / 3;
+        int clusterCount = 0;
+        while (clusters[clusterCount] < triangles) {
+            clusterCount++;
+        }
+
+        int maxVertex = 0;
+        for (int index : indices) {
+            maxVertex = Math.max(maxVertex, index);
+        }
+        int[] timestamps = new int[maxVertex + 1];
+        int timestamp = CACHE_SIZE + 1;
+
+        int[] boundaries = new int[triangles + 1];
+        int count = 0;
+
+        for (int c = 0; c < clusterCount; c++) {
+            int start = clusters[c];
+            int end = clusters[c + 1];
+
+            timestamp += CACHE_SIZE + 1;
+            int misses = 0;
+            for (int i = start * 3; i < end * 3; i++) {
+                if (timestamp - timestamps[indices[i]] > CACHE_SIZE) {
+                    timestamps[indices[i]] = timestamp++;
+                    misses++;
+                }
+            }
+            float limit = (float) misses / (end - start) * threshold;
+
+            timestamp += CACHE_SIZE + 1;
+            boundaries[count++] = start;
+            int partStart = start;
+            int partMisses = 0;
+            for (int t = start; t < end; t++) {
+                for (int i = t * 3; i < t * 3 + 3; i++) {
+                    if (timestamp - timestamps[indices[i]] > CACHE_SIZE) {
+                        timestamps[indices[i]] = timestamp++;
+                        partMisses++;
+                    }
+                }
+                if (t + 1 < end && (float) partMisses / (t + 1 - partStart) <= limit) {
+                    boundaries[count++] = t + 1;
+                    partStart = t + 1;
+                    partMisses = 0;
+                    timestamp += CACHE_SIZE + 1;
+                }
+            }
+        }
+        boundaries[count++] = triangles;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    static float[] remap(float[] data, int components, int[] remap, int vertices) {
+        if (data == null || data.length == 0) {
+            return data;
+        }
+
+        float[] result = new float[vertices * components];
+        for (int v = 0; v < remap.length; v++) {
+            if (remap[v] != -1) {
+                System.arraycopy(data, v * components, result, remap[v] * components, components);
+            }
+        }
+        return result;
+    }
+
+    // Maps float to int bits that sort in the same order as floats.
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits < 0 ? bits ^ 0x7FFFFFFF : bits;
+    }
+
+    /**
+     * Average cache miss ratio (transformed vertices per triangle, 0.5 is optimum for large
+     * meshes, 3 is worst) and average transformed to rendered vertex ratio (1 is optimum).
+     */
+    public static final class CacheStatistics {
+        public final float acmr;
+        public final float atvr;
+
+        public CacheStatistics(float acmr, float atvr) {
+            this.acmr = acmr;
+            this.atvr = atvr;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ACMR %.3f, ATVR %.3f", acmr, atvr);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies geometry by collapsing edges in order of quadric error (Garland, Heckbert:
+ * Surface Simplification Using Quadric Error Metrics). Vertices are never moved or created,
+ * edge collapse only merges vertex into one of its neighbours, so simplified index lists
+ * can share vertex buffer with the full detail geometry.
+ * <p>
+ * Vertices on open edges (mesh borders and UV or normal seams, where vertices are split)
+ * and on non-manifold edges are locked, so seams and silhouettes of open meshes are kept.
+ * Collapses that would flip a triangle are rejected.
+ */
+@Slf4j
+@UtilityClass
+public class GeometrySimplifier {
+
+    /**
+     * Default ratio of triangles of each level of detail to the previous level.
+     */
+    public static final float DEFAULT_RATIO = 0.5f;
+
+    // Level is dropped when simplification removes less than this ratio of triangles.
+    private static final float MIN_REDUCTION = 0.9f;
+
+    // a2, b2, c2, ab, ac, bc, ad, bd, cd, d2 and weight
+    private static final int QUADRIC = 11;
+
+    /**
+     * Generates chain of levels of detail, each with ratio of triangles of the previous one.
+     * Chain ends earlier when the geometry can not be simplified any further.
+     */
+    public static LevelOfDetail[] generateLods(Geometry geometry, int count, float ratio) {
+        long start = System.nanoTime();
+        LevelOfDetail[] lods = new LevelOfDetail[count];
+
+        int[] indices = geometry.getIndices();
+        float error = 0;
+        int generated = 0;
+        for (; generated < count; generated++) {
+            int target = (int) (indices.length / 3 * ratio) * 3;
+            LevelOfDetail lod = simplify(indices, geometry.getPositionData(), target, Float.MAX_VALUE);
+            if (lod.getIndices().length > indices.length * MIN_REDUCTION) {
+                break;
+            }
+
+            // each level is simplified from the previous one, so its distance from full detail
+            // is bounded by sum of errors of the chain
+            error += lod.getError();
+            indices = GeometryOptimizer.optimizeVertexCache(lod.getIndices(), geometry.getVertexCount(), GeometryOptimizer.CACHE_SIZE, null);
+            lods[generated] = new LevelOfDetail(indices, error);
+        }
+
+        log.info("Generated {} levels of detail for {} in {} ms.", generated, geometry, (System.nanoTime() - start) / 1e6f);
+        return Arrays.copyOf(lods, generated);
+    }
+
+    /**
+     * Collapses edges until index count drops to target index count or error of next collapse
+     * would exceed target error (object space distance).
+     */
+    public static LevelOfDetail simplify(int[] indices, float[] positions, int targetIndexCount, float targetError) {
+        int vertexCount = positions.length / 3;
+        int[] result = indices.clone();
+        int count = result.length;
+
+        boolean[] locked = findLockedVertices(indices, vertexCount);
+        double[] quadrics = computeQuadrics(indices, positions, vertexCount);
+
+        double limit = (double) targetError * targetError;
+        double maxError = 0;
+
+        int[] offsets = new int[vertexCount + 1];
+        int[] adjacency = new int[count];
+        int[] targets = new int[vertexCount];
+        double[] costs = new double[vertexCount];
+        long[] order = new long[vertexCount];
+        boolean[] touched = new boolean[vertexCount];
+
+        while (count > targetIndexCount) {
+            buildAdjacency(result, count, vertexCount, offsets, adjacency);
+
+            // Cheapest collapse of each vertex.
+            int candidates = 0;
+            for (int v = 0; v < vertexCount; v++) {
+                targets[v] = -1;
+                if (locked[v] || offsets[v] == offsets[v + 1]) {
+                    continue;
+                }
+
+                double best = Double.MAX_VALUE;
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    int triangle = adjacency[a] * 3;
+                    for (int k = 0; k < 3; k++) {
+                        int t = result[triangle + k];
+                        if (t == v) {
+                            continue;
+                        }
+                        double cost = evaluate(quadrics, v, positions, t);
+                        if (cost < best) {
+                            best = cost;
+                            targets[v] = t;
+                        }
+                    }
+                }
+
+                costs[v] = best;
+                // non-negative floats keep their order when compared as raw bits
+                order[candidates++] = (long) Float.floatToIntBits((float) best) << 32 | v;
+            }
+            Arrays.sort(order, 0, candidates);
+            Arrays.fill(touched, false);
+
+            // count of indices left after collapses of this pass, degenerate triangles are removed after the pass
+            int remaining = count;
+            int collapses = 0;
+            for (int c = 0; c < candidates && remaining > targetIndexCount; c++) {
+                int v = (int) order[c];
+                int t = targets[v];
+                if (costs[v] > limit) {
+                    break;
+                }
+                if (t == -1 || touched[v] || touched[t] || flips(result, offsets, adjacency, positions, v, t)) {
+                    continue;
+                }
+
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    int triangle = adjacency[a] * 3;
+                    boolean removed = false;
+                    for (int k = 0; k < 3; k++) {
+                        int u = result[triangle + k];
+                        touched[u] = true;
+                        if (u == t) {
+                            removed = true;
+                        } else if (u == v) {
+                            result[triangle + k] = t;
+                        }
+                    }
+                    if (removed) {
+                        remaining -= 3;
+                    }
+                }
+
+                for (int q = 0; q < QUADRIC; q++) {
+                    quadrics[t * QUADRIC + q] += quadrics[v * QUADRIC + q];
+                }
+                maxError = Math.max(maxError, costs[v]);
+                collapses++;
+            }
+
+            count = removeDegenerate(result, count);
+            if (collapses == 0) {
+                break;
+            }
+        }
+
+        return new LevelOfDetail(Arrays.copyOf(result, count), (float) Math.sqrt(maxError));
+    }
+
+    // Vertex to triangle adjacency of first count indices in compressed rows.
+    private static void buildAdjacency(int[] indices, int count, int vertexCount, int[] offsets, int[] adjacency) {
+        Arrays.fill(offsets, 0);
+        for (int i = 0; i < count; i++) {
+            offsets[indices[i] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < count; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+    }
+
+    // Vertices of edges that are used by other than two triangles.
+    private static boolean[] findLockedVertices(int[] indices, int vertexCount) {
+        long[] edges = new long[indices.length];
+        for (int i = 0; i < indices.length; i += 3) {
+            for (int k = 0; k < 3; k++) {
+                int a = indices[i + k];
+                int b = indices[i + (k + 1) % 3];
+                edges[i + k] = (long) Math.min(a, b) << 32 | Math.max(a, b);
+            }
+        }
+        Arrays.sort(edges);
+
+        boolean[] locked = new boolean[vertexCount];
+        for (int i = 0; i < edges.length; ) {
+            int j = i;
+            while (j < edges.length && edges[j] == edges[i]) {
+                j++;
+            }
+            if (j - i != 2) {
+                locked[(int) (edges[i] >>> 32)] = true;
+                locked[(int) edges[i]] = true;
+            }
+            i = j;
+        }
+        return locked;
+    }
+
+    // Sum of area weighted plane quadrics of triangles around each vertex.
+    private static double[] computeQuadrics(int[] indices, float[] positions, int vertexCount) {
+        double[] quadrics = new double[vertexCount * QUADRIC];
+        for (int i = 0; i < indices.length; i += 3) {
+            int p0 = indices[i] * 3, p1 = indices[i + 1] * 3, p2 = indices[i + 2] * 3;
+
+            double ax = positions[p1] - positions[p0], ay = positions[p1 + 1] - positions[p0 + 1], az = positions[p1 + 2] - positions[p0 + 2];
+            double bx = positions[p2] - positions[p0], by = positions[p2 + 1] - positions[p0 + 1], bz = positions[p2 + 2] - positions[p0 + 2];
+            double nx = ay * bz - az * by;
+            double ny = az * bx - ax * bz;
+            double nz = ax * by - ay * bx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                continue;
+            }
+
+            double weight = length * 0.5;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * positions[p0] + ny * positions[p0 + 1] + nz * positions[p0 + 2]);
+
+            for (int k = 0; k < 3; k++) {
+                int q = indices[i + k] * QUADRIC;
+                quadrics[q] += weight * nx * nx;
+                quadrics[q + 1] += weight * ny * ny;
+                quadrics[q + 2] += weight * nz * nz;
+                quadrics[q + 3] += weight * nx * ny;
+                quadrics[q + 4] += weight * nx * nz;
+                quadrics[q + 5] += weight * ny * nz;
+                quadrics[q + 6] += weight * nx * d;
+                quadrics[q + 7] += weight * ny * d;
+                quadrics[q + 8] += weight * nz * d;
+                quadrics[q + 9] += weight * d * d;
+                quadrics[q + 10] += weight;
+            }
+        }
+        return quadrics;
+    }
+
+    // Mean squared distance of planes of vertex v from position of vertex t.
+    private static double evaluate(double[] quadrics, int v, float[] positions, int t) {
+        int q = v * QUADRIC;
+        double x = positions[t * 3], y = positions[t * 3 + 1], z = positions[t * 3 + 2];
+
+        double rx = quadrics[q] * x + quadrics[q + 3] * y + quadrics[q + 4] * z + quadrics[q + 6];
+        double ry = quadrics[q + 3] * x + quadrics[q + 1] * y + quadrics[q + 5] * z + quadrics[q + 7];
+        double rz = quadrics[q + 4] * x + quadrics[q + 5] * y + quadrics[q + 2] * z + quadrics[q + 8];
+        double error = rx * x + ry * y + rz * z + quadrics[q + 6] * x + quadrics[q + 7] * y + quadrics[q + 8] * z + quadrics[q + 9];
+
+        double weight = quadrics[q + 10];
+        return weight == 0 ? 0 : Math.abs(error) / weight;
+    }
+
+    // Whether moving vertex v to position of t flips any triangle that does not contain t.
+    private static boolean flips(int[] indices, int[] offsets, int[] adjacency, float[] positions, int v, int t) {
+        for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+            int triangle = adjacency[a] * 3;
+            int i0 = indices[triangle], i1 = indices[triangle + 1], i2 = indices[triangle + 2];
+            if (i0 == t || i1 == t || i2 == t) {
+                continue;
+            }
+
+            // rotate so that v is first
+            int b = i0 == v ? i1 : i1 == v ? i2 : i0;
+            int c = i0 == v ? i2 : i1 == v ? i0 : i1;
+
+            float bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+            float cx = positions[c * 3], cy = positions[c * 3 + 1], cz = positions[c * 3 + 2];
+
+            float n0x = (by - positions[v * 3 + 1]) * (cz - positions[v * 3 + 2]) - (bz - positions[v * 3 + 2]) * (cy - positions[v * 3 + 1]);
+            float n0y = (bz - positions[v * 3 + 2]) * (cx - positions[v * 3]) - (bx - positions[v * 3]) * (cz - positions[v * 3 + 2]);
+            float n0z = (bx - positions[v * 3]) * (cy - positions[v * 3 + 1]) - (by - positions[v * 3 + 1]) * (cx - positions[v * 3]);
+
+            float n1x = (by - positions[t * 3 + 1]) * (cz - positions[t * 3 + 2]) - (bz - positions[t * 3 + 2]) * (cy - positions[t * 3 + 1]);
+            float n1y = (bz - positions[t * 3 + 2]) * (cx - positions[t * 3]) - (bx - positions[t * 3]) * (cz - positions[t * 3 + 2]);
+            float n1z = (bx - positions[t * 3]) * (cy - positions[t * 3 + 1]) - (by - positions[t * 3 + 1]) * (cx - positions[t * 3]);
+
+            if (n0x * n1x + n0y * n1y + n0z * n1z <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Compacts triangles with two equal indices out of the list, returns new index count.
+    private static int removeDegenerate(int[] indices, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i += 3) {
+            int a = indices[i], b = indices[i + 1], c = indices[i + 2];
+            if (a != b && b != c && a != c) {
+                indices[count++] = a;
+                indices[count++] = b;
+                indices[count++] = c;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges vertices of geometry that have all attributes (position, normal, texture
+ * coordinates, tangent and bitangent) equal within epsilon and remaps indices.
+ * <p>
+ * Vertices are looked up in open addressing hash table keyed by position cell of size
+ * 2 * epsilon, so each vertex has to check at most 8 neighbouring cells. Vertices in the
+ * same cell are linked in list and compared attribute by attribute.
+ */
+@Slf4j
+@UtilityClass
+public class GeometryWelder {
+
+    /**
+     * Default epsilon, small enough to only merge vertices that differ by rounding errors.
+     */
+    public static final float DEFAULT_EPSILON = 1e-5f;
+
+    private static final int EMPTY = -1;
+
+    /**
+     * Welds vertices of geometry in place. Triangles that collapsed to line or point are
+     * removed (from levels of detail too), meshlets are dropped if any triangle was removed.
+     * With zero epsilon only exact duplicates are merged.
+     */
+    public static Geometry weld(Geometry geometry, float epsilon) {
+        if (epsilon < 0) {
+            throw new IllegalArgumentException("Epsilon must not be negative!");
+        }
+
+        long start = System.nanoTime();
+        int vertexCount = geometry.getVertexCount();
+        int[] remap = new int[vertexCount];
+        int vertices = buildRemap(geometry, epsilon, remap);
+        if (vertices == vertexCount) {
+            log.info("No vertices of {} welded in {} ms.", geometry, (System.nanoTime() - start) / 1e6f);
+            return geometry;
+        }
+
+        geometry.setPositionData(GeometryOptimizer.remap(geometry.getPositionData(), 3, remap, vertices));
+        geometry.setNormalData(GeometryOptimizer.remap(geometry.getNormalData(), 3, remap, vertices));
+        geometry.setTexCoordData(GeometryOptimizer.remap(geometry.getTexCoordData(), 2, remap, vertices));
+        geometry.setTangentData(GeometryOptimizer.remap(geometry.getTangentData(), 3, remap, vertices));
+        geometry.setBitangentData(GeometryOptimizer.remap(geometry.getBitangentData(), 3, remap, vertices));
+
+        int[] indices = remapIndices(geometry.getIndices(), remap);
+        if (indices.length != geometry.getIndices().length && geometry.hasMeshlets()) {
+            log.warn("Welding removed degenerate triangles of {}, dropping meshlets.", geometry);
+            geometry.setMeshlets(null);
+        }
+        geometry.setIndices(indices);
+
+        if (geometry.hasLods()) {
+            LevelOfDetail[] lods = geometry.getLods();
+            for (int l = 0; l < lods.length; l++) {
+                lods[l] = new LevelOfDetail(remapIndices(lods[l].getIndices(), remap), lods[l].getError());
+            }
+        }
+
+        log.info("Welded {} vertices of {} to {} in {} ms.", vertexCount, geometry, vertices, (System.nanoTime() - start) / 1e6f);
+        return geometry;
+    }
+
+    /**
+     * Finds vertices with all attributes within epsilon and fills remap with new index of
+     * each vertex. New indices are assigned in order of first occurrence.
+     *
+     * @return count of unique vertices
+     */
+    public static int buildRemap(Geometry geometry, float epsilon, int[] remap) {
+        int vertexCount = geometry.getVertexCount();
+        float[] positions = geometry.getPositionData();
+        List<float[]> attributes = new ArrayList<>(5);
+        List<Integer> components = new ArrayList<>(5);
+        addAttribute(attributes, components, geometry.getPositionData(), 3, vertexCount);
+        addAttribute(attributes, components, geometry.getNormalData(), 3, vertexCount);
+        addAttribute(attributes, components, geometry.getTexCoordData(), 2, vertexCount);
+        addAttribute(attributes, components, geometry.getTangentData(), 3, vertexCount);
+        addAttribute(attributes, components, geometry.getBitangentData(), 3, vertexCount);
+        float[][] data = attributes.toArray(new float[attributes.size()][]);
+        int[] sizes = new int[data.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = components.get(i);
+        }
+
+        float cellSize = epsilon * 2;
+
+        // Slots hold last inserted vertex of cell, vertices of the same cell are linked by next.
+        int capacity = Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) << 1;
+        int[] slots = new int[capacity];
+        long[] keys = new long[capacity * 3];
+        int[] next = new int[vertexCount];
+        Arrays.fill(slots, EMPTY);
+
+        long[] low = new long[3];
+        long[] high = new long[3];
+        int vertices = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int c = 0; c < 3; c++) {
+                float p = positions[v * 3 + c];
+                low[c] = cell(p - epsilon, cellSize);
+                high[c] = cell(p + epsilon, cellSize);
+            }
+
+            int match = EMPTY;
+            // low and high are the same or adjacent cells
+            for (int x = 0; x <= high[0] - low[0] && match == EMPTY; x++) {
+                for (int y = 0; y <= high[1] - low[1] && match == EMPTY; y++) {
+                    for (int z = 0; z <= high[2] - low[2] && match == EMPTY; z++) {
+                        int slot = find(slots, keys, low[0] + x, low[1] + y, low[2] + z);
+                        for (int u = slots[slot]; u != EMPTY; u = next[u]) {
+                            if (matches(data, sizes, u, v, epsilon)) {
+                                match = u;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (match != EMPTY) {
+                remap[v] = remap[match];
+                continue;
+            }
+
+            remap[v] = vertices++;
+            int slot = find(slots, keys, cell(positions[v * 3], cellSize), cell(positions[v * 3 + 1], cellSize),
+                    cell(positions[v * 3 + 2], cellSize));
+            if (slots[slot] == EMPTY) {
+                keys[slot * 3] = cell(positions[v * 3], cellSize);
+                keys[slot * 3 + 1] = cell(positions[v * 3 + 1], cellSize);
+                keys[slot * 3 + 2] = cell(positions[v * 3 + 2], cellSize);
+            }
+            next[v] = slots[slot];
+            slots[slot] = v;
+        }
+        return vertices;
+    }
+
+    // Returns slot of cell or empty slot where the cell should be inserted (linear probing).
+    private static int find(int[] slots, long[] keys, long x, long y, long z) {
+        int mask = slots.length - 1;
+        int slot = hash(x, y, z) & mask;
+        while (slots[slot] != EMPTY) {
+            if (keys[slot * 3] == x && keys[slot * 3 + 1] == y && keys[slot * 3 + 2] == z) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long x, long y, long z) {
+        long h = x * 73856093L ^ y * 19349663L ^ z * 83492791L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    // Cell of position coordinate, with zero epsilon each distinct value is its own cell.
+    // Cells are longs, coordinates over ~21k would saturate int cells with default epsilon
+    // and put all such vertices to single cell.
+    private static long cell(float value, float cellSize) {
+        if (cellSize == 0) {
+            return Float.floatToIntBits(value + 0.0f); // -0 and +0 share cell
+        }
+        return (long) Math.floor((double) value / cellSize);
+    }
+
+    private static void addAttribute(List<float[]> attributes, List<Integer> components, float[] data, int size, int vertexCount) {
+        if (data != null && data.length >= vertexCount * size && data.length > 0) {
+            attributes.add(data);
+            components.add(size);
+        }
+    }
+
+    private static boolean matches(float[][] data, int[] sizes, int a, int b, float epsilon) {
+        for (int i = 0; i < data.length; i++) {
+            int size = sizes[i];
+            for (int c = 0; c < size; c++) {
+                // negated so that NaNs never match
+                if (!(Math.abs(data[i][a * size + c] - data[i][b * size + c]) <= epsilon)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Remaps indices and removes triangles that have two or more same vertices.
+    private static int[] remapIndices(int[] indices, int[] remap) {
+        int[] result = new int[indices.length];
+        int count = 0;
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int a = remap[indices[i]];
+            int b = remap[indices[i + 1]];
+            int c = remap[indices[i + 2]];
+            if (a != b && b != c && a != c) {
+                result[count++] = a;
+                result[count++] = b;
+                result[count++] = c;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
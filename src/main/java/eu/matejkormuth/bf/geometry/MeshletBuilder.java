@@ -0,0 +1,266 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.Meshlet;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits full detail triangles of geometry into meshlets, clusters of neighbouring triangles
+ * with bounding sphere and normal cone, so parts of mesh can be culled on CPU. Indices are
+ * reordered so each meshlet is contiguous range, which means this must be the last step
+ * that changes order of triangles.
+ * <p>
+ * Meshlets are grown greedily from seed triangle by adding adjacent triangles that add the
+ * fewest new vertices, ties are broken by distance from the meshlet centroid.
+ */
+@Slf4j
+@UtilityClass
+public class MeshletBuilder {
+
+    public static final int MAX_VERTICES = 64;
+    public static final int MAX_TRIANGLES = 128;
+
+    public static Meshlet[] build(Geometry geometry) {
+        return build(geometry, MAX_VERTICES, MAX_TRIANGLES);
+    }
+
+    public static Meshlet[] build(Geometry geometry, int maxVertices, int maxTriangles) {
+        int[] indices = geometry.getIndices();
+        float[] positions = geometry.getPositionData();
+        if ((indices.length % 3) != 0) {
+            throw new RuntimeException("We have incomplete face.");
+        }
+
+        long start = System.nanoTime();
+        int vertexCount = geometry.getVertexCount();
+        int triangles = indices.length / 3;
+
+        // Vertex to triangle adjacency in compressed rows.
+        int[] offsets = new int[vertexCount + 1];
+        for (int index : indices) {
+            offsets[index + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        boolean[] emitted = new boolean[triangles];
+        int[] vertexMeshlet = new int[vertexCount];
+        int[] candidateMeshlet = new int[triangles];
+        Arrays.fill(vertexMeshlet, -1);
+        Arrays.fill(candidateMeshlet, -1);
+
+        int[] candidates = new int[64];
+        int candidateCount = 0;
+
+        int[] output = new int[indices.length];
+        int written = 0;
+        int cursor = 0;
+        List<Meshlet> meshlets = new ArrayList<>(triangles / maxTriangles + 1);
+
+        while (written < indices.length) {
+            int id = meshlets.size();
+            int first = written;
+            int vertices = 0;
+            float cx = 0, cy = 0, cz = 0;
+
+            // Seed with leftover candidate of previous meshlet to stay spatially coherent.
+            int seed = -1;
+            for (int c = 0; c < candidateCount && seed == -1; c++) {
+                if (!emitted[candidates[c]]) {
+                    seed = candidates[c];
+                }
+            }
+            while (seed == -1) {
+                if (!emitted[cursor]) {
+                    seed = cursor;
+                }
+                cursor++;
+            }
+            candidateCount = 0;
+
+            int triangle = seed;
+            while (triangle != -1) {
+                emitted[triangle] = true;
+                for (int k = 0; k < 3; k++) {
+                    int v = indices[triangle * 3 + k];
+                    output[written++] = v;
+                    cx += positions[v * 3];
+                    cy += positions[v * 3 + 1];
+                    cz += positions[v * 3 + 2];
+
+                    if (vertexMeshlet[v] != id) {
+                        vertexMeshlet[v] = id;
+                        vertices++;
+
+                        for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                            int t = adjacency[a];
+                            if (!emitted[t] && candidateMeshlet[t] != id) {
+                                candidateMeshlet[t] = id;
+                                if (candidateCount == candidates.length) {
+                                    candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                                }
+                                candidates[candidateCount++] = t;
+                            }
+                        }
+                    }
+                }
+
+                if ((written - first) / 3 == maxTriangles) {
+                    break;
+                }
+
+                // Pick candidate that adds fewest vertices and is closest to centroid.
+                float inv = 1f / (written - first);
+                triangle = -1;
+                int bestVertices = Integer.MAX_VALUE;
+                float bestDistance = Float.MAX_VALUE;
+                int kept = 0;
+                for (int c = 0; c < candidateCount; c++) {
+                    int t = candidates[c];
+                    if (emitted[t]) {
+                        continue;
+                    }
+                    candidates[kept++] = t;
+
+                    int added = 0;
+                    float tx = 0, ty = 0, tz = 0;
+                    for (int k = 0; k < 3; k++) {
+                        int v = indices[t * 3 + k];
+                        if (vertexMeshlet[v] != id) {
+                            added++;
+                        }
+                        tx += positions[v * 3];
+                        ty += positions[v * 3 + 1];
+                        tz += positions[v * 3 + 2];
+                    }
+                    if (vertices + added > maxVertices || added > bestVertices) {
+                        continue;
+                    }
+
+                    float dx = tx / 3 - cx * inv, dy = ty / 3 - cy * inv, dz = tz / 3 - cz * inv;
+                    float distance = dx * dx + dy * dy + dz * dz;
+                    if (added < bestVertices || distance < bestDistance) {
+                        triangle = t;
+                        bestVertices = added;
+                        bestDistance = distance;
+                    }
+                }
+                candidateCount = kept;
+            }
+
+            meshlets.add(bounds(output, first, written - first, positions));
+        }
+
+        geometry.setIndices(output);
+        Meshlet[] result = meshlets.toArray(new Meshlet[meshlets.size()]);
+        geometry.setMeshlets(result);
+
+        log.info("Built {} meshlets for {} in {} ms. Average triangles: {}", result.length, geometry,
+                (System.nanoTime() - start) / 1e6f, result.length == 0 ? 0 : triangles / (float) result.length);
+        return result;
+    }
+
+    /**
+     * Computes bounding sphere and normal cone of specified range of triangles.
+     */
+    public static Meshlet bounds(int[] indices, int first, int count, float[] positions) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = first; i < first + count; i++) {
+            int p = indices[i] * 3;
+            minX = Math.min(minX, positions[p]);
+            minY = Math.min(minY, positions[p + 1]);
+            minZ = Math.min(minZ, positions[p + 2]);
+            maxX = Math.max(maxX, positions[p]);
+            maxY = Math.max(maxY, positions[p + 1]);
+            maxZ = Math.max(maxZ, positions[p + 2]);
+        }
+
+        float cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        float radius = 0;
+        for (int i = first; i < first + count; i++) {
+            int p = indices[i] * 3;
+            float dx = positions[p] - cx, dy = positions[p + 1] - cy, dz = positions[p + 2] - cz;
+            radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+        }
+        radius = (float) Math.sqrt(radius);
+
+        // Unit normals of triangles, degenerate triangles do not face anywhere.
+        float[] normals = new float[count];
+        int normalCount = 0;
+        float ax = 0, ay = 0, az = 0;
+        for (int i = first; i < first + count; i += 3) {
+            int p0 = indices[i] * 3, p1 = indices[i + 1] * 3, p2 = indices[i + 2] * 3;
+            float ex = positions[p1] - positions[p0], ey = positions[p1 + 1] - positions[p0 + 1], ez = positions[p1 + 2] - positions[p0 + 2];
+            float fx = positions[p2] - positions[p0], fy = positions[p2 + 1] - positions[p0 + 1], fz = positions[p2 + 2] - positions[p0 + 2];
+            float nx = ey * fz - ez * fy;
+            float ny = ez * fx - ex * fz;
+            float nz = ex * fy - ey * fx;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                continue;
+            }
+
+            normals[normalCount++] = nx / length;
+            normals[normalCount++] = ny / length;
+            normals[normalCount++] = nz / length;
+            ax += nx / length;
+            ay += ny / length;
+            az += nz / length;
+        }
+
+        float length = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (length == 0) {
+            return new Meshlet(first, count, cx, cy, cz, radius, 0, 0, 0, 1);
+        }
+        ax /= length;
+        ay /= length;
+        az /= length;
+
+        float minDot = 1;
+        for (int n = 0; n < normalCount; n += 3) {
+            minDot = Math.min(minDot, normals[n] * ax + normals[n + 1] * ay + normals[n + 2] * az);
+        }
+
+        // normals spread over more than a hemisphere, cluster faces every direction
+        float cutoff = minDot <= 0 ? 1 : (float) Math.sqrt(1 - minDot * minDot);
+        return new Meshlet(first, count, cx, cy, cz, radius, ax, ay, az, cutoff);
+    }
+}
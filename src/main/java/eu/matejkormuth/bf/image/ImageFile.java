@@ -27,8 +27,9 @@
 package eu.matejkormuth.bf.image;
 
 import eu.matejkormuth.bf.BFUtils;
-import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BFInput;
 import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.BlockFraming;
 import eu.matejkormuth.lpsim.*;
 import eu.matejkormuth.lpsim.gl.FilterMode;
 import eu.matejkormuth.lpsim.gl.Texture2D;
@@ -51,10 +52,13 @@ public class ImageFile {
     /*
      * Version history:
      * 1 - initial version with LZ4 compression
+     * 2 - block framed LZ4 compression (streaming decompression)
+     * 3 - codec id of each block in block table
+     * 4 - codec id and compressed length before each block instead of block table (blocks are written as they are compressed)
      */
-    public static final byte VERSION = 1;
+    public static final byte VERSION = 4;
 
-    private static int verifyCanReadVersion(BFInputStream in) throws IOException {
+    private static int verifyCanReadVersion(BFInput in) throws IOException {
         int version = in.readByte();
         if (version > VERSION) {
             throw new RuntimeException("Can't read this file! (Version mismatch)");
@@ -62,7 +66,7 @@ public class ImageFile {
         return version;
     }
 
-    private static int readHeader(BFInputStream in) throws IOException {
+    private static int readHeader(BFInput in) throws IOException {
         BFUtils.readHeader(in);
 
         if (in.readByte() != BF_TYPE) {
@@ -72,6 +76,18 @@ public class ImageFile {
         return verifyCanReadVersion(in);
     }
 
+    private static void decompress(BFInput in, int version) throws IOException {
+        if (version < 2) {
+            in.decompressLZ4();
+        } else if (version < 3) {
+            in.decompressBlocks(BlockFraming.TABLE_WITHOUT_CODECS);
+        } else if (version < 4) {
+            in.decompressBlocks(BlockFraming.TABLE);
+        } else {
+            in.decompressBlocks();
+        }
+    }
+
     private static void writeHeader(BFOutputStream out) throws IOException {
         BFUtils.writeHeader(out);
         out.writeByte(BF_TYPE);
@@ -80,10 +96,10 @@ public class ImageFile {
 
 
     // used mainly during development
-    public static Image loadToImage(BFInputStream in) throws IOException {
+    public static Image loadToImage(BFInput in) throws IOException {
         int version = readHeader(in);
 
-        in.decompress();
+        decompress(in, version);
 
         int width = in.readShort();
         int height = in.readShort();
@@ -104,10 +120,10 @@ public class ImageFile {
     }
 
     // used mainly in engine
-    public static ByteBuffer loadSingleLayer(BFInputStream in) throws IOException {
+    public static ByteBuffer loadSingleLayer(BFInput in) throws IOException {
         int version = readHeader(in);
 
-        in.decompress();
+        decompress(in, version);
 
         int width = in.readShort();
         int height = in.readShort();
@@ -122,15 +138,15 @@ public class ImageFile {
         Format format = in.readImageFormat();
 
         int length = width * height * (format.getBitsPerPixel() / Byte.SIZE);
-        byte[] buffer = new byte[length];
+        ByteBuffer buffer = BufferUtils.createByteBuffer(length);
 
         in.readFully(buffer);
         in.close();
 
-        return (ByteBuffer) BufferUtils.createByteBuffer(buffer.length).put(buffer).flip();
+        return (ByteBuffer) buffer.flip();
     }
 
-    public static void loadIntoTexture(BFInputStream in, Texture2D to) throws IOException {
+    public static void loadIntoTexture(BFInput in, Texture2D to) throws IOException {
         Application.P.texturesIO.end();
         Application.P.texturesProcessing.start();
         Application.P.texturesParse.start();
@@ -138,7 +154,7 @@ public class ImageFile {
 
         Application.P.texturesParse.end();
         Application.P.texturesDecompress.start();
-        in.decompress();
+        decompress(in, version);
         Application.P.texturesDecompress.end();
 
         Application.P.texturesParse.start();
@@ -155,18 +171,19 @@ public class ImageFile {
         Format format = in.readImageFormat();
 
         int length = width * height * (format.getChannels() * format.getBitsPerPixel() / Byte.SIZE);
-        byte[] buffer = new byte[length];
-
-        in.readFully(buffer);
-        in.close();
         Application.P.texturesParse.end();
 
         Application.P.texturesDirectBuffer.start();
-        ByteBuffer buff = DirectBufferPool.acquire(buffer.length);
-        buff.put(buffer, 0, buffer.length);
-        buff.flip();
+        ByteBuffer buff = DirectBufferPool.acquire(length);
         Application.P.texturesDirectBuffer.end();
 
+        // Pixels are decompressed straight into the pooled direct buffer.
+        Application.P.texturesDecompress.start();
+        in.readFully(buff);
+        in.close();
+        buff.flip();
+        Application.P.texturesDecompress.end();
+
         Application.P.texturesProcessing.end();
 
         Application.P.texturesSetup.start();
@@ -191,10 +208,10 @@ public class ImageFile {
         //Util.checkGLError();
     }
 
-    public static void loadIntoTexture(BFInputStream in, TextureCube to) throws IOException {
+    public static void loadIntoTexture(BFInput in, TextureCube to) throws IOException {
         int version = readHeader(in);
 
-        in.decompress();
+        decompress(in, version);
 
         int width = in.readShort();
         int height = in.readShort();
@@ -215,11 +232,10 @@ public class ImageFile {
             Format format = in.readImageFormat();
 
             int length = width * height * (format.getChannels() * format.getBitsPerPixel() / Byte.SIZE);
-            byte[] buffer = new byte[length];
-
-            in.readFully(buffer);
+            ByteBuffer buff = DirectBufferPool.acquire(length);
 
-            ByteBuffer buff = (ByteBuffer) DirectBufferPool.acquire(buffer.length).put(buffer).flip();
+            in.readFully(buff);
+            buff.flip();
 
             switch (layerName.toLowerCase()) {
                 case "posx":
@@ -272,7 +288,7 @@ public class ImageFile {
             size += layer.getRaster().length; // raster
         }
 
-        System.out.println("comptued size: " + size);
+        log.debug("Computed size: {}", size);
 
         out.compressStart((2 * Short.BYTES) + Byte.BYTES + size);
 
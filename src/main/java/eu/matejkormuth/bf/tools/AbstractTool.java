@@ -26,6 +26,9 @@
  */
 package eu.matejkormuth.bf.tools;
 
+import eu.matejkormuth.bf.compression.Codec;
+import eu.matejkormuth.bf.compression.CodecOverrides;
+import eu.matejkormuth.bf.compression.CodecRegistry;
 import org.apache.commons.cli.*;
 
 import java.util.Locale;
@@ -69,6 +72,27 @@ public abstract class AbstractTool {
 
     public abstract void execute(CommandLine cmd) throws Exception;
 
+    /**
+     * Adds options selecting codec of written assets.
+     */
+    protected static void addCodecOptions(Options options) {
+        options.addOption("c", "codec", true, "codec to compress with (none, lz4, lz4hc, deflate), default lz4hc");
+        options.addOption("ct", "codec-types", true, "codec per asset type, for example bgf=deflate for cold assets");
+    }
+
+    /**
+     * Applies codec options to codec overrides and selects codec for specified asset type.
+     */
+    protected static Codec selectCodec(CommandLine cmd, String type) {
+        if (cmd.hasOption("ct")) {
+            CodecOverrides.parse(cmd.getOptionValue("ct"));
+        }
+        if (cmd.hasOption("c")) {
+            CodecOverrides.set(type, CodecRegistry.get(cmd.getOptionValue("c")));
+        }
+        return CodecOverrides.apply(type);
+    }
+
     protected static void print(String line) {
         System.out.println(line);
     }
@@ -0,0 +1,147 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.tools;
+
+import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BlockFraming;
+import eu.matejkormuth.bf.compression.BlockInputStream;
+import eu.matejkormuth.bf.compression.BlockOutputStream;
+import eu.matejkormuth.bf.compression.CodecOverrides;
+import eu.matejkormuth.bf.compression.CompressionUtil;
+import eu.matejkormuth.bf.geometry.GeometryFile;
+import eu.matejkormuth.bf.geometry.GeometryFilter;
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.content.OBJImporter;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Reports compression ratio and decode speed of geometry sections with each combination
+ * of pre-filters.
+ */
+public class BgfFilterBench extends AbstractTool {
+
+    private static final int[] FILTERS = {
+            GeometryFilter.NONE,
+            GeometryFilter.DELTA,
+            GeometryFilter.SHUFFLE,
+            GeometryFilter.DELTA | GeometryFilter.SHUFFLE
+    };
+
+    private int iterations;
+
+    public static void main(String[] args) {
+        new BgfFilterBench().start(args);
+    }
+
+    @Override
+    public void setupOptions(Options options) {
+        options.addOption("i", "input", true, "input file (.bgf or .obj)");
+        options.addOption("n", "iterations", true, "number of measured decode iterations (default 10)");
+        addCodecOptions(options);
+    }
+
+    @Override
+    public void execute(CommandLine cmd) throws Exception {
+        if (!cmd.hasOption("i")) {
+            help();
+            return;
+        }
+
+        String input = cmd.getOptionValue("i");
+        iterations = Integer.parseInt(cmd.getOptionValue("n", "10"));
+        selectCodec(cmd, CodecOverrides.GEOMETRY);
+
+        Geometry geometry = input.endsWith(".obj") ? OBJImporter.loadInternal(input)
+                : GeometryFile.loadToGeometry(new BFInputStream(new FileInputStream(input)), new Geometry());
+
+        print("File: " + input);
+        print(" Codec: " + CompressionUtil.getCodec().getName());
+        print(" Vertices: " + geometry.getVertexCount());
+        print(" Faces: " + geometry.getIndices().length / 3);
+        print(String.format(Locale.ENGLISH, " %-11s %-14s %10s %8s %12s", "section", "filter", "bytes", "ratio", "decode MB/s"));
+
+        floats("positions", geometry.getPositionData(), 3);
+        if (geometry.hasNormals())
+            floats("normals", geometry.getNormalData(), 3);
+        if (geometry.hasTexCoords())
+            floats("texcoords", geometry.getTexCoordData(), 2);
+        if (geometry.hasTangents())
+            floats("tangents", geometry.getTangentData(), 3);
+        if (geometry.hasBitangets())
+            floats("bitangents", geometry.getBitangentData(), 3);
+        ints("indices", geometry.getIndices());
+    }
+
+    private void floats(String name, float[] data, int components) throws IOException {
+        for (int filter : FILTERS) {
+            byte[] compressed = compress(GeometryFilter.encodeFloats(data, components, filter));
+
+            GeometryFilter.decodeFloats(decompress(compressed, data.length * Float.BYTES), components, filter); // warm up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                GeometryFilter.decodeFloats(decompress(compressed, data.length * Float.BYTES), components, filter);
+            }
+            report(name, filter, data.length * Float.BYTES, compressed.length, (System.nanoTime() - start) / iterations);
+        }
+    }
+
+    private void ints(String name, int[] data) throws IOException {
+        for (int filter : FILTERS) {
+            byte[] compressed = compress(GeometryFilter.encodeInts(data, filter));
+
+            GeometryFilter.decodeInts(decompress(compressed, data.length * Integer.BYTES), filter); // warm up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                GeometryFilter.decodeInts(decompress(compressed, data.length * Integer.BYTES), filter);
+            }
+            report(name, filter, data.length * Integer.BYTES, compressed.length, (System.nanoTime() - start) / iterations);
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        BlockOutputStream blocks = new BlockOutputStream(out, CompressionUtil.getCodec(), CompressionUtil.getBlockSize(), data.length);
+        blocks.write(data);
+        blocks.finish();
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, int length) throws IOException {
+        byte[] data = new byte[length];
+        new DataInputStream(new BlockInputStream(new DataInputStream(new ByteArrayInputStream(compressed)), BlockFraming.PREFIXED)).readFully(data);
+        return data;
+    }
+
+    private static void report(String section, int filter, int length, int compressed, long nanos) {
+        print(String.format(Locale.ENGLISH, " %-11s %-14s %10d %8.3f %12.1f", section, GeometryFilter.toString(filter),
+                compressed, compressed / (double) length, length / (nanos / 1e9) / (1024 * 1024)));
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.tools;
+
+import eu.matejkormuth.bf.compression.BFBufferInput;
+import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.Codec;
+import eu.matejkormuth.bf.compression.CodecRegistry;
+import eu.matejkormuth.bf.compression.CompressionUtil;
+import eu.matejkormuth.bf.compression.DeflateCodec;
+import eu.matejkormuth.bf.compression.LZ4Codec;
+import eu.matejkormuth.bf.geometry.GeometryFile;
+import eu.matejkormuth.bf.image.ImageFile;
+import eu.matejkormuth.lpsim.Bounds;
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.Image;
+import eu.matejkormuth.lpsim.InterleavedVertexLayout;
+import eu.matejkormuth.lpsim.Layer;
+import eu.matejkormuth.lpsim.Meshlet;
+import eu.matejkormuth.lpsim.VertexData;
+import net.jpountz.lz4.LZ4Factory;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Re-encodes every BIF and BGF file under content root with each codec and level and reports
+ * compressed size, compression and decompression throughput per asset and per asset class.
+ * <p>
+ * Decompression is measured as full load of the asset (decompression, filters and parsing),
+ * as this is what the game pays for. With --write each asset is rewritten with the smallest
+ * candidate that decodes within the budget (or the fastest one if none does). Geometry
+ * is re-encoded with its stored layout, index type, levels of detail, meshlets and bounds, and
+ * the asset is written only if the new file decodes to the same data as the original one.
+ * At the end codec chosen for each asset class is printed as {@link eu.matejkormuth.bf.compression.CodecOverrides}
+ * specification for asset tools.
+ */
+public class CompressionAutotune extends AbstractTool {
+
+    private int iterations;
+
+    public static void main(String[] args) {
+        new CompressionAutotune().start(args);
+    }
+
+    @Override
+    public void setupOptions(Options options) {
+        options.addOption("i", "input", true, "content root to walk for .bif and .bgf files");
+        options.addOption("n", "iterations", true, "number of measured iterations, best is reported (default 3)");
+        options.addOption("b", "budget", true, "decode time budget in ms per MB of uncompressed data (default 10)");
+        options.addOption("bs", "block-size", true, "block size in KB (default 128)");
+        options.addOption("w", "write", false, "rewrite each asset with codec chosen by budget");
+    }
+
+    @Override
+    public void execute(CommandLine cmd) throws Exception {
+        if (!cmd.hasOption("i")) {
+            help();
+            return;
+        }
+
+        Path root = Paths.get(cmd.getOptionValue("i")).toAbsolutePath();
+        iterations = Integer.parseInt(cmd.getOptionValue("n", "3"));
+        double budget = Double.parseDouble(cmd.getOptionValue("b", "10"));
+        boolean write = cmd.hasOption("w");
+        CompressionUtil.setBlockSize(Integer.parseInt(cmd.getOptionValue("bs", "128")) * 1024);
+
+        List<Path> assets;
+        try (Stream<Path> files = Files.walk(root)) {
+            assets = files.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".bif") || p.toString().endsWith(".bgf"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<Codec> candidates = candidates();
+        Codec original = CompressionUtil.getCodec();
+        Map<String, Result[]> classes = new TreeMap<>();
+
+        print("Root: " + root);
+        print(" Assets: " + assets.size());
+        print(" Block size: " + CompressionUtil.getBlockSize() + " bytes");
+        print(String.format(Locale.ENGLISH, " Budget: %.1f ms/MB", budget));
+
+        for (Path path : assets) {
+            String type = path.toString().substring(path.toString().lastIndexOf('.') + 1);
+            Asset asset;
+            try {
+                asset = type.equals("bif") ? new ImageAsset(path) : new GeometryAsset(path);
+            } catch (IOException | RuntimeException e) {
+                print(root.relativize(path) + ": skipped (" + e.getMessage() + ")");
+                continue;
+            }
+
+            Result[] results = new Result[candidates.size()];
+            for (int i = 0; i < results.length; i++) {
+                CompressionUtil.setCodec(candidates.get(i));
+                results[i] = measure(asset);
+            }
+
+            // codec none is first, size of its file is the uncompressed size
+            long raw = results[0].size;
+            Result chosen = choose(results, budget * raw / (1024 * 1024) * 1e6);
+
+            print(root.relativize(path) + ":");
+            for (int i = 0; i < results.length; i++) {
+                report(candidates.get(i).getName(), raw, results[i], results[i] == chosen);
+            }
+
+            Result[] total = classes.computeIfAbsent(type, k -> new Result[candidates.size()]);
+            for (int i = 0; i < results.length; i++) {
+                total[i] = total[i] == null ? new Result(0, 0, 0, null) : total[i];
+                total[i].size += results[i].size;
+                total[i].compressNanos += results[i].compressNanos;
+                total[i].decompressNanos += results[i].decompressNanos;
+            }
+
+            if (write) {
+                if (!asset.decodesToSame(chosen.data)) {
+                    print(" not written, re-encoded file does not decode to the same data!");
+                    continue;
+                }
+                Files.write(path, chosen.data);
+                verbose(" written with " + candidates.get(indexOf(results, chosen)).getName());
+            }
+        }
+
+        CompressionUtil.setCodec(original);
+
+        StringBuilder overrides = new StringBuilder();
+        for (Map.Entry<String, Result[]> entry : classes.entrySet()) {
+            Result[] total = entry.getValue();
+            Result chosen = choose(total, budget * total[0].size / (1024 * 1024) * 1e6);
+            print("Total ." + entry.getKey() + ":");
+            for (int i = 0; i < total.length; i++) {
+                report(candidates.get(i).getName(), total[0].size, total[i], total[i] == chosen);
+            }
+
+            // levels are not stored in files, so override can only name registered codec
+            Codec codec = CodecRegistry.get(candidates.get(indexOf(total, chosen)).getId());
+            overrides.append(overrides.length() == 0 ? "" : ",").append(entry.getKey()).append('=').append(codec.getName());
+        }
+        print("Suggested codecs per type (-ct): " + overrides);
+    }
+
+    /**
+     * Built-in codecs and additional levels of them. Levels share id with their codec,
+     * so files written with them are readable by the engine.
+     */
+    private static List<Codec> candidates() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+
+        List<Codec> candidates = new ArrayList<>();
+        candidates.add(CodecRegistry.NONE);
+        candidates.add(CodecRegistry.LZ4_FAST);
+        candidates.add(new LZ4Codec(CodecRegistry.LZ4_HC.getId(), "lz4hc-9", factory.highCompressor(9), factory.fastDecompressor()));
+        candidates.add(CodecRegistry.LZ4_HC);
+        candidates.add(new DeflateCodec(CodecRegistry.DEFLATE.getId(), "deflate-1", 1));
+        candidates.add(new DeflateCodec(CodecRegistry.DEFLATE.getId(), "deflate-6", 6));
+        candidates.add(CodecRegistry.DEFLATE);
+        return candidates;
+    }
+
+    private Result measure(Asset asset) throws IOException {
+        long compressNanos = Long.MAX_VALUE;
+        long decompressNanos = Long.MAX_VALUE;
+        byte[] data = asset.encode(); // warm up
+
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            data = asset.encode();
+            compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+        }
+
+        asset.decode(data); // warm up
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            asset.decode(data);
+            decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+        }
+
+        return new Result(data.length, compressNanos, decompressNanos, data);
+    }
+
+    private static Result choose(Result[] results, double budgetNanos) {
+        Result smallest = null;
+        Result fastest = results[0];
+        for (Result result : results) {
+            if (result.decompressNanos <= budgetNanos && (smallest == null || result.size < smallest.size)) {
+                smallest = result;
+            }
+            if (result.decompressNanos < fastest.decompressNanos) {
+                fastest = result;
+            }
+        }
+        return smallest != null ? smallest : fastest;
+    }
+
+    private static int indexOf(Result[] results, Result result) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == result) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void report(String name, long raw, Result result, boolean chosen) {
+        double mb = raw / (1024.0 * 1024.0);
+        print(String.format(Locale.ENGLISH, " %-10s %10d bytes  ratio %.3f  compress %8.1f MB/s  decompress %8.1f MB/s%s",
+                name, result.size, result.size / (double) raw,
+                mb / (result.compressNanos / 1e9), mb / (result.decompressNanos / 1e9), chosen ? "  *" : ""));
+    }
+
+    private static final class Result {
+        private long size;
+        private long compressNanos;
+        private long decompressNanos;
+        private final byte[] data;
+
+        private Result(long size, long compressNanos, long decompressNanos, byte[] data) {
+            this.size = size;
+            this.compressNanos = compressNanos;
+            this.decompressNanos = decompressNanos;
+            this.data = data;
+        }
+    }
+
+    private interface Asset {
+        byte[] encode() throws IOException;
+
+        void decode(byte[] data) throws IOException;
+
+        /**
+         * Returns whether re-encoded file decodes to the same data as the original file.
+         */
+        boolean decodesToSame(byte[] data) throws IOException;
+    }
+
+    private static final class ImageAsset implements Asset {
+        private final Image image;
+
+        private ImageAsset(Path path) throws IOException {
+            this.image = ImageFile.loadToImage(new BFInputStream(new FileInputStream(path.toFile())));
+        }
+
+        @Override
+        public byte[] encode() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageFile.save(image, new BFOutputStream(out));
+            return out.toByteArray();
+        }
+
+        @Override
+        public void decode(byte[] data) throws IOException {
+            ImageFile.loadToImage(new BFBufferInput(ByteBuffer.wrap(data)));
+        }
+
+        @Override
+        public boolean decodesToSame(byte[] data) throws IOException {
+            Image decoded = ImageFile.loadToImage(new BFBufferInput(ByteBuffer.wrap(data)));
+            if (decoded.getLayers().size() != image.getLayers().size()) {
+                return false;
+            }
+
+            for (Layer layer : image.getLayers()) {
+                Layer other = decoded.getLayer(layer.getName());
+                if (other == null || !Arrays.equals(layer.getRaster(), other.getRaster())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class GeometryAsset implements Asset {
+        private final byte[] original;
+        // layout of stored vertex buffer, null if file stores attributes in separate sections
+        private final InterleavedVertexLayout layout;
+        private final Geometry geometry;
+        private final VertexData data;
+
+        private GeometryAsset(Path path) throws IOException {
+            this.original = Files.readAllBytes(path);
+            this.layout = GeometryFile.loadLayout(new BFBufferInput(ByteBuffer.wrap(original)));
+            if (layout != null) {
+                // buffers are kept as they are, so packed attributes are not quantized again
+                this.data = GeometryFile.loadVertexData(new BFBufferInput(ByteBuffer.wrap(original)), layout);
+                this.geometry = null;
+            } else {
+                this.data = null;
+                this.geometry = GeometryFile.loadToGeometry(new BFBufferInput(ByteBuffer.wrap(original)), new Geometry());
+            }
+        }
+
+        @Override
+        public byte[] encode() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (layout != null) {
+                GeometryFile.save(data, new BFOutputStream(out));
+            } else {
+                GeometryFile.save(geometry, new BFOutputStream(out));
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public void decode(byte[] data) throws IOException {
+            if (layout != null) {
+                GeometryFile.loadVertexData(new BFBufferInput(ByteBuffer.wrap(data)), layout);
+            } else {
+                GeometryFile.loadToGeometry(new BFBufferInput(ByteBuffer.wrap(data)), new Geometry());
+            }
+        }
+
+        @Override
+        public boolean decodesToSame(byte[] data) throws IOException {
+            // files without layout are compared as interleaved by standard layout
+            InterleavedVertexLayout layout = this.layout != null ? this.layout : InterleavedVertexLayout.STANDARD;
+            return equals(GeometryFile.loadVertexData(new BFBufferInput(ByteBuffer.wrap(original)), layout),
+                    GeometryFile.loadVertexData(new BFBufferInput(ByteBuffer.wrap(data)), layout));
+        }
+
+        private static boolean equals(VertexData a, VertexData b) {
+            return a.getLayout().matches(b.getLayout())
+                    && a.getIndexType() == b.getIndexType()
+                    && a.getVertices().equals(b.getVertices())
+                    && a.getIndices().equals(b.getIndices())
+                    && Arrays.equals(a.getLodOffsets(), b.getLodOffsets())
+                    && Arrays.equals(a.getLodErrors(), b.getLodErrors())
+                    && equals(a.getMeshlets(), b.getMeshlets())
+                    && Arrays.equals(bounds(a.getBounds()), bounds(b.getBounds()));
+        }
+
+        private static float[] bounds(Bounds bounds) {
+            return new float[]{bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(), bounds.getMaxX(), bounds.getMaxY(),
+                    bounds.getMaxZ(), bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ(), bounds.getRadius()};
+        }
+
+        private static boolean equals(Meshlet[] a, Meshlet[] b) {
+            if (a == null || b == null) {
+                return a == b;
+            }
+            if (a.length != b.length) {
+                return false;
+            }
+
+            for (int i = 0; i < a.length; i++) {
+                float[] x = {a[i].getCenterX(), a[i].getCenterY(), a[i].getCenterZ(), a[i].getRadius(),
+                        a[i].getConeX(), a[i].getConeY(), a[i].getConeZ(), a[i].getConeCutoff()};
+                float[] y = {b[i].getCenterX(), b[i].getCenterY(), b[i].getCenterZ(), b[i].getRadius(),
+                        b[i].getConeX(), b[i].getConeY(), b[i].getConeZ(), b[i].getConeCutoff()};
+                if (a[i].getFirstIndex() != b[i].getFirstIndex() || a[i].getIndexCount() != b[i].getIndexCount()
+                        || !Arrays.equals(x, y)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
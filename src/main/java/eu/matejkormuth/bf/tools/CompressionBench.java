@@ -0,0 +1,154 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.tools;
+
+import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BlockOutputStream;
+import eu.matejkormuth.bf.compression.Codec;
+import eu.matejkormuth.bf.compression.CodecOverrides;
+import eu.matejkormuth.bf.compression.CodecRegistry;
+import eu.matejkormuth.bf.compression.CompressionUtil;
+import eu.matejkormuth.bf.image.ImageFile;
+import eu.matejkormuth.lpsim.Image;
+import eu.matejkormuth.lpsim.Layer;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Compares throughput of single stream compression (whole payload on one thread)
+ * with block framed compression on one thread and on ForkJoin pool. All three use
+ * the same codec, selected by {@link CodecOverrides} for type of input file.
+ * <p>
+ * Parallel speedup and LZ4 / LZ4 HC throughput have not been measured yet, run this on
+ * representative assets on a multi-core machine before relying on block size defaults.
+ */
+public class CompressionBench extends AbstractTool {
+
+    public static void main(String[] args) {
+        new CompressionBench().start(args);
+    }
+
+    @Override
+    public void setupOptions(Options options) {
+        options.addOption("i", "input", true, "input file (.bif files are benchmarked on their uncompressed rasters)");
+        options.addOption("n", "iterations", true, "number of measured iterations (default 5)");
+        options.addOption("bs", "block-size", true, "block size in KB (default 128)");
+        options.addOption("fast", "fast-compression", false, "use fast LZ4 compressor instead of codec of the asset type");
+        addCodecOptions(options);
+    }
+
+    @Override
+    public void execute(CommandLine cmd) throws Exception {
+        if (!cmd.hasOption("i")) {
+            help();
+            return;
+        }
+
+        Path input = Paths.get(cmd.getOptionValue("i")).toAbsolutePath();
+        int iterations = Integer.parseInt(cmd.getOptionValue("n", "5"));
+        CompressionUtil.setBlockSize(Integer.parseInt(cmd.getOptionValue("bs", "128")) * 1024);
+        String type = CodecOverrides.typeOf(input.toString());
+        if (cmd.hasOption("fast")) {
+            CodecOverrides.set(type, CodecRegistry.LZ4_FAST);
+        }
+        Codec codec = selectCodec(cmd, type);
+
+        byte[] data = payload(input);
+        print("File: " + input);
+        print(" Payload: " + data.length + " bytes");
+        print(" Block size: " + CompressionUtil.getBlockSize() + " bytes");
+        print(" Codec: " + codec.getName());
+        print(" Threads: " + Runtime.getRuntime().availableProcessors());
+
+        // warm up
+        single(codec, data);
+        blocks(codec, data, false);
+        blocks(codec, data, true);
+
+        long singleTime = 0, sequentialTime = 0, parallelTime = 0;
+        int singleSize = 0, blocksSize = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            singleSize = single(codec, data);
+            singleTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            blocksSize = blocks(codec, data, false);
+            sequentialTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            blocks(codec, data, true);
+            parallelTime += System.nanoTime() - start;
+        }
+
+        report("single stream", data.length, singleSize, singleTime / iterations);
+        report("blocks (1 thread)", data.length, blocksSize, sequentialTime / iterations);
+        report("blocks (parallel)", data.length, blocksSize, parallelTime / iterations);
+        print(String.format(Locale.ENGLISH, " Speedup: %.2fx", singleTime / (double) parallelTime));
+    }
+
+    private static byte[] payload(Path input) throws IOException {
+        if (!input.toString().endsWith(".bif")) {
+            return Files.readAllBytes(input);
+        }
+
+        Image image = ImageFile.loadToImage(new BFInputStream(new FileInputStream(input.toFile())));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Layer layer : image.getLayers()) {
+            out.write(layer.getRaster());
+        }
+        return out.toByteArray();
+    }
+
+    private static int single(Codec codec, byte[] data) {
+        byte[] dest = new byte[codec.maxCompressedLength(data.length)];
+        return codec.compress(data, 0, data.length, dest, 0, dest.length);
+    }
+
+    private static int blocks(Codec codec, byte[] data, boolean parallel) throws IOException {
+        CompressionUtil.setParallelCompression(parallel);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        BlockOutputStream blocks = new BlockOutputStream(out, codec, CompressionUtil.getBlockSize(), data.length);
+        blocks.write(data);
+        blocks.finish();
+        return out.size();
+    }
+
+    private static void report(String name, int length, int compressed, long nanos) {
+        double seconds = nanos / 1e9;
+        print(String.format(Locale.ENGLISH, " %-18s %8.1f MB/s  ratio %.3f  (%d bytes, %.1f ms)",
+                name, length / seconds / (1024 * 1024), compressed / (double) length, compressed, nanos / 1e6));
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.tools;
+
+import eu.matejkormuth.bf.archive.ArchiveFile;
+import eu.matejkormuth.bf.archive.File;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class Dir2Baf extends AbstractTool {
+
+    public static void main(String[] args) {
+        new Dir2Baf().start(args);
+    }
+
+    @Override
+    public void setupOptions(Options options) {
+        options.addOption("i", "input", true, "content root directory");
+        options.addOption("o", "output", true, "output archive file");
+        options.addOption("a", "all", false, "pack all files (not only images, geometry, shaders and materials)");
+    }
+
+    @Override
+    public void execute(CommandLine cmd) throws Exception {
+        if (!cmd.hasOption("i")) {
+            help();
+            return;
+        }
+
+        Path input = Paths.get(cmd.getOptionValue("i")).toAbsolutePath();
+        Path output = Paths.get(cmd.getOptionValue("o", input.getFileName() + ArchiveFile.EXTENSION)).toAbsolutePath();
+
+        print("Packing " + input + "...");
+        List<File> index = ArchiveFile.save(input, output, cmd.hasOption("a") ? path -> true : ArchiveFile.CONTENT_FILES);
+
+        long bytes = 0;
+        for (File file : index) {
+            verbose(" " + file.getName() + " (" + file.getLength() + " bytes)");
+            bytes += file.getLength();
+        }
+        print("Packed " + index.size() + " files (" + bytes + " bytes) to " + output);
+    }
+}
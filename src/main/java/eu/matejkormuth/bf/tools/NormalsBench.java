@@ -0,0 +1,147 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.tools;
+
+import eu.matejkormuth.lpsim.Geometry;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+import java.util.Locale;
+
+/**
+ * Compares sequential and parallel normal and tangent generation on synthetic
+ * wavy grid mesh and checks that both produce the same results.
+ */
+public class NormalsBench extends AbstractTool {
+
+    public static void main(String[] args) {
+        new NormalsBench().start(args);
+    }
+
+    @Override
+    public void setupOptions(Options options) {
+        options.addOption("t", "triangles", true, "approximate number of triangles (default 1000000)");
+        options.addOption("n", "iterations", true, "number of measured iterations (default 5)");
+    }
+
+    @Override
+    public void execute(CommandLine cmd) throws Exception {
+        int triangles = Integer.parseInt(cmd.getOptionValue("t", "1000000"));
+        int iterations = Integer.parseInt(cmd.getOptionValue("n", "5"));
+
+        Geometry geometry = grid((int) Math.ceil(Math.sqrt(triangles / 2.0)));
+        print("Vertices: " + geometry.getVertexCount());
+        print("Triangles: " + geometry.getIndices().length / 3);
+        print("Threads: " + Runtime.getRuntime().availableProcessors());
+
+        // warm up
+        for (int i = 0; i < 3; i++) {
+            geometry.computeNormals(false).computeTangents(true, false);
+            geometry.computeNormals(true).computeTangents(true, true);
+        }
+
+        long sequentialNormals = 0, sequentialTangents = 0, parallelNormals = 0, parallelTangents = 0;
+        float[] normals = null, tangents = null, bitangents = null;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            geometry.computeNormals(false);
+            sequentialNormals += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            geometry.computeTangents(true, false);
+            sequentialTangents += System.nanoTime() - start;
+
+            normals = geometry.getNormalData();
+            tangents = geometry.getTangentData();
+            bitangents = geometry.getBitangentData();
+
+            start = System.nanoTime();
+            geometry.computeNormals(true);
+            parallelNormals += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            geometry.computeTangents(true, true);
+            parallelTangents += System.nanoTime() - start;
+        }
+
+        report("normals", sequentialNormals / iterations, parallelNormals / iterations);
+        report("tangents", sequentialTangents / iterations, parallelTangents / iterations);
+        print(String.format(Locale.ENGLISH, " Max difference: normals %g, tangents %g, bitangents %g",
+                difference(normals, geometry.getNormalData()), difference(tangents, geometry.getTangentData()),
+                difference(bitangents, geometry.getBitangentData())));
+    }
+
+    // size x size quads on wavy surface, uv mapped over whole grid
+    private static Geometry grid(int size) {
+        int row = size + 1;
+        float[] positions = new float[row * row * 3];
+        float[] texCoords = new float[row * row * 2];
+        for (int y = 0; y < row; y++) {
+            for (int x = 0; x < row; x++) {
+                int v = y * row + x;
+                positions[v * 3] = x;
+                positions[v * 3 + 1] = (float) (Math.sin(x * 0.1) * Math.cos(y * 0.13) * 4);
+                positions[v * 3 + 2] = y;
+                texCoords[v * 2] = x / (float) size;
+                texCoords[v * 2 + 1] = y / (float) size;
+            }
+        }
+
+        int[] indices = new int[size * size * 6];
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int v = y * row + x;
+                indices[i++] = v;
+                indices[i++] = v + row;
+                indices[i++] = v + 1;
+                indices[i++] = v + 1;
+                indices[i++] = v + row;
+                indices[i++] = v + row + 1;
+            }
+        }
+
+        Geometry geometry = new Geometry();
+        geometry.setPositionData(positions);
+        geometry.setTexCoordData(texCoords);
+        geometry.setIndices(indices);
+        return geometry;
+    }
+
+    private static double difference(float[] a, float[] b) {
+        double max = 0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    private static void report(String name, long sequential, long parallel) {
+        print(String.format(Locale.ENGLISH, " %-9s sequential %8.1f ms  parallel %8.1f ms  speedup %.2fx",
+                name, sequential / 1e6, parallel / 1e6, sequential / (double) parallel));
+    }
+}
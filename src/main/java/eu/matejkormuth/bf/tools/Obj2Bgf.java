@@ -27,8 +27,16 @@
 package eu.matejkormuth.bf.tools;
 
 import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.CodecOverrides;
 import eu.matejkormuth.bf.geometry.GeometryFile;
+import eu.matejkormuth.bf.geometry.GeometryFilter;
+import eu.matejkormuth.bf.geometry.GeometryOptimizer;
+import eu.matejkormuth.bf.geometry.GeometrySimplifier;
+import eu.matejkormuth.bf.geometry.GeometryWelder;
+import eu.matejkormuth.bf.geometry.MeshletBuilder;
 import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.InterleavedVertexLayout;
+import eu.matejkormuth.lpsim.LevelOfDetail;
 import eu.matejkormuth.lpsim.content.OBJImporter;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -52,6 +60,14 @@ public class Obj2Bgf extends AbstractTool {
         options.addOption("n", "normals", false, "whether to compute normals");
         options.addOption("t", "tangents", false, "whether to compute tangents");
         options.addOption("b", "bitangents", false, "whether to compute bitangents");
+        options.addOption("w", "weld", true, "merge vertices with all attributes within epsilon (0 merges only exact duplicates)");
+        options.addOption("O", "optimize", false, "whether to reorder triangles and vertices for vertex cache, overdraw and vertex fetch");
+        options.addOption("L", "lods", true, "count of levels of detail to generate, each with half of triangles");
+        options.addOption("M", "meshlets", false, "whether to split triangles into meshlets for culling");
+
+        addCodecOptions(options);
+        options.addOption("F", "filters", false, "whether to pre-filter attribute sections (shuffle vertices, delta and shuffle indices)");
+        options.addOption("l", "layout", true, "store GPU ready interleaved buffers for layout (standard, standard_packed, position, position_texcoord)");
 
         options.getOption("i").setRequired(true);
     }
@@ -70,9 +86,15 @@ public class Obj2Bgf extends AbstractTool {
             print(" Has tangents: " + (geometry.hasTangents() ? "yes" : "no"));
             print(" Has bitangents: " + (geometry.hasBitangets() ? "yes" : "no"));
 
-            print(" Vertices: " + geometry.getPositions().length);
+            print(" Vertices: " + geometry.getVertexCount());
             print(" Faces: " + geometry.getIndices().length / 3);
 
+            if (cmd.hasOption('w')) {
+                print("Welding vertices...");
+                GeometryWelder.weld(geometry, Float.parseFloat(cmd.getOptionValue('w')));
+                print(" Vertices: " + geometry.getVertexCount());
+            }
+
             if (cmd.hasOption('n')) {
                 print("Computing normals...");
                 geometry.computeNormals();
@@ -83,6 +105,26 @@ public class Obj2Bgf extends AbstractTool {
                 geometry.computeTangents(cmd.hasOption('b'));
             }
 
+            if (cmd.hasOption('O')) {
+                print("Optimizing...");
+                print(" Before: " + GeometryOptimizer.analyzeVertexCache(geometry.getIndices(), geometry.getVertexCount(), GeometryOptimizer.CACHE_SIZE));
+                GeometryOptimizer.optimize(geometry);
+                print(" After: " + GeometryOptimizer.analyzeVertexCache(geometry.getIndices(), geometry.getVertexCount(), GeometryOptimizer.CACHE_SIZE));
+            }
+
+            if (cmd.hasOption('L')) {
+                print("Generating levels of detail...");
+                geometry.setLods(GeometrySimplifier.generateLods(geometry, Integer.parseInt(cmd.getOptionValue('L')), GeometrySimplifier.DEFAULT_RATIO));
+                for (LevelOfDetail lod : geometry.getLods()) {
+                    print(" Faces: " + lod.getIndices().length / 3 + ", error: " + lod.getError());
+                }
+            }
+
+            if (cmd.hasOption('M')) {
+                print("Building meshlets...");
+                print(" Meshlets: " + MeshletBuilder.build(geometry).length);
+            }
+
             print("New geometry: ");
             print(" Has faces: " + (geometry.hasFaces() ? "yes" : "no"));
             print(" Has normals: " + (geometry.hasNormals() ? "yes" : "no"));
@@ -90,17 +132,40 @@ public class Obj2Bgf extends AbstractTool {
             print(" Has tangents: " + (geometry.hasTangents() ? "yes" : "no"));
             print(" Has bitangents: " + (geometry.hasBitangets() ? "yes" : "no"));
 
-            print(" Vertices: " + geometry.getPositions().length);
+            print(" Vertices: " + geometry.getVertexCount());
             print(" Faces: " + geometry.getIndices().length / 3);
 
+            print("Codec: " + selectCodec(cmd, CodecOverrides.GEOMETRY).getName());
+            if (cmd.hasOption('F')) {
+                GeometryFile.setVertexFilter(GeometryFilter.SHUFFLE);
+                GeometryFile.setIndexFilter(GeometryFilter.DELTA | GeometryFilter.SHUFFLE);
+            }
+
+            InterleavedVertexLayout layout = cmd.hasOption('l') ? layout(cmd.getOptionValue('l')) : null;
+
             print("Saving BGF...");
-            GeometryFile.save(geometry, new BFOutputStream(new BufferedOutputStream(new FileOutputStream(new File(output)))));
+            GeometryFile.save(geometry, new BFOutputStream(new BufferedOutputStream(new FileOutputStream(new File(output)))), layout);
 
         } else {
             help();
         }
     }
 
+    private static InterleavedVertexLayout layout(String name) {
+        switch (name) {
+            case "standard":
+                return InterleavedVertexLayout.STANDARD;
+            case "standard_packed":
+                return InterleavedVertexLayout.STANDARD_PACKED;
+            case "position":
+                return InterleavedVertexLayout.POSITION_ONLY;
+            case "position_texcoord":
+                return InterleavedVertexLayout.POSITION_TEXCOORD_ONLY;
+            default:
+                throw new RuntimeException("Unknown layout " + name + "!");
+        }
+    }
+
     private static String createOutputName(String input) {
         return input.substring(0, input.lastIndexOf('.')) + ".bgf";
     }
@@ -27,7 +27,8 @@
 package eu.matejkormuth.bf.tools;
 
 import eu.matejkormuth.bf.compression.BFOutputStream;
-import eu.matejkormuth.bf.compression.CompressionUtil;
+import eu.matejkormuth.bf.compression.CodecOverrides;
+import eu.matejkormuth.bf.compression.CodecRegistry;
 import eu.matejkormuth.bf.image.ImageFile;
 import eu.matejkormuth.lpsim.*;
 import lombok.extern.slf4j.Slf4j;
@@ -53,6 +54,8 @@ public class Png2Bif {
         options.addOption("a", "alpha", true, "specifies mapping of input alpha channel");
 
         options.addOption("fast", "fast-compression", false, "use fast but inefficient compression");
+        options.addOption("c", "codec", true, "codec to compress with (none, lz4, lz4hc, deflate), default lz4hc");
+        options.addOption("ct", "codec-types", true, "codec per asset type, for example bgf=deflate for cold assets");
 
         options.addOption("gm", "gamma", false, "specifies gamma color space");
         options.addOption("ln", "linear", false, "specifies linear color space");
@@ -80,9 +83,16 @@ public class Png2Bif {
                 String output = cmd.hasOption("o") ? cmd.getOptionValue("o") : createOutputName(input);
                 boolean gamma = cmd.hasOption("gm");
 
+                if (cmd.hasOption("ct")) {
+                    CodecOverrides.parse(cmd.getOptionValue("ct"));
+                }
                 if (cmd.hasOption("fast")) {
-                    CompressionUtil.setFastCompressor(true);
+                    CodecOverrides.set(CodecOverrides.IMAGE, CodecRegistry.LZ4_FAST);
+                }
+                if (cmd.hasOption("c")) {
+                    CodecOverrides.set(CodecOverrides.IMAGE, CodecRegistry.get(cmd.getOptionValue("c")));
                 }
+                CodecOverrides.apply(CodecOverrides.IMAGE);
 
                 Image original = awtLoad(input, gamma);
                 boolean hasAlpha = original.getLayer().getChannelCount() == 4;
@@ -27,6 +27,7 @@
 package eu.matejkormuth.bf.tools;
 
 import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.CodecOverrides;
 import eu.matejkormuth.bf.image.ImageFile;
 import eu.matejkormuth.lpsim.ColorSpace;
 import eu.matejkormuth.lpsim.Format;
@@ -64,6 +65,8 @@ public class Skybox2Bif extends AbstractTool {
         options.addOption("ln", "linear", false, "Set linear color space for images");
 
         options.addOption("rgba", "rgba", false, "Allow alpha in texture");
+
+        addCodecOptions(options);
     }
 
     @Override
@@ -89,6 +92,8 @@ public class Skybox2Bif extends AbstractTool {
             return;
         }
 
+        selectCodec(cmd, CodecOverrides.IMAGE);
+
         boolean hasAlpha = cmd.hasOption("rgba");
         boolean gamma = !cmd.hasOption("ln");
 
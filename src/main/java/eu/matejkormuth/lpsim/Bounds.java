@@ -0,0 +1,176 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import eu.matejkormuth.lpsim.math.Matrix4f;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Axis aligned bounding box and bounding sphere of geometry. Sphere is centered in the
+ * middle of the box. Instances are mutable so cached bounds can be updated in place.
+ */
+public class Bounds {
+
+    @Getter
+    private float minX;
+    @Getter
+    private float minY;
+    @Getter
+    private float minZ;
+    @Getter
+    private float maxX;
+    @Getter
+    private float maxY;
+    @Getter
+    private float maxZ;
+
+    @Getter
+    private float centerX;
+    @Getter
+    private float centerY;
+    @Getter
+    private float centerZ;
+    @Getter
+    private float radius;
+
+    public Bounds() {
+    }
+
+    public Bounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                  float centerX, float centerY, float centerZ, float radius) {
+        set(minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, radius);
+    }
+
+    public Bounds set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                      float centerX, float centerY, float centerZ, float radius) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.radius = radius;
+        return this;
+    }
+
+    /**
+     * Sets this bounds to bounds of specified object space bounds transformed by matrix. Box is
+     * transformed by absolute values of rotation and scale (Arvo), sphere radius is scaled
+     * by the largest scale of matrix.
+     */
+    public Bounds transform(Bounds local, Matrix4f transform) {
+        float[][] m = transform.m;
+        float[] min = {local.minX, local.minY, local.minZ};
+        float[] max = {local.maxX, local.maxY, local.maxZ};
+
+        float[] newMin = new float[3];
+        float[] newMax = new float[3];
+        for (int i = 0; i < 3; i++) {
+            newMin[i] = m[i][3];
+            newMax[i] = m[i][3];
+            for (int j = 0; j < 3; j++) {
+                float a = m[i][j] * min[j];
+                float b = m[i][j] * max[j];
+                newMin[i] += Math.min(a, b);
+                newMax[i] += Math.max(a, b);
+            }
+        }
+
+        float scaleX = m[0][0] * m[0][0] + m[1][0] * m[1][0] + m[2][0] * m[2][0];
+        float scaleY = m[0][1] * m[0][1] + m[1][1] * m[1][1] + m[2][1] * m[2][1];
+        float scaleZ = m[0][2] * m[0][2] + m[1][2] * m[1][2] + m[2][2] * m[2][2];
+        float scale = (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+
+        float cx = local.centerX, cy = local.centerY, cz = local.centerZ;
+        return set(newMin[0], newMin[1], newMin[2], newMax[0], newMax[1], newMax[2],
+                m[0][0] * cx + m[0][1] * cy + m[0][2] * cz + m[0][3],
+                m[1][0] * cx + m[1][1] * cy + m[1][2] * cz + m[1][3],
+                m[2][0] * cx + m[2][1] * cy + m[2][2] * cz + m[2][3],
+                local.radius * scale);
+    }
+
+    /**
+     * Computes bounds of tightly packed positions (stride 3).
+     */
+    public static Bounds of(float[] positions) {
+        Bounds bounds = new Bounds();
+        if (positions == null || positions.length < 3) {
+            return bounds;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            minX = Math.min(minX, positions[i]);
+            minY = Math.min(minY, positions[i + 1]);
+            minZ = Math.min(minZ, positions[i + 2]);
+            maxX = Math.max(maxX, positions[i]);
+            maxY = Math.max(maxY, positions[i + 1]);
+            maxZ = Math.max(maxZ, positions[i + 2]);
+        }
+
+        float cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        float radius = 0;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            float dx = positions[i] - cx, dy = positions[i + 1] - cy, dz = positions[i + 2] - cz;
+            radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+        }
+        return bounds.set(minX, minY, minZ, maxX, maxY, maxZ, cx, cy, cz, (float) Math.sqrt(radius));
+    }
+
+    /**
+     * Computes bounds of position attribute of interleaved vertices (in byte order of buffer).
+     * Returns empty bounds if layout has no position attribute.
+     */
+    public static Bounds of(ByteBuffer vertices, InterleavedVertexLayout layout) {
+        float[] positions = layout.readPositions(vertices);
+        return positions == null ? new Bounds() : of(positions);
+    }
+
+    /**
+     * Returns whether ray segment from origin to max distance (in units of direction) intersects
+     * bounding sphere.
+     */
+    public boolean isSphereHitByRay(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        float lx = centerX - ox, ly = centerY - oy, lz = centerZ - oz;
+        float t = (lx * dx + ly * dy + lz * dz) / (dx * dx + dy * dy + dz * dz);
+        t = Math.max(0, Math.min(t, maxDistance));
+        float px = lx - t * dx, py = ly - t * dy, pz = lz - t * dz;
+        return px * px + py * py + pz * pz <= radius * radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Bounds{min=[" + minX + ", " + minY + ", " + minZ + "], max=[" + maxX + ", " + maxY + ", " + maxZ +
+                "], center=[" + centerX + ", " + centerY + ", " + centerZ + "], radius=" + radius + "}";
+    }
+}
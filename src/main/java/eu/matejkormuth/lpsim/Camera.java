@@ -108,6 +108,13 @@ public class Camera {
         return projectionMatrix;
     }
 
+    /**
+     * Returns size in pixels of object of unit size at unit distance from camera.
+     */
+    public float getProjectionScale() {
+        return World.CANVAS_HEIGHT / (2 * (float) Math.tan(Math.toRadians(fov / 2)));
+    }
+
     public Matrix4f getViewMatrix() {
         //Matrix4f.initRotation(rotationMatrix, orientation);
         Matrix4f.initCamera(rotationMatrix, forward, up);
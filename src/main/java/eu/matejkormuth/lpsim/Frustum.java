@@ -131,4 +131,31 @@ public class Frustum {
 
         return result;
     }
+
+    /**
+     * Whether sphere is completely outside of the frustum. Unlike testSphere() it does not
+     * allocate, so it can be used for many small spheres each frame.
+     */
+    public boolean isSphereOutside(float centerX, float centerY, float centerZ, float radius) {
+        float vx = centerX - cc.getX();
+        float vy = centerY - cc.getY();
+        float vz = centerZ - cc.getZ();
+
+        float az = -(vx * z.getX() + vy * z.getY() + vz * z.getZ());
+        if (az > farD + radius || az < nearD - radius) {
+            return true;
+        }
+
+        float ay = vx * y.getX() + vy * y.getY() + vz * y.getZ();
+        float d = sphereFactorY * radius;
+        az *= tang;
+        if (ay > az + d || ay < -az - d) {
+            return true;
+        }
+
+        float ax = vx * x.getX() + vy * x.getY() + vz * x.getZ();
+        az *= ratio;
+        d = sphereFactorX * radius;
+        return ax > az + d || ax < -az - d;
+    }
 }
@@ -35,6 +35,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 public class Geometry {
 
@@ -49,22 +51,27 @@ public class Geometry {
     public static final boolean DEFAULT_COMPUTE_NORMALS = true;
 
     /**
-     * Vertex Positions (vec3)
+     * Geometries with at least this many faces compute normals and tangents in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+    /**
+     * Vertex Positions (vec3), tightly packed floats (stride 3)
      */
     @Getter
-    private Vector3f[] positions;
+    private float[] positionData;
 
     /**
-     * Vertex Normals (vec3)
+     * Vertex Normals (vec3), tightly packed floats (stride 3)
      */
     @Getter
-    private Vector3f[] normals;
+    private float[] normalData;
 
     /**
-     * Vertex Tex-Coords (UV/ST mapping)
+     * Vertex Tex-Coords (UV/ST mapping), tightly packed floats (stride 2)
      */
     @Getter
-    private Vector2f[] texCoords;
+    private float[] texCoordData;
 
     /**
      * Faces (as indices list)
@@ -73,85 +80,131 @@ public class Geometry {
     private int[] indices;
 
     /**
-     * Vertex Tangents (vec3)
+     * Vertex Tangents (vec3), tightly packed floats (stride 3)
+     */
+    @Getter
+    private float[] tangentData;
+
+    /**
+     * Vertex Bitangens (vec3), tightly packed floats (stride 3)
+     */
+    @Getter
+    private float[] bitangentData;
+
+    /**
+     * Simplified index lists from finest to coarsest, share vertices with full detail
+     */
+    @Getter
+    private LevelOfDetail[] lods;
+
+    /**
+     * Clusters of full detail triangles, each is contiguous range of indices
      */
     @Getter
-    private Vector3f[] tangents;
+    private Meshlet[] meshlets;
 
     /**
-     * Vertex Bitangens (vec3)
+     * Bounds stored in file or null if they were not loaded or computed
      */
     @Getter
-    private Vector3f[] bitangents;
+    private Bounds bounds;
+
+    public int getVertexCount() {
+        return positionData == null ? 0 : positionData.length / 3;
+    }
 
     public boolean hasNormals() {
-        return normals != null && normals.length > 0;
+        return normalData != null && normalData.length > 0;
     }
 
     public boolean hasTangents() {
-        return tangents != null && tangents.length > 0;
+        return tangentData != null && tangentData.length > 0;
     }
 
     public boolean hasBitangets() {
-        return bitangents != null && bitangents.length > 0;
+        return bitangentData != null && bitangentData.length > 0;
     }
 
     public boolean hasTexCoords() {
-        return texCoords != null && texCoords.length > 0;
+        return texCoordData != null && texCoordData.length > 0;
     }
 
     public boolean hasFaces() {
         return indices != null && indices.length > 2;
     }
 
+    public boolean hasLods() {
+        return lods != null && lods.length > 0;
+    }
+
+    public boolean hasMeshlets() {
+        return meshlets != null && meshlets.length > 0;
+    }
+
     public Geometry computeNormals() {
+        return computeNormals(isLarge());
+    }
+
+    /**
+     * Computes vertex normals as normalized sum of normals of adjacent faces. Parallel version computes
+     * face normals on ForkJoin pool and then sums them for each vertex in the same order as sequential
+     * version does, so both versions produce identical normals.
+     *
+     * @param parallel whether to use all available processors
+     */
+    public Geometry computeNormals(boolean parallel) {
         long start = System.nanoTime();
         if (!hasFaces()) {
             throw new IllegalStateException("Can't compute normals for geometry that has no faces!");
         }
 
-        normals = new Vector3f[positions.length];
-
         if ((indices.length % 3) != 0) {
             throw new RuntimeException("We have incomplete face.");
         }
 
-        log.info("Computing normals for {}. Positions: {}, Indices: {}, Faces: {}", this, positions.length, indices.length, indices.length / 3);
-
-        for (int i = 0; i < normals.length; i++) {
-            normals[i] = new Vector3f();
-        }
-
-        for (int l = 0; l < indices.length; l += 3) {
-            int i = indices[l];
-            int j = indices[l + 1];
-            int k = indices[l + 2];
-
-            Vector3f n = computeSurfaceNormal(i, j, k);
-            normals[i] = normals[i].add(n);
-            normals[j] = normals[j].add(n);
-            normals[k] = normals[k].add(n);
-        }
-
-        for (int i = 0; i < normals.length; i++) {
-            normals[i] = normals[i].normalize();
+        int vertices = getVertexCount();
+        log.info("Computing normals for {}. Positions: {}, Indices: {}, Faces: {}", this, vertices, indices.length, indices.length / 3);
+
+        float[] p = positionData;
+        int[] indices = this.indices;
+
+        if (parallel) {
+            float[] faces = new float[indices.length];
+            IntStream.range(0, indices.length / 3).parallel().forEach(f -> faceNormal(p, indices, f, faces, f * 3));
+            normalData = sumAdjacent(indices, faces, vertices);
+        } else {
+            float[] n = new float[vertices * 3];
+            float[] face = new float[3];
+            for (int l = 0; l < indices.length; l += 3) {
+                faceNormal(p, indices, l / 3, face, 0);
+                add(n, indices[l] * 3, face);
+                add(n, indices[l + 1] * 3, face);
+                add(n, indices[l + 2] * 3, face);
+            }
+            normalize(n);
+            normalData = n;
         }
 
-        log.info("{} normals computed in {} ms.", normals.length, (System.nanoTime() - start) / 1_000_000f);
+        log.info("{} normals computed in {} ms.", vertices, (System.nanoTime() - start) / 1_000_000f);
         return this;
     }
 
-    private Vector3f computeSurfaceNormal(int i, int j, int k) {
-        Vector3f a = positions[j].subtract(positions[i]);
-        Vector3f b = positions[k].subtract(positions[i]);
-        return a.cross(b).normalize();
-    }
-
     public Geometry computeTangents() {
         return computeTangents(false);
     }
 
     public Geometry computeTangents(boolean computeBitangents) {
+        return computeTangents(computeBitangents, isLarge());
+    }
+
+    /**
+     * Computes vertex tangents as normalized sum of tangents of adjacent faces (and bitangents
+     * from normals and tangents). Parallel version produces identical results as sequential one.
+     *
+     * @param computeBitangents whether to compute bitangents too
+     * @param parallel          whether to use all available processors
+     */
+    public Geometry computeTangents(boolean computeBitangents, boolean parallel) {
         long start = System.nanoTime();
         if (!hasFaces()) {
             throw new IllegalStateException("Can't compute tangents for geometry that has no faces!");
@@ -165,61 +218,153 @@ public class Geometry {
             throw new RuntimeException("We have incomplete face.");
         }
 
-        log.info("Computing tangents for {}. Positions: {}, Indices: {}, Faces: {}", this, positions.length, indices.length, indices.length / 3);
-
-        tangents = new Vector3f[positions.length];
-        if (computeBitangents) {
-            bitangents = new Vector3f[positions.length];
+        int vertices = getVertexCount();
+        log.info("Computing tangents for {}. Positions: {}, Indices: {}, Faces: {}", this, vertices, indices.length, indices.length / 3);
+
+        float[] p = positionData;
+        float[] uv = texCoordData;
+        int[] indices = this.indices;
+        float[] t;
+
+        if (parallel) {
+            float[] faces = new float[indices.length];
+            IntStream.range(0, indices.length / 3).parallel().forEach(f -> faceTangent(p, uv, indices, f, faces, f * 3));
+            t = sumAdjacent(indices, faces, vertices);
+        } else {
+            t = new float[vertices * 3];
+            float[] face = new float[3];
+            for (int i = 0; i < indices.length; i += 3) {
+                faceTangent(p, uv, indices, i / 3, face, 0);
+                add(t, indices[i] * 3, face);
+                add(t, indices[i + 1] * 3, face);
+                add(t, indices[i + 2] * 3, face);
+            }
+            normalize(t);
         }
+        tangentData = t;
 
-        for (int i = 0; i < tangents.length; i++) {
-            tangents[i] = new Vector3f();
-            if (computeBitangents) {
-                bitangents[i] = new Vector3f();
+        if (computeBitangents) {
+            float[] n = normalData;
+            float[] b = new float[vertices * 3];
+            if (parallel) {
+                IntStream.range(0, vertices).parallel().forEach(v -> bitangent(t, n, b, v * 3));
+            } else {
+                for (int i = 0; i < b.length; i += 3) {
+                    bitangent(t, n, b, i);
+                }
             }
+            bitangentData = b;
         }
 
-        for (int i = 0; i < indices.length; i += 3) {
-            int i0 = indices[i];
-            int i1 = indices[i + 1];
-            int i2 = indices[i + 2];
+        log.info("{} tangents computed in {} ms.", vertices, (System.nanoTime() - start) / 1_000_000f);
+        return this;
+    }
+
+    // whether there are enough faces (and processors) to benefit from parallel computation
+    private boolean isLarge() {
+        return indices != null && indices.length / 3 >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    // surface normal = normalize((pj - pi) x (pk - pi))
+    private static void faceNormal(float[] p, int[] indices, int face, float[] dest, int offset) {
+        int i = indices[face * 3] * 3;
+        int j = indices[face * 3 + 1] * 3;
+        int k = indices[face * 3 + 2] * 3;
+
+        float ax = p[j] - p[i], ay = p[j + 1] - p[i + 1], az = p[j + 2] - p[i + 2];
+        float bx = p[k] - p[i], by = p[k + 1] - p[i + 1], bz = p[k + 2] - p[i + 2];
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        dest[offset] = nx / length;
+        dest[offset + 1] = ny / length;
+        dest[offset + 2] = nz / length;
+    }
+
+    // tangent of face in direction of increasing u
+    private static void faceTangent(float[] p, float[] uv, int[] indices, int face, float[] dest, int offset) {
+        int i0 = indices[face * 3];
+        int i1 = indices[face * 3 + 1];
+        int i2 = indices[face * 3 + 2];
 
-            Vector3f edge1 = positions[i1].subtract(positions[i0]);
-            Vector3f edge2 = positions[i2].subtract(positions[i0]);
+        float e1x = p[i1 * 3] - p[i0 * 3], e1y = p[i1 * 3 + 1] - p[i0 * 3 + 1], e1z = p[i1 * 3 + 2] - p[i0 * 3 + 2];
+        float e2x = p[i2 * 3] - p[i0 * 3], e2y = p[i2 * 3 + 1] - p[i0 * 3 + 1], e2z = p[i2 * 3 + 2] - p[i0 * 3 + 2];
 
-            Vector2f v0tex = texCoords[i0];
-            Vector2f v1tex = texCoords[i1];
-            Vector2f v2tex = texCoords[i2];
+        float deltaU1 = uv[i1 * 2] - uv[i0 * 2];
+        float deltaV1 = uv[i1 * 2 + 1] - uv[i0 * 2 + 1];
+        float deltaU2 = uv[i2 * 2] - uv[i0 * 2];
+        float deltaV2 = uv[i2 * 2 + 1] - uv[i0 * 2 + 1];
 
-            float deltaU1 = v1tex.getX() - v0tex.getX();
-            float deltaV1 = v1tex.getY() - v0tex.getY();
-            float deltaU2 = v2tex.getX() - v0tex.getX();
-            float deltaV2 = v2tex.getY() - v0tex.getY();
+        float f = 1.0f / (deltaU1 * deltaV2 - deltaU2 * deltaV1);
 
-            float f = 1.0f / (deltaU1 * deltaV2 - deltaU2 * deltaV1);
+        dest[offset] = f * (deltaV2 * e1x - deltaV1 * e2x);
+        dest[offset + 1] = f * (deltaV2 * e1y - deltaV1 * e2y);
+        dest[offset + 2] = f * (deltaV2 * e1z - deltaV1 * e2z);
+    }
+
+    // bitangent = normalize(tangent x normal)
+    private static void bitangent(float[] t, float[] n, float[] b, int i) {
+        float x = t[i + 1] * n[i + 2] - t[i + 2] * n[i + 1];
+        float y = t[i + 2] * n[i] - t[i] * n[i + 2];
+        float z = t[i] * n[i + 1] - t[i + 1] * n[i];
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        b[i] = x / length;
+        b[i + 1] = y / length;
+        b[i + 2] = z / length;
+    }
 
-            Vector3f tangent = new Vector3f(
-                    f * (deltaV2 * edge1.getX() - deltaV1 * edge2.getX()),
-                    f * (deltaV2 * edge1.getY() - deltaV1 * edge2.getY()),
-                    f * (deltaV2 * edge1.getZ() - deltaV1 * edge2.getZ())
-            );
+    private static void add(float[] v, int i, float[] value) {
+        v[i] += value[0];
+        v[i + 1] += value[1];
+        v[i + 2] += value[2];
+    }
 
-            tangents[i0] = tangents[i0].add(tangent);
-            tangents[i1] = tangents[i1].add(tangent);
-            tangents[i2] = tangents[i2].add(tangent);
+    /**
+     * Sums packed vec3 values of faces adjacent to each vertex and normalizes the sums. Vertices are
+     * processed in parallel, each sums its faces in order of faces, same as sequential accumulation.
+     */
+    private static float[] sumAdjacent(int[] indices, float[] faceValues, int vertices) {
+        int[] offsets = new int[vertices + 1];
+        for (int index : indices) {
+            offsets[index + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
         }
 
-        for (int i = 0; i < tangents.length; i++) {
-            tangents[i] = tangents[i].normalize();
-            if (computeBitangents) {
-                bitangents[i] = tangents[i].cross(normals[i]).normalize();
-            }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertices);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
         }
 
-        log.info("{} tangents computed in {} ms.", normals.length, (System.nanoTime() - start) / 1_000_000f);
-        return this;
+        float[] result = new float[vertices * 3];
+        IntStream.range(0, vertices).parallel().forEach(v -> {
+            float x = 0, y = 0, z = 0;
+            for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                int f = adjacency[a] * 3;
+                x += faceValues[f];
+                y += faceValues[f + 1];
+                z += faceValues[f + 2];
+            }
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            result[v * 3] = x / length;
+            result[v * 3 + 1] = y / length;
+            result[v * 3 + 2] = z / length;
+        });
+        return result;
     }
 
+    // normalizes packed vec3 array in place
+    private static void normalize(float[] v) {
+        for (int i = 0; i < v.length; i += 3) {
+            float length = (float) Math.sqrt(v[i] * v[i] + v[i + 1] * v[i + 1] + v[i + 2] * v[i + 2]);
+            v[i] /= length;
+            v[i + 1] /= length;
+            v[i + 2] /= length;
+        }
+    }
 
     public IntBuffer createIndicesBuffer() {
         return (IntBuffer) BufferUtils
@@ -230,9 +375,9 @@ public class Geometry {
 
     public VertexBufferBuilder.AttributeDataSource getPositionsDataSource() {
         return (index, builder) -> new float[]{
-                positions[index].getX(),
-                positions[index].getY(),
-                positions[index].getZ()
+                positionData[index * 3],
+                positionData[index * 3 + 1],
+                positionData[index * 3 + 2]
         };
     }
 
@@ -242,9 +387,9 @@ public class Geometry {
         }
 
         return (index, builder) -> new float[]{
-                normals[index].getX(),
-                normals[index].getY(),
-                normals[index].getZ()
+                normalData[index * 3],
+                normalData[index * 3 + 1],
+                normalData[index * 3 + 2]
         };
     }
 
@@ -254,8 +399,8 @@ public class Geometry {
         }
 
         return (position, builder) -> new float[]{
-                texCoords[position].getX(),
-                texCoords[position].getY()
+                texCoordData[position * 2],
+                texCoordData[position * 2 + 1]
         };
     }
 
@@ -265,9 +410,9 @@ public class Geometry {
         }
 
         return (position, builder) -> new float[]{
-                tangents[position].getX(),
-                tangents[position].getY(),
-                tangents[position].getZ()
+                tangentData[position * 3],
+                tangentData[position * 3 + 1],
+                tangentData[position * 3 + 2]
         };
     }
 
@@ -277,9 +422,9 @@ public class Geometry {
         }
 
         return (position, builder) -> new float[]{
-                bitangents[position].getX(),
-                bitangents[position].getY(),
-                bitangents[position].getZ()
+                bitangentData[position * 3],
+                bitangentData[position * 3 + 1],
+                bitangentData[position * 3 + 2]
         };
     }
 
@@ -289,17 +434,18 @@ public class Geometry {
 
     public static Geometry plane(int sizeX, int sizeZ) {
         Geometry g = new Geometry();
-        g.positions = new Vector3f[sizeX * sizeZ];
-        g.normals = new Vector3f[sizeX * sizeZ];
+        g.positionData = new float[sizeX * sizeZ * 3];
+        g.normalData = new float[sizeX * sizeZ * 3];
         g.indices = new int[6 * (sizeX - 1) * (sizeZ - 1)];
 
         // Generate positions and normals.
         for (int x = 0; x < sizeX; x++) {
             for (int z = 0; z < sizeZ; z++) {
-                int offset = sizeX * x + z;
+                int offset = (sizeX * x + z) * 3;
 
-                g.positions[offset] = new Vector3f(x, 0, z);
-                g.normals[offset] = new Vector3f(0, 1, 0);
+                g.positionData[offset] = x;
+                g.positionData[offset + 2] = z;
+                g.normalData[offset + 1] = 1;
             }
         }
 
@@ -323,28 +469,144 @@ public class Geometry {
         return g;
     }
 
-    public void setPositions(Vector3f[] positions) {
-        this.positions = positions;
+    public void setPositionData(float[] positionData) {
+        this.positionData = positionData;
     }
 
-    public void setNormals(Vector3f[] normals) {
-        this.normals = normals;
+    public void setNormalData(float[] normalData) {
+        this.normalData = normalData;
     }
 
-    public void setTexCoords(Vector2f[] texCoords) {
-        this.texCoords = texCoords;
+    public void setTexCoordData(float[] texCoordData) {
+        this.texCoordData = texCoordData;
     }
 
     public void setIndices(int[] indices) {
         this.indices = indices;
     }
 
+    public void setTangentData(float[] tangentData) {
+        this.tangentData = tangentData;
+    }
+
+    public void setBitangentData(float[] bitangentData) {
+        this.bitangentData = bitangentData;
+    }
+
+    public void setLods(LevelOfDetail[] lods) {
+        this.lods = lods;
+    }
+
+    public void setMeshlets(Meshlet[] meshlets) {
+        this.meshlets = meshlets;
+    }
+
+    public void setBounds(Bounds bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * Computes bounds from positions, replacing any loaded ones.
+     */
+    public Geometry computeBounds() {
+        bounds = Bounds.of(positionData);
+        return this;
+    }
+
+    /*
+     * Object adapters. These copy between packed floats and vector objects and
+     * should not be used in loading or rendering code.
+     */
+
+    public Vector3f[] getPositions() {
+        return toVector3f(positionData);
+    }
+
+    public Vector3f[] getNormals() {
+        return toVector3f(normalData);
+    }
+
+    public Vector2f[] getTexCoords() {
+        return toVector2f(texCoordData);
+    }
+
+    public Vector3f[] getTangents() {
+        return toVector3f(tangentData);
+    }
+
+    public Vector3f[] getBitangents() {
+        return toVector3f(bitangentData);
+    }
+
+    public void setPositions(Vector3f[] positions) {
+        this.positionData = flatten(positions);
+    }
+
+    public void setNormals(Vector3f[] normals) {
+        this.normalData = flatten(normals);
+    }
+
+    public void setTexCoords(Vector2f[] texCoords) {
+        this.texCoordData = flatten(texCoords);
+    }
+
     public void setTangents(Vector3f[] tangents) {
-        this.tangents = tangents;
+        this.tangentData = flatten(tangents);
     }
 
     public void setBitangents(Vector3f[] bitangents) {
-        this.bitangents = bitangents;
+        this.bitangentData = flatten(bitangents);
+    }
+
+    public static float[] flatten(Vector3f[] vectors) {
+        if (vectors == null) {
+            return null;
+        }
+
+        float[] floats = new float[vectors.length * 3];
+        for (int i = 0; i < vectors.length; i++) {
+            floats[i * 3] = vectors[i].getX();
+            floats[i * 3 + 1] = vectors[i].getY();
+            floats[i * 3 + 2] = vectors[i].getZ();
+        }
+        return floats;
+    }
+
+    public static float[] flatten(Vector2f[] vectors) {
+        if (vectors == null) {
+            return null;
+        }
+
+        float[] floats = new float[vectors.length * 2];
+        for (int i = 0; i < vectors.length; i++) {
+            floats[i * 2] = vectors[i].getX();
+            floats[i * 2 + 1] = vectors[i].getY();
+        }
+        return floats;
+    }
+
+    private static Vector3f[] toVector3f(float[] floats) {
+        if (floats == null) {
+            return null;
+        }
+
+        Vector3f[] vectors = new Vector3f[floats.length / 3];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new Vector3f(floats[i * 3], floats[i * 3 + 1], floats[i * 3 + 2]);
+        }
+        return vectors;
+    }
+
+    private static Vector2f[] toVector2f(float[] floats) {
+        if (floats == null) {
+            return null;
+        }
+
+        Vector2f[] vectors = new Vector2f[floats.length / 2];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new Vector2f(floats[i * 2], floats[i * 2 + 1]);
+        }
+        return vectors;
     }
 
     public static Geometry quad() {
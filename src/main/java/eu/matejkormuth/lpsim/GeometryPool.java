@@ -0,0 +1,298 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import eu.matejkormuth.lpsim.gl.BufferObject;
+import eu.matejkormuth.lpsim.gl.BufferObjectTarget;
+import eu.matejkormuth.lpsim.gl.VAO;
+import gnu.trove.map.hash.TIntIntHashMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared vertex and index buffer for meshes of one vertex layout. Meshes are sub-allocated
+ * from the buffers and drawn with base vertex, so all of them use the same VAO and drawing
+ * them one after another does not need any VAO switches.
+ * <p>
+ * Vertices are allocated in vertices, indices in 4 byte words, so each mesh keeps its narrowest
+ * index type and indices stay aligned. Buffers grow when they are full and can be compacted
+ * after meshes were freed; allocations are updated in place.
+ */
+@Slf4j
+public class GeometryPool implements Disposable {
+
+    public static final int DEFAULT_VERTEX_CAPACITY = 256 * 1024;
+    public static final int DEFAULT_INDEX_CAPACITY = 1024 * 1024;
+
+    private static final int WORD = Integer.BYTES;
+    private static final List<GeometryPool> pools = new ArrayList<>();
+
+    @Getter
+    private final InterleavedVertexLayout layout;
+    @Getter
+    private VAO vao;
+    private BufferObject vbo;
+    private BufferObject ibo;
+
+    private final RangeAllocator vertices;
+    private final RangeAllocator indices;
+    private final List<Allocation> allocations = new ArrayList<>();
+
+    public GeometryPool(InterleavedVertexLayout layout) {
+        this(layout, DEFAULT_VERTEX_CAPACITY, DEFAULT_INDEX_CAPACITY);
+    }
+
+    /**
+     * @param vertexCapacity initial capacity in vertices
+     * @param indexCapacity  initial capacity in 4 byte words
+     */
+    public GeometryPool(InterleavedVertexLayout layout, int vertexCapacity, int indexCapacity) {
+        this.layout = layout;
+        this.vertices = new RangeAllocator(vertexCapacity);
+        this.indices = new RangeAllocator(indexCapacity);
+
+        vao = new VAO();
+        vbo = createBuffer((long) vertexCapacity * layout.getVertexSize());
+        ibo = createBuffer((long) indexCapacity * WORD);
+        bindBuffers();
+    }
+
+    /**
+     * Returns shared pool for layout, pools are created on first use.
+     */
+    public static GeometryPool of(InterleavedVertexLayout layout) {
+        for (GeometryPool pool : pools) {
+            if (pool.layout.matches(layout)) {
+                return pool;
+            }
+        }
+
+        GeometryPool pool = new GeometryPool(layout);
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Uploads vertices and indices (including levels of detail) of data to the pool.
+     */
+    public Allocation allocate(VertexData data) {
+        if (!layout.matches(data.getLayout())) {
+            throw new IllegalArgumentException("Vertex data layout does not match layout of pool!");
+        }
+
+        int vertexCount = data.getVertexCount();
+        int indexBytes = data.getIndices().remaining();
+        int words = (indexBytes + WORD - 1) / WORD;
+
+        int baseVertex = allocate(vertices, vertexCount, true);
+        int indexWord = allocate(indices, words, false);
+
+        vbo.bind(BufferObjectTarget.COPY_WRITE_BUFFER);
+        vbo.uploadSubData(BufferObjectTarget.COPY_WRITE_BUFFER, (long) baseVertex * layout.getVertexSize(), data.getVertices());
+        ibo.bind(BufferObjectTarget.COPY_WRITE_BUFFER);
+        ibo.uploadSubData(BufferObjectTarget.COPY_WRITE_BUFFER, (long) indexWord * WORD, data.getIndices());
+
+        Allocation allocation = new Allocation(this, baseVertex, vertexCount, indexWord, data.getIndexType());
+        allocations.add(allocation);
+        return allocation;
+    }
+
+    /**
+     * Returns ranges of allocation to the pool. Data stays in buffers until it is overwritten.
+     */
+    public void free(Allocation allocation) {
+        if (allocation.pool != this || !allocations.remove(allocation)) {
+            throw new IllegalArgumentException("Allocation does not belong to this pool!");
+        }
+        vertices.free(allocation.baseVertex);
+        indices.free(allocation.indexWord);
+        allocation.pool = null;
+    }
+
+    /**
+     * Moves all allocations to the start of buffers, so freed space forms one free range.
+     * Buffers are copied to new buffers on GPU.
+     */
+    public void compact() {
+        TIntIntHashMap vertexMoves = moves(vertices.compact());
+        TIntIntHashMap indexMoves = moves(indices.compact());
+        if (vertexMoves.isEmpty() && indexMoves.isEmpty()) {
+            return;
+        }
+        int stride = layout.getVertexSize();
+
+        BufferObject newVbo = createBuffer((long) vertices.getCapacity() * stride);
+        BufferObject newIbo = createBuffer((long) indices.getCapacity() * WORD);
+        for (Allocation allocation : allocations) {
+            int baseVertex = vertexMoves.containsKey(allocation.baseVertex) ? vertexMoves.get(allocation.baseVertex) : allocation.baseVertex;
+            int indexWord = indexMoves.containsKey(allocation.indexWord) ? indexMoves.get(allocation.indexWord) : allocation.indexWord;
+
+            BufferObject.copy(vbo, (long) allocation.baseVertex * stride, newVbo, (long) baseVertex * stride,
+                    (long) vertices.sizeOf(baseVertex) * stride);
+            BufferObject.copy(ibo, (long) allocation.indexWord * WORD, newIbo, (long) indexWord * WORD,
+                    (long) indices.sizeOf(indexWord) * WORD);
+            allocation.baseVertex = baseVertex;
+            allocation.indexWord = indexWord;
+        }
+        replaceBuffers(newVbo, newIbo);
+        log.info("Compacted pool {}: {} allocations, {} vertices, {} index bytes.", this, allocations.size(),
+                vertices.getUsed(), (long) indices.getUsed() * WORD);
+    }
+
+    /**
+     * Compacts all shared pools created by {@link #of(InterleavedVertexLayout)}.
+     */
+    public static void compactAll() {
+        for (GeometryPool pool : pools) {
+            pool.compact();
+        }
+    }
+
+    public int getAllocationCount() {
+        return allocations.size();
+    }
+
+    // allocates range, grows the buffer (doubling its capacity) when there is no free range large enough
+    private int allocate(RangeAllocator allocator, int size, boolean vertexBuffer) {
+        int offset = allocator.allocate(size);
+        if (offset != -1) {
+            return offset;
+        }
+
+        int oldCapacity = allocator.getCapacity();
+        int newCapacity = Math.max(oldCapacity * 2, oldCapacity + size);
+        allocator.grow(newCapacity);
+
+        long unit = vertexBuffer ? layout.getVertexSize() : WORD;
+        BufferObject old = vertexBuffer ? vbo : ibo;
+        BufferObject grown = createBuffer(newCapacity * unit);
+        BufferObject.copy(old, 0, grown, 0, oldCapacity * unit);
+        if (vertexBuffer) {
+            replaceBuffers(grown, ibo);
+        } else {
+            replaceBuffers(vbo, grown);
+        }
+        log.info("Grown {} buffer of pool {} to {} {}.", vertexBuffer ? "vertex" : "index", this, newCapacity,
+                vertexBuffer ? "vertices" : "words");
+
+        return allocator.allocate(size);
+    }
+
+    private static TIntIntHashMap moves(List<RangeAllocator.Move> moves) {
+        TIntIntHashMap map = new TIntIntHashMap(moves.size());
+        for (RangeAllocator.Move move : moves) {
+            map.put(move.getFrom(), move.getTo());
+        }
+        return map;
+    }
+
+    private static BufferObject createBuffer(long bytes) {
+        BufferObject buffer = new BufferObject();
+        buffer.bind(BufferObjectTarget.COPY_WRITE_BUFFER);
+        buffer.allocate(BufferObjectTarget.COPY_WRITE_BUFFER, bytes, UsageHint.STATIC_DRAW);
+        return buffer;
+    }
+
+    private void replaceBuffers(BufferObject newVbo, BufferObject newIbo) {
+        if (newVbo != vbo) {
+            vbo.dispose();
+            vbo = newVbo;
+        }
+        if (newIbo != ibo) {
+            ibo.dispose();
+            ibo = newIbo;
+        }
+        bindBuffers();
+    }
+
+    // vertex attribute pointers and element buffer are state of VAO, previous VAO is bound back
+    private void bindBuffers() {
+        int previousVao = VAO.getCurrentId();
+        vao.bind();
+        vbo.bindAsVbo();
+        ibo.bindAsIbo();
+        layout.applyToBoundVAO();
+        VAO.bind(previousVao);
+    }
+
+    @Override
+    public void dispose() {
+        pools.remove(this);
+        vao.dispose();
+        vbo.dispose();
+        ibo.dispose();
+    }
+
+    /**
+     * Ranges of one mesh in pool. Offsets change when the pool is compacted.
+     */
+    public static class Allocation {
+        private GeometryPool pool;
+        private int baseVertex;
+        @Getter
+        private final int vertexCount;
+        private int indexWord;
+        @Getter
+        private final IndexType indexType;
+
+        Allocation(GeometryPool pool, int baseVertex, int vertexCount, int indexWord, IndexType indexType) {
+            this.pool = pool;
+            this.baseVertex = baseVertex;
+            this.vertexCount = vertexCount;
+            this.indexWord = indexWord;
+            this.indexType = indexType;
+        }
+
+        public GeometryPool getPool() {
+            return pool;
+        }
+
+        /**
+         * Index of first vertex, added to each index when drawing.
+         */
+        public int getBaseVertex() {
+            return baseVertex;
+        }
+
+        /**
+         * Offset of first index in elements of index type.
+         */
+        public int getFirstIndex() {
+            return indexWord * WORD / indexType.getBytes();
+        }
+
+        /**
+         * Offset of first index in bytes.
+         */
+        public long getIndexOffset() {
+            return (long) indexWord * WORD;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Type of elements in index buffer. Narrowest type that can address all vertices
+ * should be used to save memory and bandwidth.
+ */
+public enum IndexType {
+    UNSIGNED_BYTE(Byte.BYTES, GL11.GL_UNSIGNED_BYTE),
+    UNSIGNED_SHORT(Short.BYTES, GL11.GL_UNSIGNED_SHORT),
+    UNSIGNED_INT(Integer.BYTES, GL11.GL_UNSIGNED_INT);
+
+    private final int bytes;
+    private final int constant;
+
+    IndexType(int bytes, int constant) {
+        this.bytes = bytes;
+        this.constant = constant;
+    }
+
+    /**
+     * Returns size of one index in bytes.
+     */
+    public int getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns GL type constant.
+     */
+    public int getConstant() {
+        return constant;
+    }
+
+    /**
+     * Puts indices to buffer as elements of this type.
+     */
+    public void put(ByteBuffer dest, int[] indices) {
+        switch (this) {
+            case UNSIGNED_BYTE:
+                for (int index : indices) {
+                    dest.put((byte) index);
+                }
+                break;
+            case UNSIGNED_SHORT:
+                for (int index : indices) {
+                    dest.putShort((short) index);
+                }
+                break;
+            default:
+                dest.asIntBuffer().put(indices);
+                dest.position(dest.position() + indices.length * Integer.BYTES);
+                break;
+        }
+    }
+
+    /**
+     * Reads remaining elements of this type from buffer.
+     */
+    public int[] get(ByteBuffer src) {
+        int[] indices = new int[src.remaining() / bytes];
+        switch (this) {
+            case UNSIGNED_BYTE:
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = src.get() & 0xFF;
+                }
+                break;
+            case UNSIGNED_SHORT:
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = src.getShort() & 0xFFFF;
+                }
+                break;
+            default:
+                src.asIntBuffer().get(indices);
+                src.position(src.position() + indices.length * Integer.BYTES);
+                break;
+        }
+        return indices;
+    }
+
+    /**
+     * Returns narrowest type that can address specified amount of vertices.
+     */
+    public static IndexType forVertexCount(int vertices) {
+        if (vertices <= 0xFF + 1) {
+            return UNSIGNED_BYTE;
+        } else if (vertices <= 0xFFFF + 1) {
+            return UNSIGNED_SHORT;
+        }
+        return UNSIGNED_INT;
+    }
+
+    public static IndexType ofBytes(int bytes) {
+        for (IndexType type : values()) {
+            if (type.bytes == bytes) {
+                return type;
+            }
+        }
+        throw new RuntimeException("No index type of " + bytes + " bytes!");
+    }
+}
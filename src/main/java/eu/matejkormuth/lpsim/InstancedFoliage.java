@@ -71,6 +71,7 @@ public class InstancedFoliage extends WorldObject {
     private FloatBuffer instanceBufferBuffer;
 
     private int indicesCount = 0;
+    private IndexType indexType;
 
     private int instanceCount = 0;
     private final int maxInstances;
@@ -84,11 +85,15 @@ public class InstancedFoliage extends WorldObject {
     }
 
     public InstancedFoliage(@Nonnull Mesh mesh, @Nonnull Material material, int maxInstances) {
+        if (mesh.isPooled()) {
+            throw new IllegalArgumentException("Pooled meshes can't be used for instanced foliage!");
+        }
         this.maxInstances = maxInstances;
         this.material = material;
         this.vbo = mesh.getVbo();
         this.ibo = mesh.getIbo();
         this.indicesCount = mesh.getIndicesCount();
+        this.indexType = mesh.getIndexType();
         this.instanceBufferBuffer = BufferUtils.createFloatBuffer((4 * 4 + 3) * maxInstances);
 
         vao = new VAO();
@@ -99,8 +104,8 @@ public class InstancedFoliage extends WorldObject {
         vbo.addReference();
         vbo.bindAsVbo();
 
-        // Apply standard attributes.
-        InterleavedVertexLayout.STANDARD.applyToBoundVAO();
+        // Apply attributes of mesh.
+        mesh.getLayout().applyToBoundVAO();
 
         // Apply instanced attribues.
         instanceBufferObject = new BufferObject();
@@ -207,7 +212,7 @@ public class InstancedFoliage extends WorldObject {
 
     private void drawElementsInstanced() {
         vao.bind();
-        GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, indicesCount, GL11.GL_UNSIGNED_INT, 0, instanceCount);
+        GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, indicesCount, indexType.getConstant(), 0, instanceCount);
     }
 
     private void drawArraysInstanced() {
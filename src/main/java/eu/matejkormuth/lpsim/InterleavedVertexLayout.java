@@ -30,9 +30,12 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 import lombok.Getter;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -51,6 +54,16 @@ public class InterleavedVertexLayout {
             .attribute("texCoord", InterleavedVertexLayout.AttributeType.VEC2)
             .attribute("tangent", InterleavedVertexLayout.AttributeType.VEC3).build();
             // .attribute("bitangent", InterleavedVertexLayout.AttributeType.VEC3).build();
+    /**
+     * Same attributes as standard layout packed to 24 bytes instead of 44. Normals and tangents
+     * are stored as INT_2_10_10_10_REV and texture coordinates as half floats, so it can be used
+     * with shaders written for standard layout.
+     */
+    public static final InterleavedVertexLayout STANDARD_PACKED = InterleavedVertexLayout.builder()
+            .attribute("position", InterleavedVertexLayout.AttributeType.VEC3)
+            .attribute("normal", InterleavedVertexLayout.AttributeType.INT_2_10_10_10_REV)
+            .attribute("texCoord", InterleavedVertexLayout.AttributeType.HVEC2)
+            .attribute("tangent", InterleavedVertexLayout.AttributeType.INT_2_10_10_10_REV).build();
 
     private TIntObjectHashMap<VertexAttribute> layout = new TIntObjectHashMap<>();
 
@@ -80,10 +93,68 @@ public class InterleavedVertexLayout {
         return null;
     }
 
-    private int size() {
+    public int size() {
         return layout.size();
     }
 
+    /**
+     * Returns size of one vertex in bytes.
+     */
+    public int getVertexSize() {
+        int size = 0;
+        for (VertexAttribute attr : layout.valueCollection()) {
+            size += attr.type.bytes;
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether other layout has the same attributes (names and types) at the same locations.
+     */
+    public boolean matches(InterleavedVertexLayout other) {
+        if (other.size() != size()) {
+            return false;
+        }
+
+        for (int i = 0; i < size(); i++) {
+            VertexAttribute a = getAttribute(i);
+            VertexAttribute b = other.getAttribute(i);
+            if (!a.name.equals(b.name) || a.type != b.type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads position attribute of interleaved vertices (in byte order of buffer) to array of
+     * x, y, z triples. Returns null if layout has no position attribute.
+     */
+    public float[] readPositions(ByteBuffer vertices) {
+        VertexAttribute position = getAttribute("position");
+        if (position == null) {
+            return null;
+        }
+
+        int offset = 0;
+        for (int i = 0; i < position.getLocation(); i++) {
+            offset += getAttribute(i).getType().getBytes();
+        }
+
+        int stride = getVertexSize();
+        int count = vertices.remaining() / stride;
+        int components = position.getType().getComponents();
+        float[] positions = new float[count * 3];
+        float[] value = new float[components];
+        ByteBuffer buffer = vertices.duplicate().order(vertices.order());
+        for (int v = 0; v < count; v++) {
+            buffer.position(vertices.position() + v * stride + offset);
+            position.getType().get(buffer, value, 0);
+            System.arraycopy(value, 0, positions, v * 3, Math.min(3, components));
+        }
+        return positions;
+    }
+
     public Collection<VertexAttribute> getAttributes() {
         return Collections.unmodifiableCollection(layout.valueCollection());
     }
@@ -105,9 +176,10 @@ public class InterleavedVertexLayout {
             VertexAttribute attr = layout.get(i);
 
             GL20.glEnableVertexAttribArray(indexOffset + attr.location);
-            GL20.glVertexAttribPointer(indexOffset + attr.location, attr.type.size, attr.type.constant, attr.normalized, stride, offset);
-            log.debug("VertexAttrib: location = {}, size (in floats) = {}, const = {}, normalized = {}, stride = {}, offset = {}",
-                    indexOffset + attr.location, attr.type.size, attr.type.constant, attr.normalized, stride, offset);
+            boolean normalized = attr.normalized || attr.type.normalized;
+            GL20.glVertexAttribPointer(indexOffset + attr.location, attr.type.size, attr.type.constant, normalized, stride, offset);
+            log.debug("VertexAttrib: location = {}, size (in values) = {}, const = {}, normalized = {}, stride = {}, offset = {}",
+                    indexOffset + attr.location, attr.type.size, attr.type.constant, normalized, stride, offset);
             offset += attr.type.bytes;
         }
     }
@@ -160,16 +232,45 @@ public class InterleavedVertexLayout {
         DOUBLE(1, Double.BYTES, GL11.GL_DOUBLE),
         DVEC2(2, Double.BYTES * 2, GL11.GL_DOUBLE),
         DVEC3(3, Double.BYTES * 3, GL11.GL_DOUBLE),
-        DVEC4(4, Double.BYTES * 4, GL11.GL_DOUBLE);
+        DVEC4(4, Double.BYTES * 4, GL11.GL_DOUBLE),
+
+        // Half precision floats, HVEC3 is padded to 8 bytes to keep attributes 4 byte aligned.
+        HVEC2(2, 2, Short.BYTES * 2, GL30.GL_HALF_FLOAT, false),
+        HVEC3(3, 3, Short.BYTES * 4, GL30.GL_HALF_FLOAT, false),
+        HVEC4(4, 4, Short.BYTES * 4, GL30.GL_HALF_FLOAT, false),
+
+        /**
+         * Signed normalized vec3 (normals, tangents) packed to 10 bits per component. Read as vec3 or vec4
+         * with w = 0 in shader.
+         */
+        INT_2_10_10_10_REV(4, 3, Integer.BYTES, GL33.GL_INT_2_10_10_10_REV, true),
+        /**
+         * Unit vec3 encoded as two signed normalized shorts of octahedral projection. Shader reads it as
+         * vec2 and must decode it (z = 1 - |x| - |y|, fold when z is negative, normalize).
+         */
+        OCTAHEDRAL(2, 3, Short.BYTES * 2, GL11.GL_SHORT, true),
+        /**
+         * Unsigned normalized 16 bit vec2. Values are clamped to [0, 1] so it is only suitable for
+         * texture coordinates which do not repeat texture.
+         */
+        UNORM16_VEC2(2, 2, Short.BYTES * 2, GL11.GL_UNSIGNED_SHORT, true);
 
         private final int size;
+        private final int components;
         private final int bytes;
         private final int constant;
+        private final boolean normalized;
 
         AttributeType(int size, int bytes, int constant) {
+            this(size, size, bytes, constant, false);
+        }
+
+        AttributeType(int size, int components, int bytes, int constant, boolean normalized) {
             this.size = size;
+            this.components = components;
             this.bytes = bytes;
             this.constant = constant;
+            this.normalized = normalized;
         }
 
         /**
@@ -198,5 +299,125 @@ public class InterleavedVertexLayout {
         public int getSize() {
             return size;
         }
+
+        /**
+         * Returns amount of floats one value of this type is encoded from. Differs from size
+         * for packed types, INT_2_10_10_10_REV has size 4 but it is encoded from 3 floats.
+         *
+         * @return amount of floats in unpacked value
+         */
+        public int getComponents() {
+            return components;
+        }
+
+        /**
+         * Returns whether fixed point values of this type are normalized when read by shader.
+         *
+         * @return true if this type is normalized fixed point type
+         */
+        public boolean isNormalized() {
+            return normalized;
+        }
+
+        /**
+         * Encodes one value from components at specified offset of source array and puts
+         * it to buffer (in byte order of buffer).
+         */
+        public void put(ByteBuffer buffer, float[] src, int offset) {
+            switch (this) {
+                case FLOAT:
+                case VEC2:
+                case VEC3:
+                case VEC4:
+                    for (int i = 0; i < size; i++) {
+                        buffer.putFloat(src[offset + i]);
+                    }
+                    break;
+                case DOUBLE:
+                case DVEC2:
+                case DVEC3:
+                case DVEC4:
+                    for (int i = 0; i < size; i++) {
+                        buffer.putDouble(src[offset + i]);
+                    }
+                    break;
+                case HVEC2:
+                case HVEC3:
+                case HVEC4:
+                    for (int i = 0; i < size; i++) {
+                        buffer.putShort(VertexPacking.toHalf(src[offset + i]));
+                    }
+                    if (size == 3) {
+                        buffer.putShort((short) 0);
+                    }
+                    break;
+                case INT_2_10_10_10_REV:
+                    buffer.putInt(VertexPacking.toSnorm1010102(src[offset], src[offset + 1], src[offset + 2]));
+                    break;
+                case OCTAHEDRAL:
+                    int octahedral = VertexPacking.toOctahedral(src[offset], src[offset + 1], src[offset + 2]);
+                    buffer.putShort((short) octahedral);
+                    buffer.putShort((short) (octahedral >> 16));
+                    break;
+                case UNORM16_VEC2:
+                    buffer.putShort(VertexPacking.toUnorm16(src[offset]));
+                    buffer.putShort(VertexPacking.toUnorm16(src[offset + 1]));
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Cannot encode " + this + "!");
+            }
+        }
+
+        /**
+         * Reads one value from buffer and decodes its components to specified offset of
+         * destination array.
+         */
+        public void get(ByteBuffer buffer, float[] dest, int offset) {
+            switch (this) {
+                case FLOAT:
+                case VEC2:
+                case VEC3:
+                case VEC4:
+                    for (int i = 0; i < size; i++) {
+                        dest[offset + i] = buffer.getFloat();
+                    }
+                    break;
+                case DOUBLE:
+                case DVEC2:
+                case DVEC3:
+                case DVEC4:
+                    for (int i = 0; i < size; i++) {
+                        dest[offset + i] = (float) buffer.getDouble();
+                    }
+                    break;
+                case HVEC2:
+                case HVEC3:
+                case HVEC4:
+                    for (int i = 0; i < size; i++) {
+                        dest[offset + i] = VertexPacking.fromHalf(buffer.getShort());
+                    }
+                    if (size == 3) {
+                        buffer.getShort();
+                    }
+                    break;
+                case INT_2_10_10_10_REV:
+                    int packed = buffer.getInt();
+                    dest[offset] = VertexPacking.fromSnorm1010102(packed, 0);
+                    dest[offset + 1] = VertexPacking.fromSnorm1010102(packed, 1);
+                    dest[offset + 2] = VertexPacking.fromSnorm1010102(packed, 2);
+                    break;
+                case OCTAHEDRAL:
+                    float u = VertexPacking.fromSnorm16(buffer.getShort());
+                    float v = VertexPacking.fromSnorm16(buffer.getShort());
+                    VertexPacking.fromOctahedral(u, v, dest, offset);
+                    break;
+                case UNORM16_VEC2:
+                    dest[offset] = VertexPacking.fromUnorm16(buffer.getShort());
+                    dest[offset + 1] = VertexPacking.fromUnorm16(buffer.getShort());
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Cannot decode " + this + "!");
+            }
+        }
     }
 }
@@ -29,9 +29,12 @@ package eu.matejkormuth.lpsim;
 import eu.matejkormuth.lpsim.gl.BufferObject;
 import eu.matejkormuth.lpsim.gl.BufferObjectTarget;
 import eu.matejkormuth.lpsim.gl.VAO;
+import eu.matejkormuth.lpsim.math.Matrix4f;
 import lombok.Getter;
+import lombok.Setter;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
 
 /**
  * Represents renderable geometry in GPU memory.
@@ -46,34 +49,271 @@ public class Mesh extends ReferenceCounting implements Disposable {
     private BufferObject ibo;
     @Getter
     private int indicesCount = 0;
+    @Getter
+    private IndexType indexType = IndexType.UNSIGNED_INT;
+    @Getter
+    private InterleavedVertexLayout layout;
+    /**
+     * Bounding box and sphere in object space.
+     */
+    @Getter
+    private Bounds bounds;
+    // hierarchy of triangles for ray casts, built on first ray cast
+    private TriangleBVH bvh;
+    /**
+     * Copy of uploaded vertices and indices or null if it was not kept. Static geometry keeps it for
+     * {@link StaticBatcher} until World releases it after batching, pickable objects keep it for ray casts.
+     */
+    @Getter
+    @Setter
+    private VertexData vertexData;
+    /**
+     * Position only mesh welded by position used in shadow passes or null if it was not built
+     * (yet), see {@link #getShadowMesh()}.
+     */
+    @Getter
+    private Mesh shadowProxy;
+
+    // first index of each level of detail followed by total index count
+    private int[] lodOffsets = {0, 0};
+    private float[] lodErrors = {0};
+
+    // first index and index count of each meshlet, bounding sphere and normal cone of each meshlet
+    private int[] meshletRanges;
+    private float[] meshletBounds;
+
+    // ranges in shared buffers of pool or null if mesh has its own buffers
+    private GeometryPool.Allocation allocation;
 
     public Mesh(Geometry geometry, InterleavedVertexLayout layout) {
-        this.init(geometry, layout);
+        this(VertexData.of(geometry, layout));
     }
 
-    private void init(Geometry geometry, InterleavedVertexLayout layout) {
+    /**
+     * Uploads already interleaved vertices and indices as they are.
+     */
+    public Mesh(VertexData data) {
+        int previousVao = VAO.getCurrentId();
         vao = new VAO();
         vbo = new BufferObject();
         ibo = new BufferObject();
         vao.bind();
         ibo.bindAsIbo();
         vbo.bindAsVbo();
-        layout.applyToBoundVAO();
+        data.getLayout().applyToBoundVAO();
+
+        ibo.uploadData(BufferObjectTarget.ELEMENT_ARRAY_BUFFER, data.getIndices(), UsageHint.STATIC_DRAW);
+        vbo.uploadData(BufferObjectTarget.ARRAY_BUFFER, data.getVertices(), UsageHint.STATIC_DRAW);
+        init(data);
+        // meshes may be created while other VAO is being set up (for example by InstancedFoliage)
+        VAO.bind(previousVao);
+    }
+
+    /**
+     * Uploads vertices and indices to ranges of shared buffers of pool. Pooled meshes share
+     * VAO with all meshes of the pool, so they can't be used for instancing with per instance
+     * attributes.
+     */
+    public Mesh(VertexData data, GeometryPool pool) {
+        allocation = pool.allocate(data);
+        vao = pool.getVao();
+        init(data);
+    }
+
+    private void init(VertexData data) {
+        layout = data.getLayout();
+        bounds = data.getBounds() != null ? data.getBounds() : Bounds.of(data.getVertices(), layout);
+        indicesCount = data.getIndexCount();
+        indexType = data.getIndexType();
+        lodOffsets = data.getLodOffsets();
+        lodErrors = data.getLodErrors();
+
+        Meshlet[] meshlets = data.getMeshlets();
+        if (meshlets != null && meshlets.length > 0) {
+            meshletRanges = new int[meshlets.length * 2];
+            meshletBounds = new float[meshlets.length * 8];
+            for (int i = 0; i < meshlets.length; i++) {
+                Meshlet meshlet = meshlets[i];
+                meshletRanges[i * 2] = meshlet.getFirstIndex();
+                meshletRanges[i * 2 + 1] = meshlet.getIndexCount();
+                meshletBounds[i * 8] = meshlet.getCenterX();
+                meshletBounds[i * 8 + 1] = meshlet.getCenterY();
+                meshletBounds[i * 8 + 2] = meshlet.getCenterZ();
+                meshletBounds[i * 8 + 3] = meshlet.getRadius();
+                meshletBounds[i * 8 + 4] = meshlet.getConeX();
+                meshletBounds[i * 8 + 5] = meshlet.getConeY();
+                meshletBounds[i * 8 + 6] = meshlet.getConeZ();
+                meshletBounds[i * 8 + 7] = meshlet.getConeCutoff();
+            }
+        }
+    }
 
-        VertexBufferBuilder builder = VertexBufferBuilder.of(layout, geometry);
-        indicesCount = geometry.getIndices().length;
+    /**
+     * Returns mesh that should be drawn to shadow maps and depth only passes. Position only proxy
+     * is built from kept vertex data on first call, so only meshes of shadow casters get one.
+     * Meshes without vertex data are drawn as they are.
+     */
+    public Mesh getShadowMesh() {
+        if (shadowProxy == null && vertexData != null && layout.size() > 1 && layout.getAttribute("position") != null) {
+            // shadow passes only read positions, 12 bytes per vertex of all proxies share one VAO
+            shadowProxy = new Mesh(vertexData.positionsOnly(), GeometryPool.of(InterleavedVertexLayout.POSITION_ONLY));
+        }
+        return shadowProxy != null ? shadowProxy : this;
+    }
+
+    /**
+     * Returns hierarchy of triangles for ray casts. It is built from kept vertex data on first
+     * call, null is returned if mesh has no vertex data and can't be hit by rays.
+     */
+    public TriangleBVH getBvh() {
+        if (bvh == null && vertexData != null) {
+            bvh = TriangleBVH.of(vertexData);
+        }
+        return bvh;
+    }
 
-        ibo.uploadData(BufferObjectTarget.ELEMENT_ARRAY_BUFFER, geometry.createIndicesBuffer(), UsageHint.STATIC_DRAW);
-        vbo.uploadData(BufferObjectTarget.ARRAY_BUFFER, builder.create(geometry.getPositions().length), UsageHint.STATIC_DRAW);
+    /**
+     * Returns whether mesh is stored in shared buffers of {@link GeometryPool}.
+     */
+    public boolean isPooled() {
+        return allocation != null;
     }
 
     public void drawElements() {
         vao.bind();
-        GL11.glDrawElements(GL11.GL_TRIANGLES, indicesCount, GL11.GL_UNSIGNED_INT, 0);
+        draw(indicesCount, 0);
+    }
+
+    public void drawElements(int lod) {
+        vao.bind();
+        draw(lodOffsets[lod + 1] - lodOffsets[lod], (long) lodOffsets[lod] * indexType.getBytes());
+    }
+
+    // offset is in bytes relative to first index of mesh
+    private void draw(int count, long offset) {
+        if (allocation != null) {
+            GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, count, indexType.getConstant(),
+                    allocation.getIndexOffset() + offset, allocation.getBaseVertex());
+        } else {
+            GL11.glDrawElements(GL11.GL_TRIANGLES, count, indexType.getConstant(), offset);
+        }
+    }
+
+    private void drawInstanced(int count, long offset, int instanceCount) {
+        if (allocation != null) {
+            GL32.glDrawElementsInstancedBaseVertex(GL11.GL_TRIANGLES, count, indexType.getConstant(),
+                    allocation.getIndexOffset() + offset, instanceCount, allocation.getBaseVertex());
+        } else {
+            GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, count, indexType.getConstant(), offset, instanceCount);
+        }
+    }
+
+    public boolean hasMeshlets() {
+        return meshletRanges != null;
+    }
+
+    /**
+     * Draws full detail meshlets that may be visible from camera. Meshlets outside of camera
+     * frustum and meshlets facing away from camera are skipped, runs of visible meshlets are
+     * drawn by one call as meshlets are stored in contiguous ranges.
+     *
+     * @param transform object to world transform
+     */
+    public void drawMeshlets(Camera camera, Matrix4f transform) {
+        vao.bind();
+
+        float[][] m = transform.m;
+        float scaleX = (float) Math.sqrt(m[0][0] * m[0][0] + m[1][0] * m[1][0] + m[2][0] * m[2][0]);
+        float scaleY = (float) Math.sqrt(m[0][1] * m[0][1] + m[1][1] * m[1][1] + m[2][1] * m[2][1]);
+        float scaleZ = (float) Math.sqrt(m[0][2] * m[0][2] + m[1][2] * m[1][2] + m[2][2] * m[2][2]);
+        float scale = Math.max(scaleX, Math.max(scaleY, scaleZ));
+        // normal cones are only valid for uniform scale
+        boolean coneCulling = Math.abs(scaleX - scaleY) < 1e-3f * scale && Math.abs(scaleX - scaleZ) < 1e-3f * scale;
+
+        Frustum frustum = camera.getFrustum();
+        float eyeX = camera.getPosition().getX();
+        float eyeY = camera.getPosition().getY();
+        float eyeZ = camera.getPosition().getZ();
+
+        int runStart = 0;
+        int runEnd = 0;
+        for (int i = 0; i < meshletRanges.length / 2; i++) {
+            float[] b = meshletBounds;
+            int o = i * 8;
+            float x = m[0][0] * b[o] + m[0][1] * b[o + 1] + m[0][2] * b[o + 2] + m[0][3];
+            float y = m[1][0] * b[o] + m[1][1] * b[o + 1] + m[1][2] * b[o + 2] + m[1][3];
+            float z = m[2][0] * b[o] + m[2][1] * b[o + 1] + m[2][2] * b[o + 2] + m[2][3];
+            float radius = b[o + 3] * scale;
+
+            boolean visible = !frustum.isSphereOutside(x, y, z, radius);
+            if (visible && coneCulling && b[o + 7] < 1) {
+                float ax = (m[0][0] * b[o + 4] + m[0][1] * b[o + 5] + m[0][2] * b[o + 6]) / scale;
+                float ay = (m[1][0] * b[o + 4] + m[1][1] * b[o + 5] + m[1][2] * b[o + 6]) / scale;
+                float az = (m[2][0] * b[o + 4] + m[2][1] * b[o + 5] + m[2][2] * b[o + 6]) / scale;
+                float dx = x - eyeX, dy = y - eyeY, dz = z - eyeZ;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                visible = dx * ax + dy * ay + dz * az < b[o + 7] * distance + radius;
+            }
+
+            if (visible) {
+                if (runEnd != meshletRanges[i * 2]) {
+                    drawRange(runStart, runEnd);
+                    runStart = meshletRanges[i * 2];
+                }
+                runEnd = meshletRanges[i * 2] + meshletRanges[i * 2 + 1];
+            }
+        }
+        drawRange(runStart, runEnd);
+    }
+
+    private void drawRange(int start, int end) {
+        if (end > start) {
+            draw(end - start, (long) start * indexType.getBytes());
+        }
+    }
+
+    /**
+     * Returns count of levels of detail including full detail (level 0).
+     */
+    public int getLodCount() {
+        return lodErrors.length;
+    }
+
+    /**
+     * Returns maximum distance of level of detail from full detail surface in object space units.
+     */
+    public float getLodError(int lod) {
+        return lodErrors[lod];
+    }
+
+    /**
+     * Selects coarsest level of detail which error projected to screen is not bigger
+     * than threshold.
+     *
+     * @param distance        distance from camera in object space units
+     * @param projectionScale size in pixels of one unit at distance of one unit, see {@link Camera#getProjectionScale()}
+     * @param threshold       maximum allowed error in pixels
+     */
+    public int selectLod(float distance, float projectionScale, float threshold) {
+        for (int lod = lodErrors.length - 1; lod > 0; lod--) {
+            if (lodErrors[lod] * projectionScale <= threshold * distance) {
+                return lod;
+            }
+        }
+        return 0;
     }
 
     @Override
     public void dispose() {
+        if (shadowProxy != null) {
+            shadowProxy.dispose();
+            shadowProxy = null;
+        }
+        if (allocation != null) {
+            allocation.getPool().free(allocation);
+            allocation = null;
+            return;
+        }
         if (vao != null) {
             vao.dispose();
         }
@@ -87,6 +327,11 @@ public class Mesh extends ReferenceCounting implements Disposable {
 
     public void drawElementsInstanced(int instanceCount) {
         vao.bind();
-        GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, indicesCount, GL11.GL_UNSIGNED_INT, 0, instanceCount);
+        drawInstanced(indicesCount, 0, instanceCount);
+    }
+
+    public void drawElementsInstanced(int instanceCount, int lod) {
+        vao.bind();
+        drawInstanced(lodOffsets[lod + 1] - lodOffsets[lod], (long) lodOffsets[lod] * indexType.getBytes(), instanceCount);
     }
 }
@@ -0,0 +1,81 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import lombok.Getter;
+
+/**
+ * Cluster of neighbouring triangles stored as contiguous range of full detail indices,
+ * with bounds used to cull whole cluster on CPU.
+ */
+public class Meshlet {
+
+    @Getter
+    private final int firstIndex;
+    @Getter
+    private final int indexCount;
+
+    /**
+     * Bounding sphere in object space.
+     */
+    @Getter
+    private final float centerX;
+    @Getter
+    private final float centerY;
+    @Getter
+    private final float centerZ;
+    @Getter
+    private final float radius;
+
+    /**
+     * Axis of cone containing normals of all triangles and sine of its angle. Meshlet
+     * is backfacing when dot(center - camera, axis) >= cutoff * |center - camera| + radius.
+     * Cutoff of 1 disables the test.
+     */
+    @Getter
+    private final float coneX;
+    @Getter
+    private final float coneY;
+    @Getter
+    private final float coneZ;
+    @Getter
+    private final float coneCutoff;
+
+    public Meshlet(int firstIndex, int indexCount, float centerX, float centerY, float centerZ, float radius,
+                   float coneX, float coneY, float coneZ, float coneCutoff) {
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.radius = radius;
+        this.coneX = coneX;
+        this.coneY = coneY;
+        this.coneZ = coneZ;
+        this.coneCutoff = coneCutoff;
+    }
+}
@@ -35,12 +35,23 @@ public class Model extends WorldObject {
 
     // todo: multiple geometries with multiple materials
 
+    @Getter
     private Mesh mesh;
 
     @Getter
     @Setter
     private boolean shadowFrontFaceCulling = true;
 
+    /**
+     * Maximum error of level of detail projected to screen in pixels.
+     */
+    @Getter
+    @Setter
+    private float lodThreshold = 1f;
+    @Getter
+    @Setter
+    private float shadowLodThreshold = 4f;
+
     public Model(Mesh mesh, Material material) {
         mesh.addReference();
 
@@ -56,9 +67,48 @@ public class Model extends WorldObject {
         this.material = mat;
     }
 
+    @Override
+    public Bounds getLocalBounds() {
+        return mesh.getBounds();
+    }
+
+    @Override
+    public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, RayHit hit) {
+        TriangleBVH bvh = mesh.getBvh();
+        if (bvh == null || !bvh.closestHit(getTransformMatrix(), ox, oy, oz, dx, dy, dz, hit)) {
+            return false;
+        }
+        hit.setObject(this);
+        return true;
+    }
+
     @Override
     public void render(@Nonnull Camera camera) {
-        mesh.drawElements();
+        int lod = selectLod(camera, lodThreshold);
+        if (lod == 0 && mesh.hasMeshlets()) {
+            mesh.drawMeshlets(camera, getTransformMatrix());
+        } else {
+            mesh.drawElements(lod);
+        }
+    }
+
+    @Override
+    public void renderShadow(@Nonnull Camera camera) {
+        mesh.getShadowMesh().drawElements(selectLod(camera, shadowLodThreshold));
+    }
+
+    private int selectLod(Camera camera, float threshold) {
+        if (mesh.getLodCount() == 1) {
+            return 0;
+        }
+
+        float dx = getPosition().getX() - camera.getPosition().getX();
+        float dy = getPosition().getY() - camera.getPosition().getY();
+        float dz = getPosition().getZ() - camera.getPosition().getZ();
+        float scale = Math.max(getScale().getX(), Math.max(getScale().getY(), getScale().getZ()));
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / scale;
+
+        return mesh.selectLod(distance, camera.getProjectionScale(), threshold);
     }
 
     @Override
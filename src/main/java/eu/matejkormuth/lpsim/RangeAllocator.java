@@ -0,0 +1,216 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Allocates ranges of units (vertices, bytes...) from linear space of given capacity. Free
+ * ranges are kept sorted by offset and coalesced with their neighbours when freed, new
+ * ranges are taken from the first free range that is large enough.
+ * <p>
+ * Does not touch any GPU resources, owner of the space moves the data when space grows or
+ * when it is compacted.
+ */
+public class RangeAllocator {
+
+    @Getter
+    private int capacity;
+    /**
+     * Count of allocated units.
+     */
+    @Getter
+    private int used;
+
+    // offset -> size, both sorted by offset
+    private final TreeMap<Integer, Integer> free = new TreeMap<>();
+    private final TreeMap<Integer, Integer> allocated = new TreeMap<>();
+
+    public RangeAllocator(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative!");
+        }
+        this.capacity = capacity;
+        if (capacity > 0) {
+            free.put(0, capacity);
+        }
+    }
+
+    /**
+     * Allocates range of specified size.
+     *
+     * @return offset of the range or -1 if there is no free range large enough
+     */
+    public int allocate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive!");
+        }
+
+        for (Map.Entry<Integer, Integer> range : free.entrySet()) {
+            int offset = range.getKey();
+            int rangeSize = range.getValue();
+            if (rangeSize >= size) {
+                // entry must not be used after removal, tree map reuses it for its successor
+                free.remove(offset);
+                if (rangeSize > size) {
+                    free.put(offset + size, rangeSize - size);
+                }
+                allocated.put(offset, size);
+                used += size;
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frees range allocated at specified offset and merges it with adjacent free ranges.
+     */
+    public void free(int offset) {
+        Integer size = allocated.remove(offset);
+        if (size == null) {
+            throw new IllegalArgumentException("No range allocated at " + offset + "!");
+        }
+        used -= size;
+
+        int start = offset;
+        int end = offset + size;
+        Map.Entry<Integer, Integer> previous = free.lowerEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == start) {
+            start = previous.getKey();
+            free.remove(start);
+        }
+        Integer next = free.remove(end);
+        if (next != null) {
+            end += next;
+        }
+        free.put(start, end - start);
+    }
+
+    /**
+     * Returns size of range allocated at specified offset or -1 if there is none.
+     */
+    public int sizeOf(int offset) {
+        Integer size = allocated.get(offset);
+        return size == null ? -1 : size;
+    }
+
+    /**
+     * Extends space to new capacity, added units are free.
+     */
+    public void grow(int newCapacity) {
+        if (newCapacity < capacity) {
+            throw new IllegalArgumentException("Can't shrink from " + capacity + " to " + newCapacity + "!");
+        }
+        if (newCapacity == capacity) {
+            return;
+        }
+
+        int start = capacity;
+        Map.Entry<Integer, Integer> last = free.lastEntry();
+        if (last != null && last.getKey() + last.getValue() == capacity) {
+            start = last.getKey();
+        }
+        free.put(start, newCapacity - start);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Returns size of the largest free range.
+     */
+    public int getLargestFree() {
+        int largest = 0;
+        for (int size : free.values()) {
+            largest = Math.max(largest, size);
+        }
+        return largest;
+    }
+
+    /**
+     * Returns count of free ranges, one (or zero when full) means there is no fragmentation.
+     */
+    public int getFreeRangeCount() {
+        return free.size();
+    }
+
+    /**
+     * Moves all allocated ranges to the start of the space (keeping their order), so all
+     * free units form one range at the end. Returned moves are sorted by offset, so data can
+     * be moved in place by copying them in order (ranges only move towards lower offsets).
+     *
+     * @return ranges that changed offset
+     */
+    public List<Move> compact() {
+        List<Move> moves = new ArrayList<>();
+        TreeMap<Integer, Integer> compacted = new TreeMap<>();
+
+        int offset = 0;
+        for (Map.Entry<Integer, Integer> range : allocated.entrySet()) {
+            if (range.getKey() != offset) {
+                moves.add(new Move(range.getKey(), offset, range.getValue()));
+            }
+            compacted.put(offset, range.getValue());
+            offset += range.getValue();
+        }
+
+        allocated.clear();
+        allocated.putAll(compacted);
+        free.clear();
+        if (offset < capacity) {
+            free.put(offset, capacity - offset);
+        }
+        return moves;
+    }
+
+    /**
+     * Range moved by compaction.
+     */
+    public static class Move {
+        @Getter
+        private final int from;
+        @Getter
+        private final int to;
+        @Getter
+        private final int size;
+
+        public Move(int from, int to, int size) {
+            this.from = from;
+            this.to = to;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return "Move{from=" + from + ", to=" + to + ", size=" + size + "}";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import lombok.Getter;
+
+/**
+ * Closest hit of ray found so far. Distance of hit is used as maximum distance of following
+ * queries, so one instance can be passed to queries of multiple objects.
+ */
+public class RayHit {
+
+    /**
+     * Distance along ray in units of ray direction.
+     */
+    @Getter
+    private float distance;
+    /**
+     * Index of hit triangle in source geometry.
+     */
+    @Getter
+    private int triangle = -1;
+    /**
+     * Barycentric coordinates of hit point relative to second and third vertex of triangle.
+     */
+    @Getter
+    private float u;
+    @Getter
+    private float v;
+    @Getter
+    private WorldObject object;
+
+    public RayHit() {
+        this(Float.POSITIVE_INFINITY);
+    }
+
+    public RayHit(float maxDistance) {
+        reset(maxDistance);
+    }
+
+    /**
+     * Clears hit so the instance can be reused.
+     */
+    public RayHit reset(float maxDistance) {
+        this.distance = maxDistance;
+        this.triangle = -1;
+        this.u = 0;
+        this.v = 0;
+        this.object = null;
+        return this;
+    }
+
+    public boolean hasHit() {
+        return triangle != -1;
+    }
+
+    void set(float distance, int triangle, float u, float v) {
+        this.distance = distance;
+        this.triangle = triangle;
+        this.u = u;
+        this.v = v;
+    }
+
+    void setObject(WorldObject object) {
+        this.object = object;
+    }
+
+    @Override
+    public String toString() {
+        return "RayHit{distance=" + distance + ", triangle=" + triangle + ", u=" + u + ", v=" + v + ", object=" + object + "}";
+    }
+}
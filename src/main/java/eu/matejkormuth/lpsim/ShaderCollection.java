@@ -71,7 +71,7 @@ public class ShaderCollection {
 
     private static Shader loadShader(String name, ShaderType type) {
         log.info(" Loading shader {} of type {}...", name, type);
-        log.info(" Shader file: {}", Content.getContent().resolve("shaders", name));
+        log.info(" Shader file: {}", Content.getContent().locate("shaders", name));
         return new Shader(runPreprocessor(Content.getContent().readText("shaders", name)), type);
     }
 
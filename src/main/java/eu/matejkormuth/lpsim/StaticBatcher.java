@@ -0,0 +1,306 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import eu.matejkormuth.lpsim.math.Matrix4f;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Merges static models that share material and vertex layout into one pre-transformed model
+ * per cell of uniform grid, so each merged model costs one material bind and one draw call
+ * and cells can still be culled.
+ * <p>
+ * Only opaque models with {@link WorldObject.Mobility#STATIC} mobility, no components and mesh
+ * with kept vertex data are merged. Mirrored models are merged only if their tangent space
+ * survives mirroring. Merged meshes contain full detail only.
+ */
+@Slf4j
+@UtilityClass
+public class StaticBatcher {
+
+    public static final float DEFAULT_CELL_SIZE = 64f;
+
+    /**
+     * Returns list of objects with mergeable models replaced by merged models. Objects that
+     * can't be merged (or have nothing to be merged with) are kept in their original order.
+     */
+    public static List<WorldObject> batch(List<WorldObject> objects, float cellSize) {
+        long start = System.nanoTime();
+        List<WorldObject> result = new ArrayList<>(objects.size());
+        Map<BatchKey, List<Model>> batches = new LinkedHashMap<>();
+        for (WorldObject object : objects) {
+            if (!canBatch(object)) {
+                result.add(object);
+                continue;
+            }
+
+            Model model = (Model) object;
+            Bounds bounds = model.getWorldBounds();
+            BatchKey key = new BatchKey(model, (int) Math.floor(bounds.getCenterX() / cellSize),
+                    (int) Math.floor(bounds.getCenterY() / cellSize), (int) Math.floor(bounds.getCenterZ() / cellSize));
+            batches.computeIfAbsent(key, k -> new ArrayList<>()).add(model);
+        }
+
+        int merged = 0;
+        for (List<Model> batch : batches.values()) {
+            if (batch.size() == 1) {
+                result.add(batch.get(0));
+            } else {
+                result.add(merge(batch));
+                merged += batch.size();
+            }
+        }
+
+        log.info("Merged {} static models to {} in {} ms. Objects: {} -> {}", merged, result.size() - (objects.size() - merged),
+                (System.nanoTime() - start) / 1e6f, objects.size(), result.size());
+        return result;
+    }
+
+    private static boolean canBatch(WorldObject object) {
+        if (!(object instanceof Model)
+                || object.getMobility() != WorldObject.Mobility.STATIC
+                || object.getRenderMode() != WorldObject.RenderMode.OPAQUE
+                || object.hasComponents()) {
+            return false;
+        }
+        Mesh mesh = ((Model) object).getMesh();
+        return mesh.getVertexData() != null
+                && (determinant(object.getTransformMatrix().m) >= 0 || keepsHandedness(mesh.getLayout()));
+    }
+
+    /**
+     * Returns whether tangent space of layout stays correct under mirroring transform. Shaders
+     * derive missing bitangent as cross(normal, tangent) in object space, which points the other
+     * way after mirroring is baked into vertices. Only 4 component tangents (handedness in w) and
+     * explicit bitangents survive it, models with 3 component tangents and mirroring transform
+     * are not batched.
+     */
+    private static boolean keepsHandedness(InterleavedVertexLayout layout) {
+        InterleavedVertexLayout.VertexAttribute tangent = layout.getAttribute("tangent");
+        return tangent == null || tangent.getType().getComponents() == 4 || layout.getAttribute("bitangent") != null;
+    }
+
+    /**
+     * Merges models (which must share material and layout) into one model with identity transform.
+     */
+    public static Model merge(List<Model> models) {
+        Model first = models.get(0);
+        InterleavedVertexLayout layout = first.getMesh().getLayout();
+
+        int vertexCount = 0;
+        int indexCount = 0;
+        for (Model model : models) {
+            VertexData data = model.getMesh().getVertexData();
+            vertexCount += data.getVertexCount();
+            indexCount += data.getIndexCount();
+        }
+
+        IndexType indexType = IndexType.forVertexCount(vertexCount);
+        ByteBuffer vertices = BufferUtils.createByteBuffer(vertexCount * layout.getVertexSize());
+        ByteBuffer indices = BufferUtils.createByteBuffer(indexCount * indexType.getBytes());
+        int[] merged = new int[indexCount];
+
+        int baseVertex = 0;
+        int index = 0;
+        for (Model model : models) {
+            VertexData data = model.getMesh().getVertexData();
+            boolean mirrored = transform(data, model.getTransformMatrix(), vertices);
+
+            ByteBuffer source = data.getIndices().duplicate().order(data.getIndices().order());
+            int[] sourceIndices = data.getIndexType().get(source);
+            for (int i = 0; i < data.getIndexCount(); i += 3) {
+                // mirroring transform flips winding of triangles
+                merged[index++] = baseVertex + sourceIndices[i];
+                merged[index++] = baseVertex + sourceIndices[mirrored ? i + 2 : i + 1];
+                merged[index++] = baseVertex + sourceIndices[mirrored ? i + 1 : i + 2];
+            }
+            baseVertex += data.getVertexCount();
+        }
+        vertices.flip();
+        indexType.put(indices, merged);
+        indices.flip();
+
+        VertexData data = new VertexData(layout, vertices, indices, indexType);
+        Mesh mesh = new Mesh(data, GeometryPool.of(layout));
+        mesh.setVertexData(data);
+
+        Model batch = new Model(mesh, first.getMaterial());
+        mesh.removeReference();
+        batch.setMobility(WorldObject.Mobility.STATIC);
+        batch.setBackfaceCullingEnabled(first.isBackfaceCullingEnabled());
+        batch.setCastingShadows(first.isCastingShadows());
+        batch.setPickable(first.isPickable());
+        batch.setShadowFrontFaceCulling(first.isShadowFrontFaceCulling());
+        batch.setTag("Static batch of " + models.size() + " models");
+        return batch;
+    }
+
+    /**
+     * Transforms vertices to world space and appends them to destination. Positions are transformed
+     * as points, normals by inverse transpose and tangents as directions, other attributes are
+     * copied as they are.
+     *
+     * @return whether transform mirrors geometry
+     */
+    private static boolean transform(VertexData data, Matrix4f transform, ByteBuffer dest) {
+        float[][] m = transform.m;
+        // cofactor matrix is inverse transpose scaled by determinant
+        float[][] c = new float[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                int i1 = (i + 1) % 3, i2 = (i + 2) % 3, j1 = (j + 1) % 3, j2 = (j + 2) % 3;
+                c[i][j] = m[i1][j1] * m[i2][j2] - m[i1][j2] * m[i2][j1];
+            }
+        }
+        float det = determinant(m);
+        float sign = det < 0 ? -1 : 1;
+
+        InterleavedVertexLayout layout = data.getLayout();
+        ByteBuffer source = data.getVertices().duplicate().order(data.getVertices().order());
+        float[] value = new float[4];
+        for (int v = 0; v < data.getVertexCount(); v++) {
+            for (int location = 0; location < layout.size(); location++) {
+                InterleavedVertexLayout.VertexAttribute attribute = layout.getAttribute(location);
+                InterleavedVertexLayout.AttributeType type = attribute.getType();
+                switch (attribute.getName()) {
+                    case "position":
+                        type.get(source, value, 0);
+                        transform(m, value, true);
+                        type.put(dest, value, 0);
+                        break;
+                    case "normal":
+                        type.get(source, value, 0);
+                        transform(c, value, false);
+                        normalize(value, sign);
+                        type.put(dest, value, 0);
+                        break;
+                    case "tangent":
+                    case "bitangent":
+                        type.get(source, value, 0);
+                        transform(m, value, false);
+                        normalize(value, 1);
+                        if (type.getComponents() == 4) {
+                            // handedness of tangent space flips with mirroring
+                            value[3] *= sign;
+                        }
+                        type.put(dest, value, 0);
+                        break;
+                    default:
+                        for (int i = 0; i < type.getBytes(); i++) {
+                            dest.put(source.get());
+                        }
+                        break;
+                }
+            }
+        }
+        return det < 0;
+    }
+
+    // determinant of upper 3x3 part, negative for mirroring transforms
+    private static float determinant(float[][] m) {
+        return m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1])
+                - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0])
+                + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+    }
+
+    private static void transform(float[][] m, float[] v, boolean point) {
+        float x = m[0][0] * v[0] + m[0][1] * v[1] + m[0][2] * v[2];
+        float y = m[1][0] * v[0] + m[1][1] * v[1] + m[1][2] * v[2];
+        float z = m[2][0] * v[0] + m[2][1] * v[1] + m[2][2] * v[2];
+        if (point) {
+            x += m[0][3];
+            y += m[1][3];
+            z += m[2][3];
+        }
+        v[0] = x;
+        v[1] = y;
+        v[2] = z;
+    }
+
+    private static void normalize(float[] v, float sign) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        if (length > 0) {
+            v[0] *= sign / length;
+            v[1] *= sign / length;
+            v[2] *= sign / length;
+        }
+    }
+
+    // models in one batch share material, layout, render state, pickability and grid cell
+    private static final class BatchKey {
+        private final Material material;
+        private final InterleavedVertexLayout layout;
+        private final boolean backfaceCulling;
+        private final boolean castingShadows;
+        private final boolean shadowFrontFaceCulling;
+        private final boolean pickable;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        BatchKey(Model model, int x, int y, int z) {
+            this.material = model.getMaterial();
+            this.layout = model.getMesh().getLayout();
+            this.backfaceCulling = model.isBackfaceCullingEnabled();
+            this.castingShadows = model.isCastingShadows();
+            this.shadowFrontFaceCulling = model.isShadowFrontFaceCulling();
+            this.pickable = model.isPickable();
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) o;
+            return material == other.material && layout == other.layout && backfaceCulling == other.backfaceCulling
+                    && castingShadows == other.castingShadows && shadowFrontFaceCulling == other.shadowFrontFaceCulling
+                    && pickable == other.pickable && x == other.x && y == other.y && z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(material), System.identityHashCode(layout), backfaceCulling,
+                    castingShadows, shadowFrontFaceCulling, pickable, x, y, z);
+        }
+    }
+}
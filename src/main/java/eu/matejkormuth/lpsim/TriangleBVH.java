@@ -0,0 +1,463 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import eu.matejkormuth.lpsim.math.Matrix4f;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over triangles of geometry for ray casts. Tree is built with binned
+ * surface area heuristic and stored in flat arrays, children of inner node are stored next to
+ * each other and triangles of each leaf are stored contiguously.
+ * <p>
+ * Hits are double sided. Ray direction does not have to be normalized, distances are in units
+ * of ray direction, so distances of rays transformed to object space match world space.
+ */
+@Slf4j
+public class TriangleBVH {
+
+    public static final int BINS = 16;
+    /**
+     * Nodes with more triangles are always split (unless all triangles have the same centroid).
+     */
+    public static final int MAX_LEAF_SIZE = 8;
+    /**
+     * Cost of visiting node relative to cost of triangle intersection test.
+     */
+    public static final float TRAVERSAL_COST = 1f;
+
+    private static final int STACK_SIZE = 64;
+    private static final float EPSILON = 1e-20f;
+
+    // min x, y, z and max x, y, z of each node
+    private final float[] nodeBounds;
+    // first child of inner node (second child follows), first triangle of leaf
+    private final int[] nodeOffsets;
+    // triangle count of leaf, 0 for inner node
+    private final int[] nodeCounts;
+    // 9 floats (3 vertices) of each triangle in order of leaves
+    private final float[] triangles;
+    // index of each triangle in source geometry
+    private final int[] triangleIds;
+
+    @Getter
+    private final int nodeCount;
+
+    private TriangleBVH(float[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int nodeCount, float[] triangles, int[] triangleIds) {
+        this.nodeBounds = nodeBounds;
+        this.nodeOffsets = nodeOffsets;
+        this.nodeCounts = nodeCounts;
+        this.nodeCount = nodeCount;
+        this.triangles = triangles;
+        this.triangleIds = triangleIds;
+    }
+
+    public int getTriangleCount() {
+        return triangleIds.length;
+    }
+
+    public static TriangleBVH of(Geometry geometry) {
+        return of(geometry.getPositionData(), geometry.getIndices());
+    }
+
+    /**
+     * Builds hierarchy over full detail triangles of vertex data.
+     */
+    public static TriangleBVH of(VertexData data) {
+        float[] positions = data.getLayout().readPositions(data.getVertices());
+        if (positions == null) {
+            throw new IllegalArgumentException("Vertex data has no position attribute!");
+        }
+
+        ByteBuffer indexBuffer = data.getIndices().duplicate().order(data.getIndices().order());
+        int[] indices = data.getIndexType().get(indexBuffer);
+        return of(positions, Arrays.copyOf(indices, data.getIndexCount()));
+    }
+
+    /**
+     * Builds hierarchy over indexed triangles.
+     *
+     * @param positions x, y, z of each vertex
+     * @param indices   three indices of each triangle
+     */
+    public static TriangleBVH of(float[] positions, int[] indices) {
+        long start = System.nanoTime();
+        int count = indices.length / 3;
+
+        float[] boxes = new float[count * 6];
+        float[] centroids = new float[count * 3];
+        int[] order = new int[count];
+        for (int t = 0; t < count; t++) {
+            int i0 = indices[t * 3] * 3, i1 = indices[t * 3 + 1] * 3, i2 = indices[t * 3 + 2] * 3;
+            for (int c = 0; c < 3; c++) {
+                float min = Math.min(positions[i0 + c], Math.min(positions[i1 + c], positions[i2 + c]));
+                float max = Math.max(positions[i0 + c], Math.max(positions[i1 + c], positions[i2 + c]));
+                boxes[t * 6 + c] = min;
+                boxes[t * 6 + 3 + c] = max;
+                centroids[t * 3 + c] = (min + max) * 0.5f;
+            }
+            order[t] = t;
+        }
+
+        int capacity = Math.max(1, 2 * count - 1);
+        float[] nodeBounds = new float[capacity * 6];
+        int[] nodeOffsets = new int[capacity];
+        int[] nodeCounts = new int[capacity];
+        int nodeCount = count > 0 ? 1 : 0;
+        nodeCounts[0] = count;
+
+        int[] binCounts = new int[BINS];
+        float[] binBounds = new float[BINS * 6];
+        float[] rightCosts = new float[BINS];
+        float[] box = new float[6];
+        float[] centroidBox = new float[6];
+
+        // nodes on stack have range of triangles in offset and count
+        int[] stack = new int[STACK_SIZE];
+        int sp = 0;
+        if (count > 0) {
+            stack[sp++] = 0;
+        }
+        while (sp > 0) {
+            int node = stack[--sp];
+            int first = nodeOffsets[node];
+            int n = nodeCounts[node];
+            int end = first + n;
+
+            empty(box);
+            empty(centroidBox);
+            for (int i = first; i < end; i++) {
+                int t = order[i];
+                grow(box, boxes, t * 6, t * 6 + 3);
+                grow(centroidBox, centroids, t * 3, t * 3);
+            }
+            System.arraycopy(box, 0, nodeBounds, node * 6, 6);
+
+            if (n <= 2) {
+                continue;
+            }
+
+            // find best split by binning centroids along each axis
+            int bestAxis = -1;
+            int bestBin = 0;
+            float bestCost = Float.POSITIVE_INFINITY;
+            for (int axis = 0; axis < 3; axis++) {
+                float min = centroidBox[axis];
+                float extent = centroidBox[axis + 3] - min;
+                if (extent <= 0) {
+                    continue;
+                }
+
+                float scale = BINS / extent;
+                Arrays.fill(binCounts, 0);
+                for (int b = 0; b < BINS; b++) {
+                    empty(binBounds, b * 6);
+                }
+                for (int i = first; i < end; i++) {
+                    int t = order[i];
+                    int b = bin(centroids[t * 3 + axis], min, scale);
+                    binCounts[b]++;
+                    growBin(binBounds, b * 6, boxes, t * 6);
+                }
+
+                empty(box);
+                int rightCount = 0;
+                for (int b = BINS - 1; b > 0; b--) {
+                    rightCount += binCounts[b];
+                    growBin(box, 0, binBounds, b * 6);
+                    rightCosts[b - 1] = rightCount == 0 ? 0 : area(box) * rightCount;
+                }
+
+                empty(box);
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; b++) {
+                    leftCount += binCounts[b];
+                    growBin(box, 0, binBounds, b * 6);
+                    if (leftCount == 0 || leftCount == n) {
+                        continue;
+                    }
+                    float cost = area(box) * leftCount + rightCosts[b];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = b;
+                    }
+                }
+            }
+
+            float nodeArea = area(nodeBounds, node * 6);
+            float splitCost = TRAVERSAL_COST + (nodeArea > 0 ? bestCost / nodeArea : 0);
+            if (bestAxis == -1 || (splitCost >= n && n <= MAX_LEAF_SIZE)) {
+                continue;
+            }
+
+            // partition triangles of node by split bin
+            float min = centroidBox[bestAxis];
+            float scale = BINS / (centroidBox[bestAxis + 3] - min);
+            int mid = first;
+            for (int i = first; i < end; i++) {
+                int t = order[i];
+                if (bin(centroids[t * 3 + bestAxis], min, scale) <= bestBin) {
+                    order[i] = order[mid];
+                    order[mid++] = t;
+                }
+            }
+
+            int left = nodeCount;
+            nodeCount += 2;
+            nodeOffsets[left] = first;
+            nodeCounts[left] = mid - first;
+            nodeOffsets[left + 1] = mid;
+            nodeCounts[left + 1] = end - mid;
+            nodeOffsets[node] = left;
+            nodeCounts[node] = 0;
+
+            if (sp + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[sp++] = left + 1;
+            stack[sp++] = left;
+        }
+
+        float[] triangles = new float[count * 9];
+        for (int i = 0; i < count; i++) {
+            int t = order[i];
+            for (int v = 0; v < 3; v++) {
+                System.arraycopy(positions, indices[t * 3 + v] * 3, triangles, i * 9 + v * 3, 3);
+            }
+        }
+
+        log.info("BVH of {} triangles with {} nodes built in {} ms.", count, nodeCount, (System.nanoTime() - start) / 1e6f);
+        return new TriangleBVH(Arrays.copyOf(nodeBounds, nodeCount * 6), Arrays.copyOf(nodeOffsets, nodeCount),
+                Arrays.copyOf(nodeCounts, nodeCount), nodeCount, triangles, order);
+    }
+
+    private static int bin(float centroid, float min, float scale) {
+        return Math.min(BINS - 1, (int) ((centroid - min) * scale));
+    }
+
+    private static void empty(float[] box) {
+        empty(box, 0);
+    }
+
+    private static void empty(float[] box, int offset) {
+        Arrays.fill(box, offset, offset + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(box, offset + 3, offset + 6, Float.NEGATIVE_INFINITY);
+    }
+
+    private static void grow(float[] box, float[] points, int minOffset, int maxOffset) {
+        for (int c = 0; c < 3; c++) {
+            box[c] = Math.min(box[c], points[minOffset + c]);
+            box[c + 3] = Math.max(box[c + 3], points[maxOffset + c]);
+        }
+    }
+
+    private static void growBin(float[] box, int offset, float[] other, int otherOffset) {
+        for (int c = 0; c < 3; c++) {
+            box[offset + c] = Math.min(box[offset + c], other[otherOffset + c]);
+            box[offset + c + 3] = Math.max(box[offset + c + 3], other[otherOffset + c + 3]);
+        }
+    }
+
+    private static float area(float[] box) {
+        return area(box, 0);
+    }
+
+    // half of surface area, only ratios of areas are used
+    private static float area(float[] box, int offset) {
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * Finds closest triangle hit by ray that is closer than current distance of hit and
+     * updates the hit.
+     *
+     * @return whether closer hit was found
+     */
+    public boolean closestHit(float ox, float oy, float oz, float dx, float dy, float dz, RayHit hit) {
+        return traverse(ox, oy, oz, dx, dy, dz, hit.getDistance(), hit);
+    }
+
+    /**
+     * Returns whether ray hits any triangle closer than max distance. Faster than closest
+     * hit as traversal stops at first hit, useful for visibility tests.
+     */
+    public boolean anyHit(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        return traverse(ox, oy, oz, dx, dy, dz, maxDistance, null);
+    }
+
+    /**
+     * Finds closest hit of world space ray, ray is transformed to object space by inverse of
+     * object to world transform.
+     */
+    public boolean closestHit(Matrix4f objectToWorld, float ox, float oy, float oz, float dx, float dy, float dz, RayHit hit) {
+        float[] ray = new float[6];
+        return toObjectSpace(objectToWorld, ox, oy, oz, dx, dy, dz, ray)
+                && closestHit(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], hit);
+    }
+
+    /**
+     * Returns whether world space ray hits any triangle closer than max distance, ray is
+     * transformed to object space by inverse of object to world transform.
+     */
+    public boolean anyHit(Matrix4f objectToWorld, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        float[] ray = new float[6];
+        return toObjectSpace(objectToWorld, ox, oy, oz, dx, dy, dz, ray)
+                && anyHit(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], maxDistance);
+    }
+
+    // inverts affine transform, so distances along transformed direction stay the same
+    private static boolean toObjectSpace(Matrix4f transform, float ox, float oy, float oz, float dx, float dy, float dz, float[] dest) {
+        float[][] m = transform.m;
+        float a = m[0][0], b = m[0][1], c = m[0][2];
+        float d = m[1][0], e = m[1][1], f = m[1][2];
+        float g = m[2][0], h = m[2][1], i = m[2][2];
+        float det = a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+        if (det == 0) {
+            return false;
+        }
+
+        float inv = 1 / det;
+        float r00 = (e * i - f * h) * inv, r01 = (c * h - b * i) * inv, r02 = (b * f - c * e) * inv;
+        float r10 = (f * g - d * i) * inv, r11 = (a * i - c * g) * inv, r12 = (c * d - a * f) * inv;
+        float r20 = (d * h - e * g) * inv, r21 = (b * g - a * h) * inv, r22 = (a * e - b * d) * inv;
+
+        float px = ox - m[0][3], py = oy - m[1][3], pz = oz - m[2][3];
+        dest[0] = r00 * px + r01 * py + r02 * pz;
+        dest[1] = r10 * px + r11 * py + r12 * pz;
+        dest[2] = r20 * px + r21 * py + r22 * pz;
+        dest[3] = r00 * dx + r01 * dy + r02 * dz;
+        dest[4] = r10 * dx + r11 * dy + r12 * dz;
+        dest[5] = r20 * dx + r21 * dy + r22 * dz;
+        return true;
+    }
+
+    // visits nearer child first, stops at first hit when hit is null
+    private boolean traverse(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, RayHit hit) {
+        if (nodeCount == 0) {
+            return false;
+        }
+
+        float invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+        float tMax = maxDistance;
+        boolean found = false;
+
+        int[] stack = new int[STACK_SIZE];
+        float[] stackDistances = new float[STACK_SIZE];
+        int sp = 0;
+        stack[sp] = 0;
+        stackDistances[sp++] = slab(0, ox, oy, oz, invX, invY, invZ, tMax);
+
+        while (sp > 0) {
+            sp--;
+            int node = stack[sp];
+            if (stackDistances[sp] >= tMax) {
+                continue;
+            }
+
+            int count = nodeCounts[node];
+            if (count > 0) {
+                int end = nodeOffsets[node] + count;
+                for (int t = nodeOffsets[node]; t < end; t++) {
+                    int o = t * 9;
+                    float[] v = triangles;
+                    float e1x = v[o + 3] - v[o], e1y = v[o + 4] - v[o + 1], e1z = v[o + 5] - v[o + 2];
+                    float e2x = v[o + 6] - v[o], e2y = v[o + 7] - v[o + 1], e2z = v[o + 8] - v[o + 2];
+                    float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+                    float det = e1x * px + e1y * py + e1z * pz;
+                    if (det > -EPSILON && det < EPSILON) {
+                        continue;
+                    }
+
+                    float inv = 1 / det;
+                    float sx = ox - v[o], sy = oy - v[o + 1], sz = oz - v[o + 2];
+                    float u = (sx * px + sy * py + sz * pz) * inv;
+                    if (u < 0 || u > 1) {
+                        continue;
+                    }
+                    float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+                    float w = (dx * qx + dy * qy + dz * qz) * inv;
+                    if (w < 0 || u + w > 1) {
+                        continue;
+                    }
+                    float distance = (e2x * qx + e2y * qy + e2z * qz) * inv;
+                    if (distance < 0 || distance >= tMax) {
+                        continue;
+                    }
+
+                    if (hit == null) {
+                        return true;
+                    }
+                    tMax = distance;
+                    hit.set(distance, triangleIds[t], u, w);
+                    found = true;
+                }
+            } else {
+                int left = nodeOffsets[node];
+                float leftDistance = slab(left, ox, oy, oz, invX, invY, invZ, tMax);
+                float rightDistance = slab(left + 1, ox, oy, oz, invX, invY, invZ, tMax);
+                if (sp + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    stackDistances = Arrays.copyOf(stackDistances, stack.length);
+                }
+                // push farther child first, so nearer child is visited first
+                boolean leftFirst = leftDistance <= rightDistance;
+                int near = leftFirst ? left : left + 1;
+                float nearDistance = leftFirst ? leftDistance : rightDistance;
+                float farDistance = leftFirst ? rightDistance : leftDistance;
+                if (farDistance < tMax) {
+                    stack[sp] = leftFirst ? left + 1 : left;
+                    stackDistances[sp++] = farDistance;
+                }
+                if (nearDistance < tMax) {
+                    stack[sp] = near;
+                    stackDistances[sp++] = nearDistance;
+                }
+            }
+        }
+        return found;
+    }
+
+    // returns entry distance of ray to box of node or infinity if ray misses it
+    private float slab(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float tMax) {
+        float[] b = nodeBounds;
+        int o = node * 6;
+        float tx1 = (b[o] - ox) * invX, tx2 = (b[o + 3] - ox) * invX;
+        float ty1 = (b[o + 1] - oy) * invY, ty2 = (b[o + 4] - oy) * invY;
+        float tz1 = (b[o + 2] - oz) * invZ, tz2 = (b[o + 5] - oz) * invZ;
+        float near = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.max(Math.min(tz1, tz2), 0));
+        float far = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.min(Math.max(tz1, tz2), tMax));
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+}
@@ -28,9 +28,11 @@ package eu.matejkormuth.lpsim;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.Collection;
 
@@ -40,6 +42,7 @@ public class VertexBufferBuilder {
 
     private final InterleavedVertexLayout bufferLayout;
     private final TIntObjectHashMap<AttributeDataSource> dataSources = new TIntObjectHashMap<>();
+    private final TIntObjectHashMap<float[]> dataArrays = new TIntObjectHashMap<>();
 
     public VertexBufferBuilder(InterleavedVertexLayout bufferLayout) {
         this.bufferLayout = bufferLayout;
@@ -55,6 +58,21 @@ public class VertexBufferBuilder {
         return this;
     }
 
+    /**
+     * Binds tightly packed floats of attribute. These are copied without per vertex
+     * allocations, so it is preferred over data sources.
+     */
+    public VertexBufferBuilder bindData(String attribute, float[] data) {
+        if (bufferLayout.getAttribute(attribute) == null) {
+            log.debug("Attribute '{}' not found in layout! Data not bound.", attribute);
+        } else if (data == null) {
+            log.error("No data for attribute '{}'!", attribute);
+        } else {
+            dataArrays.put(bufferLayout.getAttribute(attribute).getLocation(), data);
+        }
+        return this;
+    }
+
     public VertexBufferBuilder bindDataSource(int position, AttributeDataSource source) {
         dataSources.put(position, source);
         return this;
@@ -73,22 +91,38 @@ public class VertexBufferBuilder {
     }
 
     public FloatBuffer create(int vertices) {
-        Collection<InterleavedVertexLayout.VertexAttribute> layoutAttributes = bufferLayout.getAttributes();
+        log.debug("Vertex size: {} bytes", bufferLayout.getVertexSize());
+
+        ByteBuffer buff = BufferUtils.createByteBuffer(bufferLayout.getVertexSize() * vertices);
+        fill(buff, vertices);
+        buff.flip();
 
-        int vertexSize = 0;
+        return buff.asFloatBuffer();
+    }
 
-        // Compute the rowSize of buffer.
+    /**
+     * Puts interleaved data of specified amount of vertices to buffer. Only layouts
+     * consisting of float attributes can be filled to float buffer.
+     */
+    public void fill(FloatBuffer buff, int vertices) {
+        Collection<InterleavedVertexLayout.VertexAttribute> layoutAttributes = bufferLayout.getAttributes();
         for (InterleavedVertexLayout.VertexAttribute attr : layoutAttributes) {
-            vertexSize += attr.getType().getSize();
+            if (attr.getType().getConstant() != GL11.GL_FLOAT) {
+                throw new IllegalStateException("Attribute " + attr.getName() + " of type " + attr.getType() +
+                        " cannot be put to float buffer!");
+            }
         }
 
-        log.debug("Vertex size: {} floats", vertexSize);
-
-        FloatBuffer buff = BufferUtils.createFloatBuffer(vertexSize * vertices);
-
         // Put data to buffer.
         for (int vertex = 0; vertex < vertices; vertex++) {
             for (int attribute = 0; attribute < layoutAttributes.size(); attribute++) {
+                float[] data = dataArrays.get(attribute);
+                if (data != null) {
+                    int size = bufferLayout.getAttribute(attribute).getType().getSize();
+                    buff.put(data, vertex * size, size);
+                    continue;
+                }
+
                 AttributeDataSource source = dataSources.get(attribute);
 
                 if (source == null) {
@@ -107,17 +141,68 @@ public class VertexBufferBuilder {
                 buff.put(array);
             }
         }
+    }
+
+    /**
+     * Encodes interleaved data of specified amount of vertices to buffer (in byte order of buffer).
+     * Packed attribute types are encoded from their unpacked float components. If all attributes
+     * are bound as arrays, they are interleaved in bulk by {@link VertexInterleaver}.
+     */
+    public void fill(ByteBuffer buff, int vertices) {
+        int attributes = bufferLayout.size();
+        float[][] arrays = new float[attributes][];
+        boolean bulk = true;
+        for (int attribute = 0; attribute < attributes; attribute++) {
+            arrays[attribute] = dataArrays.get(attribute);
+            bulk &= arrays[attribute] != null;
+        }
 
-        return (FloatBuffer) buff.flip();
+        if (bulk) {
+            VertexInterleaver.interleave(bufferLayout, arrays, vertices, buff);
+            return;
+        }
+
+        InterleavedVertexLayout.AttributeType[] types = new InterleavedVertexLayout.AttributeType[attributes];
+        for (int attribute = 0; attribute < attributes; attribute++) {
+            types[attribute] = bufferLayout.getAttribute(attribute).getType();
+        }
+
+        // Put data to buffer.
+        for (int vertex = 0; vertex < vertices; vertex++) {
+            for (int attribute = 0; attribute < attributes; attribute++) {
+                InterleavedVertexLayout.AttributeType type = types[attribute];
+                float[] data = arrays[attribute];
+                if (data != null) {
+                    type.put(buff, data, vertex * type.getComponents());
+                    continue;
+                }
+
+                AttributeDataSource source = dataSources.get(attribute);
+
+                if (source == null) {
+                    throw new IllegalStateException("No configured DataSource for attribute " + attribute +
+                            " (" + bufferLayout.getAttribute(attribute).getName() + ")!");
+                }
+
+                float[] array = source.dataAt(vertex, this);
+
+                if (array.length != type.getComponents()) {
+                    throw new IllegalStateException("AttributeDataSource returned " + array.length +
+                            " floats but bufferLayout expects " + type.getComponents() + " floats!");
+                }
+
+                type.put(buff, array, 0);
+            }
+        }
     }
 
     public static VertexBufferBuilder of(InterleavedVertexLayout layout, Geometry geometry) {
         VertexBufferBuilder bufferBuilder = new VertexBufferBuilder(layout);
-        bufferBuilder.bindDataSource("position", geometry.getPositionsDataSource());
-        bufferBuilder.bindDataSource("normal", geometry.getNormalsDataSource());
-        bufferBuilder.bindDataSource("texCoord", geometry.getTexCoordsDataSource());
-        bufferBuilder.bindDataSource("tangent", geometry.getTangentsDataSource());
-        bufferBuilder.bindDataSource("bitangent", geometry.getBitangentsDataSource());
+        bufferBuilder.bindData("position", geometry.getPositionData());
+        bufferBuilder.bindData("normal", geometry.getNormalData());
+        bufferBuilder.bindData("texCoord", geometry.getTexCoordData());
+        bufferBuilder.bindData("tangent", geometry.getTangentData());
+        bufferBuilder.bindData("bitangent", geometry.getBitangentData());
         return bufferBuilder;
     }
 
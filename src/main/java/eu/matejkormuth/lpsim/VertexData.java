@@ -0,0 +1,163 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import eu.matejkormuth.bf.geometry.GeometryWelder;
+import lombok.Getter;
+import lombok.Setter;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Vertex and index buffer ready to be uploaded to GPU: vertices interleaved by layout
+ * and indices of narrowest type, both in direct buffers in native byte order. Indices
+ * of levels of detail follow full detail indices in the same buffer.
+ */
+public class VertexData {
+
+    @Getter
+    private final InterleavedVertexLayout layout;
+    @Getter
+    private final ByteBuffer vertices;
+    @Getter
+    private final ByteBuffer indices;
+    @Getter
+    private final IndexType indexType;
+
+    /**
+     * First index of each level of detail followed by total index count, level 0 is full detail.
+     */
+    @Getter
+    private final int[] lodOffsets;
+    @Getter
+    private final float[] lodErrors;
+
+    /**
+     * Meshlets of full detail indices or null.
+     */
+    @Getter
+    @Setter
+    private Meshlet[] meshlets;
+
+    /**
+     * Object space bounds of vertices.
+     */
+    @Getter
+    @Setter
+    private Bounds bounds;
+
+    public VertexData(InterleavedVertexLayout layout, ByteBuffer vertices, ByteBuffer indices, IndexType indexType) {
+        this(layout, vertices, indices, indexType, new int[]{0, indices.remaining() / indexType.getBytes()}, new float[]{0});
+    }
+
+    public VertexData(InterleavedVertexLayout layout, ByteBuffer vertices, ByteBuffer indices, IndexType indexType,
+                      int[] lodOffsets, float[] lodErrors) {
+        this.layout = layout;
+        this.vertices = vertices;
+        this.indices = indices;
+        this.indexType = indexType;
+        this.lodOffsets = lodOffsets;
+        this.lodErrors = lodErrors;
+    }
+
+    public int getVertexCount() {
+        return vertices.remaining() / layout.getVertexSize();
+    }
+
+    /**
+     * Returns index count of full detail.
+     */
+    public int getIndexCount() {
+        return lodOffsets[1];
+    }
+
+    public int getLodCount() {
+        return lodErrors.length;
+    }
+
+    /**
+     * Returns position only copy of this data welded by position, so vertices split only by
+     * normals or texture coordinates become one vertex. Levels of detail are kept, meshlets are not.
+     */
+    public VertexData positionsOnly() {
+        float[] positions = layout.readPositions(vertices);
+        if (positions == null) {
+            throw new IllegalStateException("Vertex data has no position attribute!");
+        }
+
+        int[] allIndices = indexType.get(indices.duplicate().order(indices.order()));
+        Geometry geometry = new Geometry();
+        geometry.setPositionData(positions);
+        geometry.setIndices(Arrays.copyOfRange(allIndices, 0, lodOffsets[1]));
+        if (lodErrors.length > 1) {
+            LevelOfDetail[] lods = new LevelOfDetail[lodErrors.length - 1];
+            for (int l = 0; l < lods.length; l++) {
+                lods[l] = new LevelOfDetail(Arrays.copyOfRange(allIndices, lodOffsets[l + 1], lodOffsets[l + 2]), lodErrors[l + 1]);
+            }
+            geometry.setLods(lods);
+        }
+        geometry.setBounds(bounds);
+
+        GeometryWelder.weld(geometry, 0);
+        return of(geometry, InterleavedVertexLayout.POSITION_ONLY);
+    }
+
+    /**
+     * Interleaves attributes of geometry by specified layout and packs indices (including levels
+     * of detail) to narrowest type.
+     */
+    public static VertexData of(Geometry geometry, InterleavedVertexLayout layout) {
+        ByteBuffer vertices = BufferUtils.createByteBuffer(geometry.getVertexCount() * layout.getVertexSize());
+        VertexBufferBuilder.of(layout, geometry).fill(vertices, geometry.getVertexCount());
+        vertices.flip();
+
+        LevelOfDetail[] lods = geometry.hasLods() ? geometry.getLods() : new LevelOfDetail[0];
+        int[] lodOffsets = new int[lods.length + 2];
+        float[] lodErrors = new float[lods.length + 1];
+
+        lodOffsets[1] = geometry.getIndices().length;
+        for (int i = 0; i < lods.length; i++) {
+            lodOffsets[i + 2] = lodOffsets[i + 1] + lods[i].getIndices().length;
+            lodErrors[i + 1] = lods[i].getError();
+        }
+
+        IndexType indexType = IndexType.forVertexCount(geometry.getVertexCount());
+        ByteBuffer indices = BufferUtils.createByteBuffer(lodOffsets[lods.length + 1] * indexType.getBytes());
+        indexType.put(indices, geometry.getIndices());
+        for (LevelOfDetail lod : lods) {
+            indexType.put(indices, lod.getIndices());
+        }
+        indices.flip();
+
+        VertexData data = new VertexData(layout, vertices, indices, indexType, lodOffsets, lodErrors);
+        data.setMeshlets(geometry.getMeshlets());
+        data.setBounds(geometry.getBounds() != null ? geometry.getBounds() : Bounds.of(geometry.getPositionData()));
+        return data;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import lombok.experimental.UtilityClass;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Interleaves whole arrays of attributes to vertex buffer. Each attribute is copied
+ * with strided writes, float attributes through float view of the buffer, packed
+ * attributes through their encoders. Large meshes are split to ranges of vertices
+ * which are interleaved in parallel.
+ */
+@UtilityClass
+public class VertexInterleaver {
+
+    /**
+     * Meshes with at least this many vertices are interleaved in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+    /**
+     * Count of vertices interleaved by one task.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Writes specified amount of vertices to buffer starting at its position and advances
+     * the position past them.
+     *
+     * @param data tightly packed unpacked components of each attribute, indexed by location
+     */
+    public static void interleave(InterleavedVertexLayout layout, float[][] data, int vertices, ByteBuffer dest) {
+        int attributes = layout.size();
+        if (data.length < attributes) {
+            throw new IllegalArgumentException("Expected data for " + attributes + " attributes, got " + data.length + "!");
+        }
+
+        int stride = layout.getVertexSize();
+        InterleavedVertexLayout.AttributeType[] types = new InterleavedVertexLayout.AttributeType[attributes];
+        int[] offsets = new int[attributes];
+        int offset = 0;
+        for (int i = 0; i < attributes; i++) {
+            types[i] = layout.getAttribute(i).getType();
+            offsets[i] = offset;
+            offset += types[i].getBytes();
+
+            if (data[i] == null || data[i].length < vertices * types[i].getComponents()) {
+                throw new IllegalStateException("Not enough data for attribute " + i + " (" +
+                        layout.getAttribute(i).getName() + ")!");
+            }
+        }
+
+        if (dest.remaining() < vertices * stride) {
+            throw new IllegalArgumentException("Buffer has only " + dest.remaining() + " bytes remaining, " +
+                    vertices * stride + " needed!");
+        }
+
+        // Slice shares content with destination, all tasks write through their own duplicates.
+        ByteBuffer target = dest.slice().order(dest.order());
+        if (vertices >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+            int chunks = (vertices + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> interleave(types, offsets, stride, data,
+                    target, chunk * CHUNK_SIZE, Math.min(vertices, (chunk + 1) * CHUNK_SIZE)));
+        } else {
+            interleave(types, offsets, stride, data, target, 0, vertices);
+        }
+        dest.position(dest.position() + vertices * stride);
+    }
+
+    private static void interleave(InterleavedVertexLayout.AttributeType[] types, int[] offsets, int stride,
+                                   float[][] data, ByteBuffer target, int first, int last) {
+        ByteBuffer buffer = target.duplicate().order(target.order());
+        FloatBuffer floats = null;
+
+        for (int i = 0; i < types.length; i++) {
+            InterleavedVertexLayout.AttributeType type = types[i];
+            float[] src = data[i];
+            int components = type.getComponents();
+
+            if (type.getConstant() == GL11.GL_FLOAT) {
+                // all attribute sizes are multiples of four bytes, so floats are aligned in the float view
+                if (floats == null) {
+                    floats = buffer.asFloatBuffer();
+                }
+                int floatStride = stride / Float.BYTES;
+                int index = first * floatStride + offsets[i] / Float.BYTES;
+                for (int v = first; v < last; v++, index += floatStride) {
+                    int s = v * components;
+                    for (int c = 0; c < components; c++) {
+                        floats.put(index + c, src[s + c]);
+                    }
+                }
+            } else {
+                for (int v = first; v < last; v++) {
+                    buffer.position(v * stride + offsets[i]);
+                    type.put(buffer, src, v * components);
+                }
+            }
+        }
+    }
+}
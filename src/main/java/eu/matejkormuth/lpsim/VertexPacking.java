@@ -0,0 +1,168 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Conversions of vertex attribute values to packed GPU formats and back.
+ */
+@UtilityClass
+public class VertexPacking {
+
+    /**
+     * Converts float to IEEE 754 half precision float (rounded to nearest, overflow saturates
+     * to largest finite value).
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+
+        if (abs >= 0x7f800000) {
+            // infinity or NaN (keep NaN a NaN)
+            return (short) (sign | 0x7c00 | (abs > 0x7f800000 ? 0x200 : 0));
+        }
+
+        int rounded = abs + 0x1000;
+        if (rounded >= 0x47800000) {
+            return (short) (sign | 0x7bff);
+        }
+        if (rounded >= 0x38800000) {
+            return (short) (sign | (rounded - 0x38000000) >>> 13);
+        }
+        if (abs < 0x33000000) {
+            return (short) sign;
+        }
+
+        // subnormal half
+        int exponent = abs >>> 23;
+        int mantissa = (abs & 0x7fffff) | 0x800000;
+        return (short) (sign | (mantissa + (0x800000 >>> (exponent - 102))) >>> (126 - exponent));
+    }
+
+    /**
+     * Converts IEEE 754 half precision float to float.
+     */
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | mantissa << 13);
+        }
+        return Float.intBitsToFloat(sign | (exponent + 112) << 23 | mantissa << 13);
+    }
+
+    /**
+     * Packs three signed normalized values to 10 bit components of GL_INT_2_10_10_10_REV.
+     * The 2 bit w component is left zero.
+     */
+    public static int toSnorm1010102(float x, float y, float z) {
+        return snorm10(x) | snorm10(y) << 10 | snorm10(z) << 20;
+    }
+
+    /**
+     * Unpacks component (0 = x, 1 = y, 2 = z) of GL_INT_2_10_10_10_REV value.
+     */
+    public static float fromSnorm1010102(int packed, int component) {
+        int value = (packed << (22 - component * 10)) >> 22;
+        return Math.max(value / 511f, -1f);
+    }
+
+    private static int snorm10(float value) {
+        return Math.round(clamp(value, -1f, 1f) * 511f) & 0x3ff;
+    }
+
+    public static short toSnorm16(float value) {
+        return (short) Math.round(clamp(value, -1f, 1f) * 32767f);
+    }
+
+    public static float fromSnorm16(short value) {
+        return Math.max(value / 32767f, -1f);
+    }
+
+    public static short toUnorm16(float value) {
+        return (short) Math.round(clamp(value, 0f, 1f) * 65535f);
+    }
+
+    public static float fromUnorm16(short value) {
+        return (value & 0xffff) / 65535f;
+    }
+
+    /**
+     * Projects unit vector to octahedron and unfolds it to square. Returns both coordinates
+     * as signed normalized shorts, u in lower and v in upper 16 bits.
+     */
+    public static int toOctahedral(float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0) {
+            return 0;
+        }
+
+        float u = x / length;
+        float v = y / length;
+        if (z < 0) {
+            float foldedU = (1 - Math.abs(v)) * signNotZero(u);
+            v = (1 - Math.abs(u)) * signNotZero(v);
+            u = foldedU;
+        }
+        return (toSnorm16(u) & 0xffff) | toSnorm16(v) << 16;
+    }
+
+    /**
+     * Reconstructs unit vector from octahedral coordinates and stores it to destination
+     * at specified offset.
+     */
+    public static void fromOctahedral(float u, float v, float[] dest, int offset) {
+        float x = u;
+        float y = v;
+        float z = 1 - Math.abs(u) - Math.abs(v);
+        if (z < 0) {
+            x = (1 - Math.abs(v)) * signNotZero(u);
+            y = (1 - Math.abs(u)) * signNotZero(v);
+        }
+
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        dest[offset] = x / length;
+        dest[offset + 1] = y / length;
+        dest[offset + 2] = z / length;
+    }
+
+    private static float signNotZero(float value) {
+        return value >= 0 ? 1f : -1f;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
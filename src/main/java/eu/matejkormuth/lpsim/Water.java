@@ -41,6 +41,7 @@ public class Water extends WorldObject {
     private BufferObject vbo;
     private BufferObject ibo;
     private int indicesCount = 0;
+    private IndexType indexType = IndexType.UNSIGNED_INT;
 
     public Water() {
         layout = InterleavedVertexLayout.builder()
@@ -60,18 +61,18 @@ public class Water extends WorldObject {
         vbo.bindAsVbo();
         layout.applyToBoundVAO();
 
-        Geometry plane = Geometry.plane(768);
-        VertexBufferBuilder bufferBuilder = VertexBufferBuilder.of(layout, plane);
-        indicesCount = plane.getIndices().length;
+        VertexData data = VertexData.of(Geometry.plane(768), layout);
+        indicesCount = data.getIndexCount();
+        indexType = data.getIndexType();
 
-        ibo.uploadData(BufferObjectTarget.ELEMENT_ARRAY_BUFFER, plane.createIndicesBuffer(), UsageHint.STATIC_DRAW);
-        vbo.uploadData(BufferObjectTarget.ARRAY_BUFFER, bufferBuilder.create(plane.getPositions().length), UsageHint.STATIC_DRAW);
+        ibo.uploadData(BufferObjectTarget.ELEMENT_ARRAY_BUFFER, data.getIndices(), UsageHint.STATIC_DRAW);
+        vbo.uploadData(BufferObjectTarget.ARRAY_BUFFER, data.getVertices(), UsageHint.STATIC_DRAW);
     }
 
     @Override
     public void render(Camera camera) {
         vao.bind();
-        GL11.glDrawElements(GL11.GL_TRIANGLES, indicesCount, GL11.GL_UNSIGNED_INT, 0);
+        GL11.glDrawElements(GL11.GL_TRIANGLES, indicesCount, indexType.getConstant(), 0);
     }
 
     @Override
@@ -47,8 +47,10 @@ import org.lwjgl.opengl.GL30;
 
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static eu.matejkormuth.lpsim.Syntax.vec3;
@@ -177,7 +179,7 @@ public class World {
         //lights.add(spotLight5);
         //lights.add(sun2);
 
-        this.sky = new PreethamSky(new Mesh(BGF.load("shpere10_20"), InterleavedVertexLayout.POSITION_ONLY), camera, sun);
+        this.sky = new PreethamSky(BGF.loadMesh("shpere10_20", InterleavedVertexLayout.POSITION_ONLY), camera, sun);
         this.globalProbe = new ReflectionProbe((PreethamSky) sky);
         this.globalProbe.setPosition(new Vector3f());
         this.initializeWorld();
@@ -213,6 +215,8 @@ public class World {
 
         Application.P.textures.start();
 
+        // enqueue reads of textures of all materials first, they are decoded by endBatch()
+        PBRMaterial.beginBatch();
         PBRMaterial caveFloor1 = PBRMaterial.fromJSON("Cavefloor1 B");
         PBRMaterial carvedlimestoneground1 = PBRMaterial.fromJSON("Carvedlimestoneground1 B");
         PBRMaterial scuffedPlastic = PBRMaterial.fromJSON("Scuffed Plastic 1");
@@ -300,6 +304,7 @@ public class World {
         PBRMaterial wornredishrockface = PBRMaterial.fromJSON("Wornredishroughrockface C");
         PBRMaterial myBricks2b = PBRMaterial.fromJSON("Mybricks2 B");
         PBRMaterial myBricks4b = PBRMaterial.fromJSON("Mybricks4 B");
+        PBRMaterial.endBatch();
 
 
         // awt loads in 10 - 12 seconds, bif in 1.5 seconds
@@ -310,23 +315,24 @@ public class World {
         Application.P.models.start();
         long geometryStart = System.nanoTime();
         Display.setTitle("Loading geometry...");
-        Mesh floor = new Mesh(BGF.load("floor"), InterleavedVertexLayout.STANDARD); //OBJImporter.load("floor").computeTangents(true);
-        Mesh cube = new Mesh(BGF.load("cube"), InterleavedVertexLayout.STANDARD); //OBJImporter.load("cube").computeTangents(true);
-        Mesh sphere = new Mesh(BGF.load("sphere"), InterleavedVertexLayout.STANDARD); //OBJImporter.load("sphere").computeTangents(true);
-        Mesh smoothSphere = new Mesh(BGF.load("smoothsphere"), InterleavedVertexLayout.STANDARD); //OBJImporter.load("smoothsphere").computeTangents(true);
-        Mesh smoothCube = new Mesh(BGF.load("smoothcube"), InterleavedVertexLayout.STANDARD); //OBJImporter.load("smoothcube").computeTangents(true);
-        Mesh barrel = new Mesh(BGF.load("barrel"), InterleavedVertexLayout.STANDARD);
-        Mesh sofa = new Mesh(BGF.load("sofa_blender"), InterleavedVertexLayout.STANDARD);
-        Mesh sofa2 = new Mesh(BGF.load("sofa2_blender"), InterleavedVertexLayout.STANDARD);
-        Mesh frostmourne = new Mesh(BGF.load("frostmourne_blender"), InterleavedVertexLayout.STANDARD);
-        Mesh Combat_00 = new Mesh(BGF.load("Combat_00"), InterleavedVertexLayout.STANDARD);
-        Mesh lampa = new Mesh(BGF.load("lampa"), InterleavedVertexLayout.STANDARD);
-        Mesh wolf = new Mesh(BGF.load("wolf-obj"), InterleavedVertexLayout.STANDARD);
-        Mesh bambus = new Mesh(BGF.load("bambus2"), InterleavedVertexLayout.STANDARD);
+        GeometryPool staticGeometry = GeometryPool.of(InterleavedVertexLayout.STANDARD_PACKED);
+        Mesh floor = BGF.loadMesh("floor", staticGeometry); //OBJImporter.load("floor").computeTangents(true);
+        Mesh cube = BGF.loadMesh("cube", staticGeometry); //OBJImporter.load("cube").computeTangents(true);
+        Mesh sphere = BGF.loadMesh("sphere", staticGeometry); //OBJImporter.load("sphere").computeTangents(true);
+        Mesh smoothSphere = BGF.loadMesh("smoothsphere", staticGeometry); //OBJImporter.load("smoothsphere").computeTangents(true);
+        Mesh smoothCube = BGF.loadMesh("smoothcube", staticGeometry); //OBJImporter.load("smoothcube").computeTangents(true);
+        Mesh barrel = BGF.loadMesh("barrel", staticGeometry);
+        Mesh sofa = BGF.loadMesh("sofa_blender", staticGeometry);
+        Mesh sofa2 = BGF.loadMesh("sofa2_blender", staticGeometry);
+        Mesh frostmourne = BGF.loadMesh("frostmourne_blender", staticGeometry);
+        Mesh Combat_00 = BGF.loadMesh("Combat_00", staticGeometry);
+        Mesh lampa = BGF.loadMesh("lampa", staticGeometry);
+        Mesh wolf = BGF.loadMesh("wolf-obj", staticGeometry);
+        Mesh bambus = BGF.loadMesh("bambus2", staticGeometry);
         //Mesh terrain = new Mesh(BGF.load("terrain_blender"), VertexLayout.STANDARD);
         //Mesh rock_sandstone = new Mesh(BGF.load("rock_sandstone"), InterleavedVertexLayout.STANDARD);
-        Mesh logs = new Mesh(BGF.load("woods"), InterleavedVertexLayout.STANDARD);
-        Mesh Cerberus_LP = new Mesh(BGF.load("Cerberus_LP"), InterleavedVertexLayout.STANDARD);
+        Mesh logs = BGF.loadMesh("woods", staticGeometry);
+        Mesh Cerberus_LP = BGF.loadMesh("Cerberus_LP", staticGeometry);
         long geometryEnd = System.nanoTime();
         Application.P.models.end();
 
@@ -388,6 +394,7 @@ public class World {
         addTestObject(myBricks2b);
         addTestObject(myBricks4b);
 
+        PBRMaterial.beginBatch();
         testMaterial("Floor Walnut");
         testMaterial("Asphalt New");
         testMaterial("Bark 1");
@@ -396,6 +403,7 @@ public class World {
         testMaterial("Cement 1");
         testMaterial("Cement 2");
         testMaterial("Cloth 1");
+        PBRMaterial.endBatch();
         //testMaterial("Fabric 1");
         //testMaterial("Fabric 2");
         //testMaterial("Fabric 3");
@@ -424,10 +432,12 @@ public class World {
         cube_mod44.addComponent(new Rotation(new Vector3f(0, 1f, 0), 0.001f));
 
         Model bloom_test_mod = new Model(smoothCube, bloomTest);
+        bloom_test_mod.setMobility(WorldObject.Mobility.STATIC);
         bloom_test_mod.setPosition(new Vector3f(-90, 10, 90));
         bloom_test_mod.setScale(new Vector3f(8, 8, 8));
 
         Model sphere_mod = new Model(smoothSphere, goldScuffed);
+        sphere_mod.setMobility(WorldObject.Mobility.STATIC);
         sphere_mod.setPosition(new Vector3f(0, 50, 0));
         sphere_mod.setScale(new Vector3f(3, 3, 3));
 
@@ -436,29 +446,42 @@ public class World {
         //rocksandstone_mod.setScale(new Vector3f(.3f, .3f, .3f));
 
         Model logs_mod = new Model(logs, logmat);
+        logs_mod.setMobility(WorldObject.Mobility.STATIC);
         logs_mod.setPosition(new Vector3f(-60, 0, -10));
 
         Model gun_mod = new Model(Cerberus_LP, gunmat);
+        gun_mod.setMobility(WorldObject.Mobility.STATIC);
+        gun_mod.setPickable(true);
         gun_mod.setPosition(new Vector3f(-80, 25, 0));
         gun_mod.setScale(new Vector3f(5, 5, 5));
 
         Model sofa_mod = new Model(sofa, sofamat);
+        sofa_mod.setMobility(WorldObject.Mobility.STATIC);
+        sofa_mod.setPickable(true);
         sofa_mod.setPosition(new Vector3f(-100, 0, 0));
         sofa_mod.setScale(new Vector3f(5, 5, 5));
 
         Model sofa2_mod = new Model(sofa2, sofamat);
+        sofa2_mod.setMobility(WorldObject.Mobility.STATIC);
+        sofa2_mod.setPickable(true);
         sofa2_mod.setPosition(new Vector3f(-165, 0, 60));
         sofa2_mod.setScale(new Vector3f(5, 5, 5));
 
         Model frostmourne_mod = new Model(frostmourne, frostmournemat);
+        frostmourne_mod.setMobility(WorldObject.Mobility.STATIC);
+        frostmourne_mod.setPickable(true);
         frostmourne_mod.setPosition(new Vector3f(-180, 10, 0));
         frostmourne_mod.setScale(new Vector3f(1, 1, 1));
 
         Model Combat_00_mod = new Model(Combat_00, Combat_00mat);
+        Combat_00_mod.setMobility(WorldObject.Mobility.STATIC);
+        Combat_00_mod.setPickable(true);
         Combat_00_mod.setPosition(new Vector3f(-210, 20, 0));
         Combat_00_mod.setScale(new Vector3f(1, 1, 1));
 
         Model lampa_mod = new Model(lampa, lampamat);
+        lampa_mod.setMobility(WorldObject.Mobility.STATIC);
+        lampa_mod.setPickable(true);
         lampa_mod.setPosition(new Vector3f(-180, 0, 60));
         lampa_mod.setBackfaceCullingEnabled(false);
         lampa_mod.setScale(new Vector3f(1, 1, 1));
@@ -471,6 +494,7 @@ public class World {
         lights.add(lampaL);
 
         Model wall = new Model(floor, myBricks4b);
+        wall.setMobility(WorldObject.Mobility.STATIC);
         wall.setScale(new Vector3f(1024, 1, 1024));
         wall.setPosition(new Vector3f(-1100, -950, 75f));
         wall.setRotation(new Vector3f((float) Math.toRadians(-90), 0, 0));
@@ -481,11 +505,13 @@ public class World {
         wolf_mod.setRotation(new Vector3f(0, (float) Math.toRadians(-120), 0));
 
         Model bambus_mod = new Model(bambus, bambusmat);
+        bambus_mod.setMobility(WorldObject.Mobility.STATIC);
         bambus_mod.setScale(new Vector3f(3, 3, 3));
         bambus_mod.setPosition(new Vector3f(-145, 0, 65));
         //bambus_mod.setRotation(new Vector3f(0, (float) Math.toRadians(-120), 0));
 
         Model probecubetest = new Model(smoothSphere, PBRMaterial.fromJSON("Mirror"));
+        probecubetest.setMobility(WorldObject.Mobility.STATIC);
         probecubetest.setScale(new Vector3f(3, 3, 3));
         probecubetest.setPosition(new Vector3f(-20, 20, 20));
 
@@ -494,8 +520,8 @@ public class World {
         // sexShopSign.setScale(new Vector3f(1, 1, 1));
         // sexShopSign.setRotation(new Vector3f((float) Math.toRadians(90), 0, 0));
 
-        Mesh fanStill = new Mesh(BGF.load("fan_still"), InterleavedVertexLayout.STANDARD);
-        Mesh fanBlades = new Mesh(BGF.load("fan_blades"), InterleavedVertexLayout.STANDARD);
+        Mesh fanStill = BGF.loadMesh("fan_still", staticGeometry);
+        Mesh fanBlades = BGF.loadMesh("fan_blades", staticGeometry);
 
         floor_mod = new Model(floor, mahogFloor); //dryDirt1
         //floor_mod.setCastingShadows(false);
@@ -512,7 +538,9 @@ public class World {
         Vector3f fanDir = new Vector3f((float) Math.toRadians(-120), -30, 0);
 
         Model fanStill_mod = new Model(fanStill, scuffedPlastic);
+        fanStill_mod.setMobility(WorldObject.Mobility.STATIC);
         Model fanBlades_mod = new Model(fanBlades, scuffedPlastic);
+        fanBlades_mod.setMobility(WorldObject.Mobility.STATIC);
         fanStill_mod.setPosition(fanPos);
         fanStill_mod.setScale(new Vector3f(2, 2, 2));
         fanStill_mod.setRotation(fanDir);
@@ -545,6 +573,10 @@ public class World {
         // objects.add(sexShopSign);
         //objects.add(terrain);
 
+        List<WorldObject> unbatched = objects;
+        objects = StaticBatcher.batch(objects, StaticBatcher.DEFAULT_CELL_SIZE);
+        releaseVertexData(unbatched);
+
         System.gc();
 
         log.error("-----------------------");
@@ -561,15 +593,63 @@ public class World {
     }
 
 
+    /**
+     * Disposes meshes that were merged by batcher and are not used by any remaining object, then
+     * releases CPU copies of vertex data that were kept for static batching. Shadow proxies of
+     * shadow casters are built from them first, meshes of pickable objects keep them to build
+     * hierarchy of triangles on first ray cast. Test meshes are used by objects added later, they
+     * keep vertex data and their proxies are built on first shadow pass like for any other caster.
+     */
+    private void releaseVertexData(List<WorldObject> unbatched) {
+        Set<Mesh> referenced = new HashSet<>();
+        Set<Mesh> kept = new HashSet<>();
+        kept.add(smoothSphere);
+        kept.add(smoothCube);
+        for (WorldObject object : objects) {
+            if (object instanceof Model) {
+                Mesh mesh = ((Model) object).getMesh();
+                referenced.add(mesh);
+                if (object.isCastingShadows()) {
+                    mesh.getShadowMesh();
+                }
+                if (object.isPickable()) {
+                    kept.add(mesh);
+                }
+            }
+        }
+
+        // models merged by batcher are only in unbatched list
+        Set<Mesh> disposed = new HashSet<>();
+        for (WorldObject object : unbatched) {
+            if (object instanceof Model) {
+                Mesh mesh = ((Model) object).getMesh();
+                if (!referenced.contains(mesh) && !kept.contains(mesh)) {
+                    disposed.add(mesh);
+                }
+            }
+        }
+        for (Mesh mesh : disposed) {
+            mesh.dispose();
+        }
+
+        referenced.removeAll(kept);
+        for (Mesh mesh : referenced) {
+            mesh.setVertexData(null);
+        }
+        GeometryPool.compactAll();
+        log.info("Disposed {} batched meshes, released vertex data of {} meshes, kept {}.", disposed.size(),
+                referenced.size(), kept.size());
+    }
+
     public void testMaterial(String nameOrPath) {
         PBRMaterial mat = PBRMaterial.fromJSON(nameOrPath);
         addTestObject(mat);
     }
 
     // region Test Objects
-    private Mesh smoothSphere = new Mesh(BGF.load("smoothsphere"), InterleavedVertexLayout.STANDARD);
-    private Mesh smoothCube = new Mesh(BGF.load("smoothcube"), InterleavedVertexLayout.STANDARD);
-    private Mesh skydome = new Mesh(BGF.load("skydome2"), InterleavedVertexLayout.STANDARD);
+    private Mesh smoothSphere = BGF.loadMesh("smoothsphere", GeometryPool.of(InterleavedVertexLayout.STANDARD_PACKED));
+    private Mesh smoothCube = BGF.loadMesh("smoothcube", GeometryPool.of(InterleavedVertexLayout.STANDARD_PACKED));
+    private Mesh skydome = BGF.loadMesh("skydome2", InterleavedVertexLayout.STANDARD_PACKED);
 
     private int col = 0;
     private int row = -1;
@@ -585,6 +665,7 @@ public class World {
             row = 0;
         }
         Model mod = new Model(smoothCube, mat);
+        mod.setMobility(WorldObject.Mobility.STATIC);
         mod.setPosition(new Vector3f(SPACING_ROW * row, 10, SPACING_COL * col));
         mod.setScale(new Vector3f(4, 4, 4));
 
@@ -667,6 +748,10 @@ public class World {
             log.info("\n" + World.P.root.toString(true));
         }
 
+        if (Application.getInput().wasPressed(Keyboard.KEY_O)) {
+            log.info("Picked {}", raycast(camera.getPosition(), camera.getForward(), Float.POSITIVE_INFINITY));
+        }
+
         if (draggingLight) {
             spotLight.setPosition(camera.getPosition());
             spotLight.setDirection(camera.getForward());
@@ -674,6 +759,28 @@ public class World {
         P.update.end();
     }
 
+    /**
+     * Returns closest hit of ray with objects, hit has no object if nothing was hit.
+     *
+     * @param maxDistance maximum distance in units of direction
+     */
+    public RayHit raycast(Vector3f origin, Vector3f direction, float maxDistance) {
+        RayHit hit = new RayHit(maxDistance);
+        float ox = origin.getX(), oy = origin.getY(), oz = origin.getZ();
+        float dx = direction.getX(), dy = direction.getY(), dz = direction.getZ();
+        for (WorldObject object : objects) {
+            if (!object.isPickable()) {
+                continue;
+            }
+
+            Bounds bounds = object.getWorldBounds();
+            if (bounds == null || bounds.isSphereHitByRay(ox, oy, oz, dx, dy, dz, hit.getDistance())) {
+                object.raycast(ox, oy, oz, dx, dy, dz, hit);
+            }
+        }
+        return hit;
+    }
+
     private Quad quad = new Quad();
 
     public void render2() {
@@ -986,8 +1093,8 @@ public class World {
 
     private Sky sky;
 
-    private Mesh grassMesh = new Mesh(BGF.load("grass_model2"), InterleavedVertexLayout.STANDARD);
-    private Mesh fernMesh = new Mesh(BGF.load("fern"), InterleavedVertexLayout.STANDARD);
+    private Mesh grassMesh = BGF.loadMesh("grass_model2", InterleavedVertexLayout.STANDARD_PACKED);
+    private Mesh fernMesh = BGF.loadMesh("fern", InterleavedVertexLayout.STANDARD_PACKED);
 
     private Texture2D grassNormal = BIF.load("grass_blades_normal");
     private Texture2D grassAlbedo = BIF.load("grass_blades_alpha");
@@ -1037,7 +1144,7 @@ public class World {
                 // todo: cull objects that can't be shadow casters
                 if (object.isCastingShadows()) {
                     vsm.getProgram().setUniform("model", object.getTransformMatrix());
-                    object.render(camera);
+                    object.renderShadow(camera);
                 }
             }
 
@@ -1082,7 +1189,7 @@ public class World {
             for (WorldObject object : objects) {
                 if (object.isCastingShadows()) {
                     shadowMap.getProgram().setUniform("model", object.getTransformMatrix());
-                    object.render(camera);
+                    object.renderShadow(camera);
                 }
             }
 
@@ -1145,9 +1252,15 @@ public class World {
         //glDisable(GL_BLEND); // already done in shadow map pass
 
 
-        // Todo: Cull invsilible objects.
         P.geometryPassCull.start();
-        List<WorldObject> visibleObjects = new ArrayList<>(objects);
+        List<WorldObject> visibleObjects = new ArrayList<>(objects.size());
+        Frustum frustum = camera.getFrustum();
+        for (WorldObject object : objects) {
+            Bounds bounds = object.getWorldBounds();
+            if (bounds == null || !frustum.isSphereOutside(bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ(), bounds.getRadius())) {
+                visibleObjects.add(object);
+            }
+        }
         this.visibleObjects = visibleObjects.size();
         P.geometryPassCull.end();
 
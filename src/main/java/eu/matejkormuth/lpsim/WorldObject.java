@@ -64,6 +64,26 @@ public abstract class WorldObject implements Disposable {
     @Setter
     private RenderMode renderMode = RenderMode.OPAQUE;
 
+    public enum Mobility {
+        /**
+         * Object never moves and its material never changes, so it may be merged with other
+         * static objects by {@link StaticBatcher}.
+         */
+        STATIC,
+        DYNAMIC
+    }
+
+    @Getter
+    @Setter
+    private Mobility mobility = Mobility.DYNAMIC;
+
+    /**
+     * Object can be hit by ray casts of {@link World#raycast(Vector3f, Vector3f, float)}.
+     */
+    @Getter
+    @Setter
+    private boolean pickable = false;
+
     @Getter
     @Setter
     private String tag;
@@ -79,6 +99,9 @@ public abstract class WorldObject implements Disposable {
     protected Matrix4f transformMatrix = new Matrix4f().initIdentity();
     private boolean transformDirty = true;
 
+    private final Bounds worldBounds = new Bounds();
+    private boolean boundsDirty = true;
+
     public Matrix4f getTransformMatrix() {
         if (transformDirty) {
             // recalculate.
@@ -87,27 +110,75 @@ public abstract class WorldObject implements Disposable {
             Matrix4f scaleMatrix = new Matrix4f().initScale(scale.getX(), scale.getY(), scale.getZ());
 
             transformMatrix = translationMatrix.multiply(rotationMatrix.multiply(scaleMatrix));
+            transformDirty = false;
         }
         return transformMatrix;
     }
 
+    /**
+     * Returns bounds of this object in object space or null if size of the object is not known
+     * (such objects are never culled).
+     */
+    public Bounds getLocalBounds() {
+        return null;
+    }
+
+    /**
+     * Returns bounds of this object in world space or null if size of the object is not known.
+     * Bounds are cached and only recomputed after position, rotation or scale changes.
+     */
+    public Bounds getWorldBounds() {
+        Bounds local = getLocalBounds();
+        if (local == null) {
+            return null;
+        }
+
+        if (boundsDirty) {
+            worldBounds.transform(local, getTransformMatrix());
+            boundsDirty = false;
+        }
+        return worldBounds;
+    }
+
+    /**
+     * Finds closest hit of world space ray with this object that is closer than current
+     * distance of hit and updates the hit. Objects without triangles for ray casts are never hit.
+     *
+     * @return whether closer hit was found
+     */
+    public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, RayHit hit) {
+        return false;
+    }
+
     public void setScale(Vector3f scale) {
         this.scale = scale;
-        transformDirty = true;
+        markTransformDirty();
     }
 
     public void setRotation(Vector3f rotation) {
         this.rotation = rotation;
-        transformDirty = true;
+        markTransformDirty();
     }
 
     public void setPosition(Vector3f position) {
         this.position = position;
+        markTransformDirty();
+    }
+
+    protected void markTransformDirty() {
         transformDirty = true;
+        boundsDirty = true;
     }
 
     public abstract void render(@Nonnull Camera camera);
 
+    /**
+     * Renders object to shadow map. Objects may render coarser geometry than in render().
+     */
+    public void renderShadow(@Nonnull Camera camera) {
+        render(camera);
+    }
+
     @Deprecated
     public Material getMaterial() {
         return material;
@@ -129,6 +200,10 @@ public abstract class WorldObject implements Disposable {
         }
     }
 
+    public boolean hasComponents() {
+        return !components.isEmpty();
+    }
+
     public void addComponent(ObjectComponent component) {
         if (component.parent != null) {
             throw new RuntimeException("Component " + component.toString() + " is already attached to " + component.parent.toString() + "!");
@@ -26,29 +26,90 @@
  */
 package eu.matejkormuth.lpsim.content;
 
-import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BFBufferInput;
 import eu.matejkormuth.bf.geometry.GeometryFile;
+import eu.matejkormuth.bf.geometry.GeometryWelder;
 import eu.matejkormuth.lpsim.Application;
 import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.GeometryPool;
+import eu.matejkormuth.lpsim.InterleavedVertexLayout;
+import eu.matejkormuth.lpsim.Mesh;
+import eu.matejkormuth.lpsim.VertexData;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.opengl.Util;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 @Slf4j
 @Deprecated
 public class BGF {
     public static Geometry load(String file) {
+        return load(file, GeometryFile.ALL);
+    }
+
+    /**
+     * Loads only attributes used by specified layout (and indices).
+     */
+    public static Geometry load(String file, InterleavedVertexLayout layout) {
+        return load(file, GeometryFile.attributesOf(layout));
+    }
+
+    /**
+     * Loads only specified attributes, see {@link GeometryFile#POSITIONS}.
+     */
+    public static Geometry load(String file, int attributes) {
+        Application.P.modelsIO.start();
+        log.info("Loading " + file + ".bgf");
+        return load(Content.getContent().openBuffer("models", file + ".bgf"), attributes);
+    }
+
+    /**
+     * Loads mesh with specified layout. Files saved with the same layout are uploaded
+     * right after decompression.
+     */
+    public static Mesh loadMesh(String file, InterleavedVertexLayout layout) {
+        Application.P.modelsIO.start();
+        log.info("Loading " + file + ".bgf");
+        try {
+            VertexData data = GeometryFile.loadVertexData(new BFBufferInput(Content.getContent().openBuffer("models", file + ".bgf")), layout);
+            return new Mesh(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads mesh with specified layout to ranges of shared buffers of pool. Pooled meshes are
+     * static scene geometry, so vertex data is kept for static batching.
+     */
+    public static Mesh loadMesh(String file, GeometryPool pool) {
         Application.P.modelsIO.start();
         log.info("Loading " + file + ".bgf");
-        return load(Content.getContent().openRead("models", file + ".bgf"));
+        try {
+            VertexData data = GeometryFile.loadVertexData(new BFBufferInput(Content.getContent().openBuffer("models", file + ".bgf")), pool.getLayout());
+            Mesh mesh = new Mesh(data, pool);
+            mesh.setVertexData(data);
+            return mesh;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads mesh with specified layout and welds vertices which have all attributes of the layout
+     * within epsilon before upload. Useful for files that were not welded when converted.
+     */
+    public static Mesh loadMesh(String file, InterleavedVertexLayout layout, float weldEpsilon) {
+        Geometry geometry = load(file, layout);
+        GeometryWelder.weld(geometry, weldEpsilon);
+        return new Mesh(geometry, layout);
     }
 
-    private static Geometry load(InputStream is) {
+    private static Geometry load(ByteBuffer buffer, int attributes) {
         Geometry geometry = new Geometry();
         try {
-            GeometryFile.loadToGeometry(new BFInputStream(is), geometry);
+            GeometryFile.loadToGeometry(new BFBufferInput(buffer), geometry, attributes);
             Util.checkGLError();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -43,14 +43,14 @@ public class BIF {
         Application.P.texturesIO.start();
         log.info("Loading " + file + ".bif");
         return load(Content.getContent().openRead("textures", file + ".bif"),
-                Content.getContent().resolve("textures", file + ".bif").toAbsolutePath().toString());
+                Content.getContent().locate("textures", file + ".bif"));
     }
 
     public static Texture2D loadRawPath(String file) {
         Application.P.texturesIO.start();
         log.info("Loading " + file + ".bif");
         return load(Content.getContent().openRead(file + ".bif"),
-                Content.getContent().resolve(file + ".bif").toAbsolutePath().toString());
+                Content.getContent().locate(file + ".bif"));
     }
 
     private static Texture2D load(InputStream is, String tag) {
@@ -26,6 +26,9 @@
  */
 package eu.matejkormuth.lpsim.content;
 
+import eu.matejkormuth.bf.archive.Archive;
+import eu.matejkormuth.bf.archive.ArchiveFile;
+import eu.matejkormuth.bf.archive.ByteBufferInputStream;
 import eu.matejkormuth.bf.compression.BFInputStream;
 import eu.matejkormuth.bf.image.ImageFile;
 import eu.matejkormuth.lpsim.Application;
@@ -44,14 +47,19 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public final class Content {
 
     private static final Charset CHARSET = Charset.forName("UTF-8");
     private final List<Path> roots = new ArrayList<>(4);
+    private final List<Archive> archives = new ArrayList<>(4);
     private final WatcherThread watcherThread = new WatcherThread();
+    // 64 MB of reads in flight at most
+    private final Prefetcher prefetcher = new Prefetcher(64 * 1024 * 1024, 16);
 
     private Content() {
         // Register reload handler.
@@ -178,6 +186,8 @@ public final class Content {
      *  file.
      *
      *  First roots are checked first when resolving a path.
+     *  Mounted archives (.baf) are checked before all
+     *  directory roots.
      */
     static {
         content = new Content();
@@ -198,6 +208,11 @@ public final class Content {
     }
 
     public void addRoot(Path root) {
+        if (Files.isRegularFile(root) && root.toString().endsWith(ArchiveFile.EXTENSION)) {
+            mount(root);
+            return;
+        }
+
         try {
             Path absoluteRoot = root.toRealPath();
             roots.add(absoluteRoot);
@@ -208,6 +223,24 @@ public final class Content {
         }
     }
 
+    public void mount(Path archive) {
+        try {
+            archives.add(ArchiveFile.open(archive.toRealPath()));
+        } catch (IOException e) {
+            log.error("Can't mount archive " + archive.toString(), e);
+        }
+    }
+
+    // Returns first mounted archive containing specified file or null.
+    private Archive findArchive(String name) {
+        for (Archive archive : archives) {
+            if (archive.contains(name)) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
     // Starts watching content root for changes and reloads files them when they happen.
     private void watch(Path root) {
         if (!watcherThread.isAlive()) {
@@ -232,11 +265,33 @@ public final class Content {
         throw new IllegalArgumentException("File \"" + relative + "\" not found in any source root!");
     }
 
+    public String locate(String first, String... more) {
+        return locate(Paths.get(first, more));
+    }
+
+    /**
+     * Returns location of specified file (absolute resolved path or archive path and
+     * entry name). Used for logging and as tag of textures, so the reload handler finds
+     * textures loaded from content roots by their absolute path.
+     */
+    public String locate(Path relative) {
+        String name = ArchiveFile.normalize(relative);
+        Archive archive = findArchive(name);
+        if (archive != null) {
+            return archive.getPath() + "!" + name;
+        }
+        return resolve(relative).toAbsolutePath().toString();
+    }
+
     public boolean exists(String first, String... more) {
         return exists(Paths.get(first, more));
     }
 
     public boolean exists(Path relative) {
+        if (findArchive(ArchiveFile.normalize(relative)) != null) {
+            return true;
+        }
+
         Path resolved;
         for (Path root : roots) {
             resolved = root.resolve(relative);
@@ -252,6 +307,12 @@ public final class Content {
     }
 
     public InputStream openRead(Path relative) {
+        String name = ArchiveFile.normalize(relative);
+        Archive archive = findArchive(name);
+        if (archive != null) {
+            return new ByteBufferInputStream(archive.slice(name));
+        }
+
         try {
 
             FileChannel fch = FileChannel.open(resolve(relative), StandardOpenOption.READ);
@@ -272,6 +333,72 @@ public final class Content {
         }
     }
 
+    public ByteBuffer openBuffer(String first, String... more) {
+        return openBuffer(Paths.get(first, more));
+    }
+
+    /**
+     * Returns contents of specified file as ByteBuffer. Files from mounted archives
+     * are returned as zero-copy slices of the mapping.
+     */
+    public ByteBuffer openBuffer(Path relative) {
+        String name = ArchiveFile.normalize(relative);
+        Archive archive = findArchive(name);
+        if (archive != null) {
+            return archive.slice(name);
+        }
+
+        try (FileChannel fch = FileChannel.open(resolve(relative), StandardOpenOption.READ)) {
+            return fch.map(FileChannel.MapMode.READ_ONLY, 0, fch.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read file!", e);
+        }
+    }
+
+    public CompletableFuture<ByteBuffer> prefetch(String first, String... more) {
+        return prefetch(Paths.get(first, more));
+    }
+
+    /**
+     * Starts asynchronous read of specified file. Files from mounted archives are
+     * already mapped and are returned as completed futures.
+     *
+     * @param relative path relative to content roots (or absolute path)
+     * @return future completed with whole content of the file, which has to be returned
+     * by {@link #release(ByteBuffer)} when no longer needed
+     */
+    public CompletableFuture<ByteBuffer> prefetch(Path relative) {
+        String name = ArchiveFile.normalize(relative);
+        Archive archive = findArchive(name);
+        if (archive != null) {
+            return CompletableFuture.completedFuture(archive.slice(name));
+        }
+
+        try {
+            return prefetcher.read(resolve(relative));
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Returns buffer obtained from prefetch so further reads can start. Buffers of
+     * archive files are not counted and releasing them does nothing.
+     */
+    public void release(ByteBuffer buffer) {
+        prefetcher.release(buffer);
+    }
+
+    public List<CompletableFuture<ByteBuffer>> prefetch(List<Path> relatives) {
+        List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>(relatives.size());
+        for (Path relative : relatives) {
+            futures.add(prefetch(relative));
+        }
+        return futures;
+    }
+
     public OutputStream openWrite(String first, String... more) {
         return openWrite(Paths.get(first, more));
     }
@@ -290,6 +417,15 @@ public final class Content {
     }
 
     public byte[] readFile(Path relative) {
+        String name = ArchiveFile.normalize(relative);
+        Archive archive = findArchive(name);
+        if (archive != null) {
+            ByteBuffer slice = archive.slice(name);
+            byte[] data = new byte[slice.remaining()];
+            slice.get(data);
+            return data;
+        }
+
         try {
             return Files.readAllBytes(resolve(relative));
         } catch (IOException e) {
@@ -310,6 +446,10 @@ public final class Content {
     }
 
     public List<String> readLines(Path relative) {
+        if (findArchive(ArchiveFile.normalize(relative)) != null) {
+            return Arrays.asList(readText(relative).split("\\r?\\n"));
+        }
+
         try {
             return Files.readAllLines(resolve(relative), CHARSET);
         } catch (IOException e) {
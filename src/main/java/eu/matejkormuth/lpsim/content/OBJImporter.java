@@ -27,8 +27,7 @@
 package eu.matejkormuth.lpsim.content;
 
 import eu.matejkormuth.lpsim.Geometry;
-import eu.matejkormuth.math.vectors.Vector2f;
-import eu.matejkormuth.math.vectors.Vector3f;
+import gnu.trove.list.array.TFloatArrayList;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -53,27 +52,16 @@ public class OBJImporter {
         public static final String TOKEN_NORMAL = "vn";
         public static final String TOKEN_FACE = "f";
 
+        // packed floats, 3 per position and normal, 2 per texCoord
         @Getter
-        private List<Vector3f> positions = new ArrayList<>();
+        private TFloatArrayList positions = new TFloatArrayList();
         @Getter
-        private List<Vector3f> normals = new ArrayList<>();
+        private TFloatArrayList normals = new TFloatArrayList();
         @Getter
-        private List<Vector2f> texCoords = new ArrayList<>();
+        private TFloatArrayList texCoords = new TFloatArrayList();
         @Getter
         private List<OBJIndex> indices = new ArrayList<>();
 
-        public void addPosition(Vector3f position) {
-            positions.add(position);
-        }
-
-        public void addNormal(Vector3f normal) {
-            normals.add(normal);
-        }
-
-        public void addTexCoord(Vector2f texCoord) {
-            texCoords.add(texCoord);
-        }
-
         public void addIndex(OBJIndex index) {
             indices.add(index);
         }
@@ -82,13 +70,13 @@ public class OBJImporter {
             TokenStack lt = new TokenStack(line, OBJFile.SPACE); // line tokens
             switch (lt.next()) {
                 case OBJFile.TOKEN_POSITION:
-                    addPosition(lt.nextVector3f());
+                    lt.nextFloats(positions, 3);
                     break;
                 case OBJFile.TOKEN_NORMAL:
-                    addNormal(lt.nextVector3f());
+                    lt.nextFloats(normals, 3);
                     break;
                 case OBJFile.TOKEN_TEXCOORD:
-                    addTexCoord(lt.nextVector2f());
+                    lt.nextFloats(texCoords, 2);
                     break;
                 case OBJFile.TOKEN_FACE:
                     // TODO: Only 3-index (triangle) faces are supported.
@@ -143,16 +131,16 @@ public class OBJImporter {
         Geometry g = new Geometry();
         OBJFile file = parse(lines);
 
-        log.info("Parsed OBJFile: Positions: {}; Normals: {}; TexCoords: {}", file.getPositions().size(),
-                file.getNormals().size(), file.getTexCoords().size());
+        log.info("Parsed OBJFile: Positions: {}; Normals: {}; TexCoords: {}", file.getPositions().size() / 3,
+                file.getNormals().size() / 3, file.getTexCoords().size() / 2);
         log.info(" OBJIndex: Count: {}; Distinct: {}", file.getIndices().size(), file.getIndices().stream().distinct().count());
 
         int vertexCount = (int) file.getIndices().stream().distinct().count();
 
         int[] indices = new int[file.getIndices().size()];
-        Vector3f[] positions = new Vector3f[vertexCount];
-        Vector3f[] normals = new Vector3f[vertexCount];
-        Vector2f[] texCoords = new Vector2f[vertexCount];
+        float[] positions = new float[vertexCount * 3];
+        float[] normals = new float[vertexCount * 3];
+        float[] texCoords = new float[vertexCount * 2];
 
         // step 1
 
@@ -160,15 +148,15 @@ public class OBJImporter {
         TObjectIntHashMap<OBJIndex> newIndex = new TObjectIntHashMap<>(); // obj index -> new index
         file.getIndices().stream().distinct().forEach(objIndex -> {
             if (objIndex.positionIndex != OBJIndex.INDEX_UNDEFINED) {
-                positions[lastIndex[0]] = file.getPositions().get(objIndex.positionIndex - 1);  //objIndex.positionIndex is one-based
+                copy(file.getPositions(), objIndex.positionIndex - 1, positions, lastIndex[0], 3);  //objIndex.positionIndex is one-based
             }
 
             if (objIndex.normalIndex != OBJIndex.INDEX_UNDEFINED) {
-                normals[lastIndex[0]] = file.getNormals().get(objIndex.normalIndex - 1); //objIndex.normalIndex is one-based
+                copy(file.getNormals(), objIndex.normalIndex - 1, normals, lastIndex[0], 3); //objIndex.normalIndex is one-based
             }
 
             if (objIndex.texCoordIndex != OBJIndex.INDEX_UNDEFINED) {
-                texCoords[lastIndex[0]] = file.getTexCoords().get(objIndex.texCoordIndex - 1); //objIndex.texCoordIndex is one-based
+                copy(file.getTexCoords(), objIndex.texCoordIndex - 1, texCoords, lastIndex[0], 2); //objIndex.texCoordIndex is one-based
             }
 
             newIndex.put(objIndex, lastIndex[0]++);
@@ -179,14 +167,20 @@ public class OBJImporter {
         file.getIndices().stream().forEach(objIndex -> indices[indexIndex[0]++] = newIndex.get(objIndex)); // returned index is zero based
 
         // step 3
-        g.setPositions(positions);
-        g.setNormals(normals);
-        g.setTexCoords(texCoords);
+        g.setPositionData(positions);
+        g.setNormalData(normals);
+        g.setTexCoordData(texCoords);
         g.setIndices(indices);
 
         return g;
     }
 
+    private static void copy(TFloatArrayList src, int srcElement, float[] dest, int destElement, int components) {
+        for (int i = 0; i < components; i++) {
+            dest[destElement * components + i] = src.getQuick(srcElement * components + i);
+        }
+    }
+
     public static Geometry load(String file) {
         file = file.endsWith(".obj") ? file : file + ".obj"; // Fix file name.
         return import_(Content.getContent().readLines("models", file));
@@ -234,12 +228,10 @@ public class OBJImporter {
             return Integer.parseInt(peek(), 10);
         }
 
-        Vector3f nextVector3f() {
-            return new Vector3f(nextFloat(), nextFloat(), nextFloat());
-        }
-
-        Vector2f nextVector2f() {
-            return new Vector2f(nextFloat(), nextFloat());
+        void nextFloats(TFloatArrayList dest, int count) {
+            for (int i = 0; i < count; i++) {
+                dest.add(nextFloat());
+            }
         }
     }
 }
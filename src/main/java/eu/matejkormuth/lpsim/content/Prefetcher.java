@@ -0,0 +1,225 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim.content;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads whole files asynchronously with AsynchronousFileChannel so disk IO can overlap
+ * with decompression and GL upload. Amount of bytes and count of files being read at the
+ * same time are capped, requests over the caps wait in queue until earlier reads finish.
+ * Channels are opened only when read of their file starts, so enqueuing many files does
+ * not hold their handles.
+ * <p>
+ * Bytes of a file count against the cap until its buffer is returned by
+ * {@link #release(ByteBuffer)}, not only until the read completes, so buffers which wait
+ * for the consumer are capped too. Every buffer obtained from {@link #read(Path)} has to be
+ * released, otherwise it blocks the queue.
+ */
+@Slf4j
+public final class Prefetcher {
+
+    @Getter
+    private final long maxInFlightBytes;
+    @Getter
+    private long inFlightBytes = 0;
+    @Getter
+    private final int maxOpenFiles;
+    @Getter
+    private int openFiles = 0;
+
+    private final Queue<Request> queue = new ArrayDeque<>();
+    // buffers of completed reads which were not released yet
+    private final Set<ByteBuffer> unreleased = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param maxInFlightBytes maximum amount of bytes being read or waiting for release at the
+     *                         same time. Single file larger than this is still read when
+     *                         nothing else is.
+     * @param maxOpenFiles     maximum count of files being read at the same time
+     */
+    public Prefetcher(long maxInFlightBytes, int maxOpenFiles) {
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("maxOpenFiles must be at least 1!");
+        }
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * Enqueues read of specified file.
+     *
+     * @param file absolute path to file
+     * @return future completed with buffer containing whole file (position 0, limit file size),
+     * which has to be returned by {@link #release(ByteBuffer)} when no longer needed
+     */
+    public CompletableFuture<ByteBuffer> read(Path file) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        try {
+            long size = Files.size(file);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to prefetch!");
+            }
+
+            synchronized (this) {
+                queue.add(new Request(file, (int) size, future));
+            }
+            dispatch();
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Request request;
+            synchronized (this) {
+                request = queue.peek();
+                if (request == null || openFiles >= maxOpenFiles
+                        || (inFlightBytes > 0 && inFlightBytes + request.size > maxInFlightBytes)) {
+                    return;
+                }
+                queue.remove();
+                inFlightBytes += request.size;
+                openFiles++;
+            }
+            // open and read on worker thread, not on thread enqueuing files
+            ForkJoinPool.commonPool().execute(request::start);
+        }
+    }
+
+    /**
+     * Returns buffer obtained from {@link #read(Path)}, its bytes no longer count against
+     * the cap. Buffers not obtained from this prefetcher (or already released) are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        synchronized (this) {
+            if (!unreleased.remove(buffer)) {
+                return;
+            }
+            inFlightBytes -= buffer.capacity();
+        }
+        dispatch();
+    }
+
+    // Read ended, file is closed. Bytes of successful read stay counted until release.
+    private void finished(Request request, ByteBuffer result) {
+        synchronized (this) {
+            openFiles--;
+            if (result != null) {
+                unreleased.add(result);
+            } else {
+                inFlightBytes -= request.size;
+            }
+        }
+        dispatch();
+    }
+
+    private final class Request implements CompletionHandler<Integer, ByteBuffer> {
+        private final Path file;
+        private final int size;
+        private final CompletableFuture<ByteBuffer> future;
+        private AsynchronousFileChannel channel;
+
+        private Request(Path file, int size, CompletableFuture<ByteBuffer> future) {
+            this.file = file;
+            this.size = size;
+            this.future = future;
+        }
+
+        private void start() {
+            try {
+                channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+            } catch (IOException e) {
+                finished(this, null);
+                future.completeExceptionally(e);
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            if (size == 0) {
+                completed(0, buffer);
+            } else {
+                channel.read(buffer, 0, buffer, this);
+            }
+        }
+
+        @Override
+        public void completed(Integer read, ByteBuffer buffer) {
+            if (read >= 0 && buffer.hasRemaining()) {
+                // partial read, continue where we ended
+                channel.read(buffer, buffer.position(), buffer, this);
+                return;
+            }
+
+            close();
+            if (buffer.hasRemaining()) {
+                // end of file before the size it had when the read was enqueued
+                finished(this, null);
+                future.completeExceptionally(new IOException("File " + file + " is truncated, read "
+                        + buffer.position() + " of " + size + " bytes!"));
+                return;
+            }
+
+            buffer.flip();
+            finished(this, buffer);
+            future.complete(buffer);
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            close();
+            finished(this, null);
+            future.completeExceptionally(exc);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Can't close channel", e);
+            }
+        }
+    }
+}
@@ -28,9 +28,6 @@ package eu.matejkormuth.lpsim.content.bf;
 
 import eu.matejkormuth.lpsim.Geometry;
 import eu.matejkormuth.lpsim.content.Content;
-import eu.matejkormuth.lpsim.content.StreamUtils;
-import eu.matejkormuth.math.vectors.Vector2f;
-import eu.matejkormuth.math.vectors.Vector3f;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
@@ -142,58 +139,34 @@ public class BGF {
         }
 
         private static void readNormals(Geometry geometry, DataInputStream in) throws IOException {
-            int length = in.readInt();
-            Vector3f[] normals = new Vector3f[length];
-
-            for (int i = 0; i < length; i++) {
-                normals[i] = StreamUtils.readVector3f(in);
-            }
-
-            geometry.setNormals(normals);
+            geometry.setNormalData(readFloats(in, 3));
         }
 
         private static void readPositions(Geometry geometry, DataInputStream in) throws IOException {
-            int length = in.readInt();
-            Vector3f[] positions = new Vector3f[length];
-
-            for (int i = 0; i < length; i++) {
-                positions[i] = StreamUtils.readVector3f(in);
-            }
-
-            geometry.setPositions(positions);
+            geometry.setPositionData(readFloats(in, 3));
         }
 
         private static void readBitangents(Geometry geometry, DataInputStream in) throws IOException {
-            int length = in.readInt();
-            Vector3f[] bitangents = new Vector3f[length];
-
-            for (int i = 0; i < length; i++) {
-                bitangents[i] = StreamUtils.readVector3f(in);
-            }
-
-            geometry.setBitangents(bitangents);
+            geometry.setBitangentData(readFloats(in, 3));
         }
 
         private static void readTangents(Geometry geometry, DataInputStream in) throws IOException {
-            int length = in.readInt();
-            Vector3f[] tangets = new Vector3f[length];
-
-            for (int i = 0; i < length; i++) {
-                tangets[i] = StreamUtils.readVector3f(in);
-            }
-
-            geometry.setTangents(tangets);
+            geometry.setTangentData(readFloats(in, 3));
         }
 
         private static void readTexCoords(Geometry geometry, DataInputStream in) throws IOException {
+            geometry.setTexCoordData(readFloats(in, 2));
+        }
+
+        private static float[] readFloats(DataInputStream in, int components) throws IOException {
             int length = in.readInt();
-            Vector2f[] texCoords = new Vector2f[length];
+            float[] floats = new float[length * components];
 
-            for (int i = 0; i < length; i++) {
-                texCoords[i] = StreamUtils.readVector2f(in);
+            for (int i = 0; i < floats.length; i++) {
+                floats[i] = in.readFloat();
             }
 
-            geometry.setTexCoords(texCoords);
+            return floats;
         }
 
         private static void readIndices(Geometry geometry, DataInputStream in) throws IOException {
@@ -230,6 +203,14 @@ public class BGF {
             out.close();
         }
 
+        private static void writeFloats(DataOutputStream out, float[] floats, int components) throws IOException {
+            out.writeInt(floats.length / components);
+
+            for (int i = 0; i < floats.length; i++) {
+                out.writeFloat(floats[i]);
+            }
+        }
+
         private static void writeIndices(Geometry geometry, DataOutputStream out) throws IOException {
             int[] indices = geometry.getIndices();
 
@@ -242,7 +223,7 @@ public class BGF {
         }
 
         private static void writeTexCoords(Geometry geometry, DataOutputStream out) throws IOException {
-            Vector2f[] texCoords = geometry.getTexCoords();
+            float[] texCoords = geometry.getTexCoordData();
 
             if (texCoords == null) {
                 log.warn("Geometry {} has no texCoords! Nothing to write!", geometry);
@@ -250,20 +231,11 @@ public class BGF {
             }
 
             out.write(LIST_TEXCOORDS);
-            out.writeInt(texCoords.length);
-
-            Vector2f current = null;
-
-            for (int i = 0; i < texCoords.length; i++) {
-                current = texCoords[i];
-
-                out.writeFloat(current.getX());
-                out.writeFloat(current.getY());
-            }
+            writeFloats(out, texCoords, 2);
         }
 
         private static void writePositions(Geometry geometry, DataOutputStream out) throws IOException {
-            Vector3f[] positions = geometry.getPositions();
+            float[] positions = geometry.getPositionData();
 
             if (positions == null) {
                 log.warn("Geometry {} has no positions! Nothing to write!", geometry);
@@ -271,19 +243,11 @@ public class BGF {
             }
 
             out.write(LIST_POSITIONS);
-            out.writeInt(positions.length);
-
-            Vector3f current = null;
-
-            for (int i = 0; i < positions.length; i++) {
-                current = positions[i];
-
-                StreamUtils.write(out, current);
-            }
+            writeFloats(out, positions, 3);
         }
 
         private static void writeNormals(Geometry geometry, DataOutputStream out) throws IOException {
-            Vector3f[] normals = geometry.getNormals();
+            float[] normals = geometry.getNormalData();
 
             if (normals == null) {
                 log.warn("Geometry {} has no normals! Nothing to write!", geometry);
@@ -291,18 +255,11 @@ public class BGF {
             }
 
             out.write(LIST_NORMALS);
-            out.writeInt(normals.length);
-
-            Vector3f current = null;
-
-            for (int i = 0; i < normals.length; i++) {
-                current = normals[i];
-                StreamUtils.write(out, current);
-            }
+            writeFloats(out, normals, 3);
         }
 
         private static void writeTangents(Geometry geometry, DataOutputStream out) throws IOException {
-            Vector3f[] tangents = geometry.getTangents();
+            float[] tangents = geometry.getTangentData();
 
             if (tangents == null) {
                 log.warn("Geometry {} has no tangents! Nothing to write!", geometry);
@@ -310,18 +267,11 @@ public class BGF {
             }
 
             out.write(LIST_TANGENTS);
-            out.writeInt(tangents.length);
-
-            Vector3f current = null;
-
-            for (int i = 0; i < tangents.length; i++) {
-                current = tangents[i];
-                StreamUtils.write(out, current);
-            }
+            writeFloats(out, tangents, 3);
         }
 
         private static void writeBitangents(Geometry geometry, DataOutputStream out) throws IOException {
-            Vector3f[] bitangents = geometry.getBitangents();
+            float[] bitangents = geometry.getBitangentData();
 
             if (bitangents == null) {
                 log.warn("Geometry {} has no bitangents! Nothing to write!", geometry);
@@ -329,14 +279,7 @@ public class BGF {
             }
 
             out.write(LIST_BITANGENTS);
-            out.writeInt(bitangents.length);
-
-            Vector3f current = null;
-
-            for (int i = 0; i < bitangents.length; i++) {
-                current = bitangents[i];
-                StreamUtils.write(out, current);
-            }
+            writeFloats(out, bitangents, 3);
         }
     }
 }
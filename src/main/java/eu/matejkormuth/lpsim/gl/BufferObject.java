@@ -30,7 +30,9 @@ import eu.matejkormuth.lpsim.Disposable;
 import eu.matejkormuth.lpsim.ReferenceCounting;
 import eu.matejkormuth.lpsim.UsageHint;
 import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
@@ -62,6 +64,10 @@ public class BufferObject extends ReferenceCounting implements Disposable {
         GL15.glBufferData(target.getConstant(), bytes, usage.getConstant());
     }
 
+    public void uploadData(BufferObjectTarget target, ByteBuffer byteBuffer, UsageHint usage) {
+        GL15.glBufferData(target.getConstant(), byteBuffer, usage.getConstant());
+    }
+
     public void uploadData(BufferObjectTarget target, IntBuffer intBuffer, UsageHint usage) {
         GL15.glBufferData(target.getConstant(), intBuffer, usage.getConstant());
     }
@@ -74,6 +80,20 @@ public class BufferObject extends ReferenceCounting implements Disposable {
         GL15.glBufferSubData(target.getConstant(), offset, floatBuffer);
     }
 
+    public void uploadSubData(BufferObjectTarget target, long offset, ByteBuffer byteBuffer) {
+        GL15.glBufferSubData(target.getConstant(), offset, byteBuffer);
+    }
+
+    /**
+     * Copies bytes between buffers (or within one buffer if ranges do not overlap) on GPU.
+     * Uses copy targets, so currently bound VAO is not affected.
+     */
+    public static void copy(BufferObject source, long readOffset, BufferObject destination, long writeOffset, long bytes) {
+        source.bind(BufferObjectTarget.COPY_READ_BUFFER);
+        destination.bind(BufferObjectTarget.COPY_WRITE_BUFFER);
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, readOffset, writeOffset, bytes);
+    }
+
     @Override
     public void dispose() {
         GL15.glDeleteBuffers(vboId);
@@ -27,6 +27,7 @@
 package eu.matejkormuth.lpsim.gl;
 
 import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
 
 public enum BufferObjectTarget {
     /**
@@ -36,7 +37,15 @@ public enum BufferObjectTarget {
     /**
      * VBO
      */
-    ARRAY_BUFFER(GL15.GL_ARRAY_BUFFER);
+    ARRAY_BUFFER(GL15.GL_ARRAY_BUFFER),
+    /**
+     * Source of buffer copies, binding it does not change VAO state.
+     */
+    COPY_READ_BUFFER(GL31.GL_COPY_READ_BUFFER),
+    /**
+     * Destination of buffer copies and uploads, binding it does not change VAO state.
+     */
+    COPY_WRITE_BUFFER(GL31.GL_COPY_WRITE_BUFFER);
 
     private final int constant;
 
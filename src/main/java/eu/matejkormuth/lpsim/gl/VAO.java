@@ -79,6 +79,26 @@ public class VAO implements Disposable, Tagable {
         currentVao = 0;
     }
 
+    /**
+     * Returns id of currently bound VAO (0 if none is bound), so the binding can be restored
+     * by {@link #bind(int)}.
+     */
+    public static int getCurrentId() {
+        return Math.max(currentVao, 0);
+    }
+
+    /**
+     * Binds VAO with specified id (0 unbinds current VAO).
+     */
+    public static void bind(int vaoId) {
+        if (currentVao == vaoId) {
+            return;
+        }
+
+        GL30.glBindVertexArray(vaoId);
+        currentVao = vaoId;
+    }
+
     public boolean hasTag() {
         return tag != null;
     }
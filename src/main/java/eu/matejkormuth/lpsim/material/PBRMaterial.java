@@ -28,6 +28,7 @@ package eu.matejkormuth.lpsim.material;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
+import eu.matejkormuth.bf.archive.ByteBufferInputStream;
 import eu.matejkormuth.bf.compression.BFInputStream;
 import eu.matejkormuth.bf.image.ImageFile;
 import eu.matejkormuth.lpsim.Material;
@@ -40,15 +41,17 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.opengl.Util;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class PBRMaterial extends Material {
@@ -70,6 +73,10 @@ public class PBRMaterial extends Material {
 
     private static List<PBRMaterial> materials = new ArrayList<>();
 
+    // textures which are being read and wait for decoding and upload, by tag
+    private static final Map<String, PendingTexture> pending = new LinkedHashMap<>();
+    private static boolean batch = false;
+
     @Getter
     @Setter
     private boolean anisotropic;
@@ -79,14 +86,38 @@ public class PBRMaterial extends Material {
         return materials.get(i);
     }
 
+    /**
+     * Starts batch of material loading. Until {@link #endBatch()} materials loaded by fromJSON
+     * only create their textures and enqueue reads of texture files, so reads of all textures
+     * of a level are in flight before the first one is decoded. Textures must not be used
+     * before the batch ends.
+     */
+    public static void beginBatch() {
+        batch = true;
+    }
+
+    /**
+     * Decodes and uploads textures of all materials loaded since {@link #beginBatch()}
+     * in order in which they were enqueued.
+     */
+    public static void endBatch() {
+        batch = false;
+        loadPending();
+    }
+
     public static PBRMaterial fromJSON(String first, String... more) {
-        return fromJSON(Content.getContent().resolve(first, more));
+        return fromJSON(Paths.get(first, more));
     }
 
     public static PBRMaterial fromJSON(String folderName) {
-        return fromJSON(Content.getContent().resolve(folderName, "material.json"));
+        return fromJSON(Paths.get(folderName, "material.json"));
     }
 
+    /**
+     * Loads material from json file and its textures, both from content roots or mounted archives.
+     *
+     * @param file path to material json relative to content roots
+     */
     public static PBRMaterial fromJSON(Path file) {
         Path folder = file.getParent();
 
@@ -94,11 +125,12 @@ public class PBRMaterial extends Material {
 
         String json;
         try {
-            json = new String(Files.readAllBytes(file), Charset.forName("UTF-8"));
+            json = Content.getContent().readText(file);
         } catch (Exception e) {
             throw new RuntimeException("Can't read material file!", e);
         }
         JsonObject config = Json.parse(json).asObject();
+
         Util.checkGLError();
         // Albedo and diffuse are the same.
         if (config.getString("TYPE_ALBEDO", null) != null) { // Prefer ALBEDO over DIFFUSE!
@@ -116,6 +148,11 @@ public class PBRMaterial extends Material {
         emissive = resolveTex(config.getString("TYPE_EMISSIVE", null), folder, null);
 
         Util.checkGLError();
+        // Reads of all textures of this material are enqueued, decode them unless in batch.
+        if (!batch) {
+            loadPending();
+        }
+
         if (emissive != null) {
             return PBRMaterial.emissiveMaterial(albedo, roughness, metallic, normal, ambientOcclusion, emissive);
         }
@@ -127,6 +164,14 @@ public class PBRMaterial extends Material {
         }
     }
 
+    private static Path texturePath(String file, Path folder) {
+        // Fix file name.
+        file = file.replace("png", "bif").replace("jpg", "bif")
+                .replace("jpeg", "bif").replace("tga", "bif").replace("bmp", "bif");
+
+        return folder == null ? Paths.get(file) : folder.resolve(file);
+    }
+
     private static Texture2D resolveTex(String file, Path folder, Texture2D def) {
         final String BLACK_ONLY = "$BLACK$";
         final String WHITE_ONLY = "$WHITE$";
@@ -142,28 +187,63 @@ public class PBRMaterial extends Material {
         if (file.equals(FLAT_NORMAL))
             return Texture2D.Util.FLAT_NORMAL;
 
-        // Fix file name.
-        file = file.replace("png", "bif").replace("jpg", "bif")
-                .replace("jpeg", "bif").replace("tga", "bif").replace("bmp", "bif");
-
-        Path p = folder.resolve(Paths.get(file)).toAbsolutePath();
-        String tag = p.toString();
-        String label = tag.substring(tag.lastIndexOf('\\') + 1);
+        Path p = texturePath(file, folder);
+        String tag = Content.getContent().locate(p);
+        String label = p.getFileName().toString();
 
-        // Check already loaded.
+        // Check already loaded or being loaded.
         if (!Texture2D.find(tag).isEmpty()) {
             return Texture2D.find(tag).get(0);
         }
+        if (pending.containsKey(tag)) {
+            return pending.get(tag).texture;
+        }
 
-        // Load it.
-        Texture2D tex = Texture2D.create();
+        // Start reading it, it is decoded later by loadPending().
+        PendingTexture texture = new PendingTexture(Texture2D.create(), label, Content.getContent().prefetch(p));
+        pending.put(tag, texture);
+        return texture.texture;
+    }
+
+    private static void loadPending() {
         try {
-            log.info("Loading " + file + ".bif");
-            ImageFile.loadIntoTexture(new BFInputStream(new BufferedInputStream(new FileInputStream(p.toFile()))), tex);
-            tex.setTag(tag, label);
-            return tex;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            Iterator<Map.Entry<String, PendingTexture>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, PendingTexture> entry = iterator.next();
+                PendingTexture texture = entry.getValue();
+                log.info("Loading " + entry.getKey());
+                ByteBuffer data;
+                try {
+                    data = texture.data.join();
+                    ImageFile.loadIntoTexture(new BFInputStream(new ByteBufferInputStream(data)), texture.texture);
+                } catch (IOException | CompletionException e) {
+                    throw new RuntimeException("Can't load texture " + entry.getKey() + "!", e);
+                }
+                // tag after upload, texture object does not exist before first bind
+                texture.texture.setTag(entry.getKey(), texture.label);
+
+                // drop file as soon as it is uploaded so reads waiting for memory can start
+                iterator.remove();
+                Content.getContent().release(data);
+            }
+        } finally {
+            // after failure, release reads of textures which will not be loaded
+            for (PendingTexture texture : pending.values()) {
+                texture.data.thenAccept(Content.getContent()::release);
+            }
+            pending.clear();
+        }
+    }
+
+    private static final class PendingTexture {
+        private final Texture2D texture;
+        private final String label;
+        private final CompletableFuture<ByteBuffer> data;
+
+        private PendingTexture(Texture2D texture, String label, CompletableFuture<ByteBuffer> data) {
+            this.texture = texture;
+            this.label = label;
+            this.data = data;
         }
     }
 
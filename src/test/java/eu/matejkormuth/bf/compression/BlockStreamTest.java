@@ -0,0 +1,203 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BlockStreamTest {
+
+    // repetitive, well compressible data
+    private static byte[] compressible(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((i / 7) % 32);
+        }
+        return data;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(3).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] blocks(Codec codec, byte[] data, boolean parallel) throws Exception {
+        boolean wasParallel = CompressionUtil.isParallelCompression();
+        CompressionUtil.setParallelCompression(parallel);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BlockOutputStream blocks = new BlockOutputStream(out, codec, CompressionUtil.MIN_BLOCK_SIZE, data.length);
+            // odd sized writes, so blocks are filled from several writes
+            for (int offset = 0; offset < data.length; offset += 1000) {
+                blocks.write(data, offset, Math.min(1000, data.length - offset));
+            }
+            blocks.finish();
+            return out.toByteArray();
+        } finally {
+            CompressionUtil.setParallelCompression(wasParallel);
+        }
+    }
+
+    @Test
+    public void testBlocksRoundTrip() throws Exception {
+        // three full blocks and partial one
+        byte[] data = compressible(3 * CompressionUtil.MIN_BLOCK_SIZE + 12345);
+        for (Codec codec : CodecRegistry.all()) {
+            for (boolean parallel : new boolean[]{false, true}) {
+                byte[] framed = blocks(codec, data, parallel);
+
+                BlockInputStream in = new BlockInputStream(new DataInputStream(new ByteArrayInputStream(framed)), BlockFraming.PREFIXED);
+                assertEquals(data.length, in.getUncompressedLength());
+                byte[] result = new byte[data.length];
+                new DataInputStream(in).readFully(result);
+                assertArrayEquals(data, result);
+                assertEquals(-1, in.read());
+
+                // whole blocks decompressed straight to buffer
+                in = new BlockInputStream(new DataInputStream(new ByteArrayInputStream(framed)), BlockFraming.PREFIXED);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                in.readFully(buffer);
+                buffer.flip();
+                buffer.get(result);
+                assertArrayEquals(data, result);
+
+                // and straight from source buffer
+                buffer.clear();
+                new BFBufferInput(ByteBuffer.wrap(framed)).readBlocks(buffer);
+                buffer.get(result);
+                assertArrayEquals(data, result);
+            }
+        }
+    }
+
+    @Test
+    public void testBlocksParallelSameAsSerial() throws Exception {
+        byte[] data = compressible(5 * CompressionUtil.MIN_BLOCK_SIZE + 1);
+        assertArrayEquals(blocks(CodecRegistry.DEFLATE, data, false), blocks(CodecRegistry.DEFLATE, data, true));
+    }
+
+    @Test
+    public void testIncompressibleBlocksStoredRaw() throws Exception {
+        byte[] data = random(2 * CompressionUtil.MIN_BLOCK_SIZE);
+        byte[] framed = blocks(CodecRegistry.DEFLATE, data, false);
+
+        // length and block size (ints), then codec id and length (byte, int) before each block
+        ByteBuffer frame = ByteBuffer.wrap(framed);
+        assertEquals(data.length, frame.getInt());
+        assertEquals(CompressionUtil.MIN_BLOCK_SIZE, frame.getInt());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(CodecRegistry.NONE.getId(), frame.get());
+            assertEquals(CompressionUtil.MIN_BLOCK_SIZE, frame.getInt());
+            frame.position(frame.position() + CompressionUtil.MIN_BLOCK_SIZE);
+        }
+        assertEquals(0, frame.remaining());
+    }
+
+    @Test
+    public void testBlocksWrittenBeforeFinish() throws Exception {
+        boolean wasParallel = CompressionUtil.isParallelCompression();
+        CompressionUtil.setParallelCompression(false);
+        try {
+            byte[] data = random(3 * CompressionUtil.MIN_BLOCK_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BlockOutputStream blocks = new BlockOutputStream(out, CodecRegistry.LZ4_HC, CompressionUtil.MIN_BLOCK_SIZE, data.length);
+            blocks.write(data, 0, 2 * CompressionUtil.MIN_BLOCK_SIZE);
+            // header and two raw blocks with their codec ids and lengths
+            assertEquals(2 * Integer.BYTES + 2 * (1 + Integer.BYTES + CompressionUtil.MIN_BLOCK_SIZE), out.size());
+            blocks.write(data, 2 * CompressionUtil.MIN_BLOCK_SIZE, CompressionUtil.MIN_BLOCK_SIZE);
+            blocks.finish();
+            assertEquals(2 * Integer.BYTES + 3 * (1 + Integer.BYTES + CompressionUtil.MIN_BLOCK_SIZE), out.size());
+        } finally {
+            CompressionUtil.setParallelCompression(wasParallel);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDeclaredLengthMismatch() throws Exception {
+        BlockOutputStream blocks = new BlockOutputStream(new ByteArrayOutputStream(), CodecRegistry.LZ4_HC, CompressionUtil.MIN_BLOCK_SIZE, 100);
+        blocks.write(new byte[99]);
+        blocks.finish();
+    }
+
+    @Test
+    public void testBlockTable() throws Exception {
+        // older files have block table (with or without codec ids) before blocks
+        byte[] data = compressible(2 * CompressionUtil.MIN_BLOCK_SIZE + 100);
+        for (BlockFraming framing : new BlockFraming[]{BlockFraming.TABLE_WITHOUT_CODECS, BlockFraming.TABLE}) {
+            Codec codec = CodecRegistry.LZ4_HC;
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(data.length);
+            out.writeInt(CompressionUtil.MIN_BLOCK_SIZE);
+            out.writeInt(3);
+            for (int offset = 0; offset < data.length; offset += CompressionUtil.MIN_BLOCK_SIZE) {
+                int length = Math.min(CompressionUtil.MIN_BLOCK_SIZE, data.length - offset);
+                byte[] compressed = new byte[codec.maxCompressedLength(length)];
+                int compressedLength = codec.compress(data, offset, length, compressed, 0, compressed.length);
+                blocks.write(compressed, 0, compressedLength);
+                if (framing == BlockFraming.TABLE) {
+                    out.writeByte(codec.getId());
+                }
+                out.writeInt(compressedLength);
+            }
+            blocks.writeTo(out);
+            byte[] framed = bytes.toByteArray();
+
+            byte[] result = new byte[data.length];
+            new DataInputStream(new BlockInputStream(new DataInputStream(new ByteArrayInputStream(framed)), framing)).readFully(result);
+            assertArrayEquals(data, result);
+
+            ByteBuffer buffer = ByteBuffer.allocate(data.length);
+            new BFBufferInput(ByteBuffer.wrap(framed)).readBlocks(buffer, framing);
+            assertArrayEquals(data, buffer.array());
+        }
+    }
+
+    @Test
+    public void testEmptyBlocks() throws Exception {
+        byte[] framed = blocks(CodecRegistry.LZ4_HC, new byte[0], false);
+        BlockInputStream in = new BlockInputStream(new DataInputStream(new ByteArrayInputStream(framed)), BlockFraming.PREFIXED);
+        assertEquals(0, in.getUncompressedLength());
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidBlockSize() throws Exception {
+        new BlockOutputStream(new ByteArrayOutputStream(), CodecRegistry.LZ4_HC, CompressionUtil.MAX_BLOCK_SIZE + 1, 0);
+    }
+}
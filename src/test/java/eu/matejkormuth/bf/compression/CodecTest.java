@@ -0,0 +1,150 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.compression;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CodecTest {
+
+    // repetitive, well compressible data
+    private static byte[] compressible(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((i / 7) % 32);
+        }
+        return data;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(3).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testRegistry() throws Exception {
+        for (Codec codec : CodecRegistry.all()) {
+            assertEquals(codec, CodecRegistry.get(codec.getId()));
+            assertEquals(codec, CodecRegistry.get(codec.getName().toUpperCase()));
+        }
+        assertEquals(4, CodecRegistry.all().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownCodec() throws Exception {
+        CodecRegistry.get(200);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (Codec codec : CodecRegistry.all()) {
+            for (byte[] data : new byte[][]{compressible(100000), random(100000)}) {
+                // offsets in both arrays
+                byte[] compressed = new byte[codec.maxCompressedLength(data.length) + 5];
+                int length = codec.compress(data, 0, data.length, compressed, 5, compressed.length - 5);
+                assertTrue(length <= codec.maxCompressedLength(data.length));
+
+                byte[] decompressed = new byte[data.length + 3];
+                codec.decompress(compressed, 5, length, decompressed, 3, data.length);
+                assertArrayEquals(data, Arrays.copyOfRange(decompressed, 3, decompressed.length));
+
+                // direct buffers, positions must not change
+                ByteBuffer src = ByteBuffer.allocateDirect(length + 5);
+                src.position(5);
+                src.put(compressed, 5, length);
+                src.position(2);
+                ByteBuffer dest = ByteBuffer.allocateDirect(data.length + 3);
+                codec.decompress(src, 5, length, dest, 3, data.length);
+                assertEquals(2, src.position());
+                assertEquals(0, dest.position());
+
+                byte[] result = new byte[data.length];
+                dest.position(3);
+                dest.get(result);
+                assertArrayEquals(data, result);
+            }
+        }
+    }
+
+    private static ByteBuffer buffer(boolean direct, int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Test
+    public void testDeflateDirectBuffers() throws Exception {
+        // larger than scratch arrays, so both input and output are streamed in several chunks
+        Codec codec = CodecRegistry.DEFLATE;
+        for (byte[] data : new byte[][]{compressible(CompressionUtil.MAX_BLOCK_SIZE), random(CompressionUtil.MAX_BLOCK_SIZE)}) {
+            byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+            int length = codec.compress(data, 0, data.length, compressed, 0, compressed.length);
+
+            for (boolean directSrc : new boolean[]{false, true}) {
+                for (boolean directDest : new boolean[]{false, true}) {
+                    ByteBuffer src = buffer(directSrc, length + 7);
+                    src.position(7);
+                    src.put(compressed, 0, length);
+                    ByteBuffer dest = buffer(directDest, data.length + 11);
+                    codec.decompress(src, 7, length, dest, 11, data.length);
+
+                    byte[] result = new byte[data.length];
+                    dest.position(11);
+                    dest.get(result);
+                    assertArrayEquals(data, result);
+                }
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDeflateTruncatedDirect() throws Exception {
+        Codec codec = CodecRegistry.DEFLATE;
+        byte[] data = random(100000);
+        byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+        int length = codec.compress(data, 0, data.length, compressed, 0, compressed.length);
+
+        ByteBuffer src = ByteBuffer.allocateDirect(length / 2);
+        src.put(compressed, 0, length / 2);
+        codec.decompress(src, 0, length / 2, ByteBuffer.allocateDirect(data.length), 0, data.length);
+    }
+
+    @Test
+    public void testCompressionRatio() throws Exception {
+        byte[] data = compressible(100000);
+        for (Codec codec : new Codec[]{CodecRegistry.LZ4_FAST, CodecRegistry.LZ4_HC, CodecRegistry.DEFLATE}) {
+            byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+            assertTrue(codec.getName(), codec.compress(data, 0, data.length, compressed, 0, compressed.length) < data.length / 4);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.bf.BFUtils;
+import eu.matejkormuth.bf.compression.BFBufferInput;
+import eu.matejkormuth.bf.compression.BFInputStream;
+import eu.matejkormuth.bf.compression.BFOutputStream;
+import eu.matejkormuth.bf.compression.Codec;
+import eu.matejkormuth.bf.compression.CodecRegistry;
+import eu.matejkormuth.bf.compression.CompressionUtil;
+import eu.matejkormuth.lpsim.Bounds;
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.InterleavedVertexLayout;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import eu.matejkormuth.lpsim.Meshlet;
+import eu.matejkormuth.lpsim.VertexData;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeometryFileTest {
+
+    // section types of the file format
+    private static final byte LIST_POSITIONS = 1;
+    private static final byte LIST_NORMALS = 2;
+    private static final byte LIST_TEXCOORDS = 3;
+    private static final byte LIST_INDICES = 6;
+    private static final byte LIST_LOD = 9;
+    private static final byte LIST_MESHLETS = 10;
+
+    /**
+     * Plane of 100 x 100 vertices with noisy heights, large enough for sections of more than one block.
+     */
+    private static Geometry geometry() {
+        Random random = new Random(12);
+        Geometry geometry = Geometry.plane(100);
+        float[] positions = geometry.getPositionData();
+        float[] texCoords = new float[geometry.getVertexCount() * 2];
+        for (int v = 0; v < geometry.getVertexCount(); v++) {
+            positions[v * 3 + 1] = random.nextFloat();
+            texCoords[v * 2] = positions[v * 3] / 100;
+            texCoords[v * 2 + 1] = positions[v * 3 + 2] / 100;
+        }
+        geometry.setTexCoordData(texCoords);
+        geometry.computeNormals();
+        MeshletBuilder.build(geometry);
+        geometry.setLods(new LevelOfDetail[]{
+                new LevelOfDetail(Arrays.copyOf(geometry.getIndices(), geometry.getIndices().length / 2), 0.25f)
+        });
+        return geometry;
+    }
+
+    @Test
+    public void testAllVersions() throws Exception {
+        Geometry geometry = geometry();
+        int blockSize = CompressionUtil.getBlockSize();
+        CompressionUtil.setBlockSize(CompressionUtil.MIN_BLOCK_SIZE);
+        try {
+            for (int version = 1; version <= GeometryFile.VERSION; version++) {
+                byte[] file = write(geometry, version);
+                assertEquals(version, file[3]);
+                assertLoaded(geometry, version, GeometryFile.loadToGeometry(new BFInputStream(new ByteArrayInputStream(file)), new Geometry()));
+                assertLoaded(geometry, version, GeometryFile.loadToGeometry(new BFBufferInput(ByteBuffer.wrap(file)), new Geometry()));
+            }
+        } finally {
+            CompressionUtil.setBlockSize(blockSize);
+        }
+    }
+
+    private static void assertLoaded(Geometry expected, int version, Geometry loaded) {
+        assertArrayEquals(expected.getPositionData(), loaded.getPositionData(), 0);
+        assertArrayEquals(expected.getNormalData(), loaded.getNormalData(), 0);
+        assertArrayEquals(expected.getTexCoordData(), loaded.getTexCoordData(), 0);
+        assertArrayEquals(expected.getIndices(), loaded.getIndices());
+
+        assertEquals(version >= 8, loaded.hasLods());
+        if (version >= 8) {
+            assertArrayEquals(expected.getLods()[0].getIndices(), loaded.getLods()[0].getIndices());
+            assertEquals(expected.getLods()[0].getError(), loaded.getLods()[0].getError(), 0);
+        }
+
+        assertEquals(version >= 9, loaded.hasMeshlets());
+        if (version >= 9) {
+            assertEquals(expected.getMeshlets().length, loaded.getMeshlets().length);
+            Meshlet meshlet = expected.getMeshlets()[1];
+            assertEquals(meshlet.getFirstIndex(), loaded.getMeshlets()[1].getFirstIndex());
+            assertEquals(meshlet.getIndexCount(), loaded.getMeshlets()[1].getIndexCount());
+            assertEquals(meshlet.getRadius(), loaded.getMeshlets()[1].getRadius(), 0);
+            assertEquals(meshlet.getConeCutoff(), loaded.getMeshlets()[1].getConeCutoff(), 0);
+        }
+
+        if (version < 11) {
+            assertNull(loaded.getBounds());
+        } else {
+            assertEquals(99, loaded.getBounds().getMaxX(), 0);
+            assertEquals(0, loaded.getBounds().getMinZ(), 0);
+        }
+    }
+
+    @Test
+    public void testSelectiveLoading() throws Exception {
+        Geometry geometry = geometry();
+        byte[] file = write(geometry, GeometryFile.VERSION);
+
+        Geometry loaded = GeometryFile.loadToGeometry(new BFBufferInput(ByteBuffer.wrap(file)), new Geometry(),
+                GeometryFile.POSITIONS | GeometryFile.INDICES);
+        assertArrayEquals(geometry.getPositionData(), loaded.getPositionData(), 0);
+        assertArrayEquals(geometry.getIndices(), loaded.getIndices());
+        assertFalse(loaded.hasNormals());
+        assertFalse(loaded.hasTexCoords());
+        assertFalse(loaded.hasLods());
+    }
+
+    @Test
+    public void testLayoutRoundTrip() throws Exception {
+        Geometry geometry = geometry();
+        geometry.computeTangents(false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GeometryFile.save(geometry, new BFOutputStream(bytes), InterleavedVertexLayout.STANDARD);
+        byte[] file = bytes.toByteArray();
+
+        assertTrue(InterleavedVertexLayout.STANDARD.matches(GeometryFile.loadLayout(new BFBufferInput(ByteBuffer.wrap(file)))));
+
+        VertexData expected = VertexData.of(geometry, InterleavedVertexLayout.STANDARD);
+        VertexData loaded = GeometryFile.loadVertexData(new BFInputStream(new ByteArrayInputStream(file)), InterleavedVertexLayout.STANDARD);
+        assertEquals(expected.getVertices(), loaded.getVertices());
+        assertEquals(expected.getIndices(), loaded.getIndices());
+        assertEquals(expected.getIndexType(), loaded.getIndexType());
+        assertArrayEquals(expected.getLodOffsets(), loaded.getLodOffsets());
+        assertArrayEquals(expected.getLodErrors(), loaded.getLodErrors(), 0);
+        assertEquals(geometry.getMeshlets().length, loaded.getMeshlets().length);
+
+        // saving loaded buffers again gives the same file
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        GeometryFile.save(loaded, new BFOutputStream(again));
+        assertArrayEquals(file, again.toByteArray());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNewerVersion() throws Exception {
+        byte[] file = write(geometry(), GeometryFile.VERSION);
+        file[3]++;
+        GeometryFile.loadToGeometry(new BFBufferInput(ByteBuffer.wrap(file)), new Geometry());
+    }
+
+    /**
+     * Writes geometry as file of specified version. Current version is written by GeometryFile,
+     * older versions by this method, following the version history in GeometryFile.
+     */
+    private static byte[] write(Geometry geometry, int version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (version == GeometryFile.VERSION) {
+            GeometryFile.save(geometry, new BFOutputStream(bytes));
+            return bytes.toByteArray();
+        }
+
+        DataOutputStream out = new DataOutputStream(bytes);
+        BFUtils.writeHeader(out);
+        out.writeByte(GeometryFile.BF_TYPE);
+        out.writeByte(version);
+        if (version >= 11) {
+            Bounds bounds = Bounds.of(geometry.getPositionData());
+            for (float value : new float[]{bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(), bounds.getMaxX(),
+                    bounds.getMaxY(), bounds.getMaxZ(), bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ(),
+                    bounds.getRadius()}) {
+                out.writeFloat(value);
+            }
+        }
+
+        if (version < 5) {
+            byte[] payload = version < 4 ? unfiltered(geometry) : filtered(geometry);
+            if (version == 1) {
+                // whole payload compressed with LZ4
+                byte[] compressed = compress(CodecRegistry.LZ4_HC, payload);
+                out.writeInt(payload.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+            } else if (version == 2) {
+                // LZ4 blocks without codec ids in block table
+                out.write(tableFramed(CodecRegistry.LZ4_HC, payload, false));
+            } else {
+                out.write(tableFramed(CodecRegistry.DEFLATE, payload, true));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        // table of contents, each section compressed whole (block framed with block table since version 12)
+        List<byte[]> sections = new ArrayList<>();
+        List<byte[]> types = new ArrayList<>();
+        int vertexFilter = GeometryFilter.SHUFFLE;
+        int indexFilter = GeometryFilter.DELTA | GeometryFilter.SHUFFLE;
+        sections.add(GeometryFilter.encodeFloats(geometry.getPositionData(), 3, vertexFilter));
+        types.add(new byte[]{LIST_POSITIONS, (byte) vertexFilter});
+        sections.add(GeometryFilter.encodeFloats(geometry.getNormalData(), 3, vertexFilter));
+        types.add(new byte[]{LIST_NORMALS, (byte) vertexFilter});
+        sections.add(GeometryFilter.encodeFloats(geometry.getTexCoordData(), 2, vertexFilter));
+        types.add(new byte[]{LIST_TEXCOORDS, (byte) vertexFilter});
+        sections.add(GeometryFilter.encodeInts(geometry.getIndices(), indexFilter));
+        types.add(new byte[]{LIST_INDICES, (byte) indexFilter});
+        if (version >= 8) {
+            LevelOfDetail lod = geometry.getLods()[0];
+            ByteBuffer data = ByteBuffer.allocate(Float.BYTES + lod.getIndices().length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            data.putFloat(lod.getError());
+            data.asIntBuffer().put(lod.getIndices());
+            sections.add(data.array());
+            types.add(new byte[]{LIST_LOD, GeometryFilter.NONE});
+        }
+        if (version >= 9) {
+            ByteBuffer data = ByteBuffer.allocate(geometry.getMeshlets().length * 40).order(ByteOrder.LITTLE_ENDIAN);
+            for (Meshlet meshlet : geometry.getMeshlets()) {
+                data.putInt(meshlet.getFirstIndex()).putInt(meshlet.getIndexCount())
+                        .putFloat(meshlet.getCenterX()).putFloat(meshlet.getCenterY()).putFloat(meshlet.getCenterZ())
+                        .putFloat(meshlet.getRadius())
+                        .putFloat(meshlet.getConeX()).putFloat(meshlet.getConeY()).putFloat(meshlet.getConeZ())
+                        .putFloat(meshlet.getConeCutoff());
+            }
+            sections.add(data.array());
+            types.add(new byte[]{LIST_MESHLETS, GeometryFilter.NONE});
+        }
+
+        List<byte[]> compressed = new ArrayList<>();
+        out.writeByte(sections.size());
+        int offset = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            compressed.add(version >= 12 ? tableFramed(CodecRegistry.DEFLATE, sections.get(i), true)
+                    : compress(CodecRegistry.DEFLATE, sections.get(i)));
+            out.writeByte(types.get(i)[0]);
+            out.writeByte(types.get(i)[1]);
+            out.writeByte(CodecRegistry.DEFLATE.getId());
+            out.writeInt(offset);
+            out.writeInt(compressed.get(i).length);
+            out.writeInt(sections.get(i).length);
+            offset += compressed.get(i).length;
+        }
+        if (version >= 6) {
+            out.writeByte(0); // no vertex layout
+        }
+        if (version >= 7) {
+            out.writeByte(Integer.BYTES);
+        }
+        for (byte[] section : compressed) {
+            out.write(section);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // versions 1 to 3: type, count and floats of each attribute, indices last
+    private static byte[] unfiltered(Geometry geometry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeFloats(out, LIST_POSITIONS, geometry.getPositionData(), 3);
+        writeFloats(out, LIST_NORMALS, geometry.getNormalData(), 3);
+        writeFloats(out, LIST_TEXCOORDS, geometry.getTexCoordData(), 2);
+        out.writeByte(LIST_INDICES);
+        out.writeInt(geometry.getIndices().length);
+        for (int index : geometry.getIndices()) {
+            out.writeInt(index);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeFloats(DataOutputStream out, byte type, float[] data, int components) throws IOException {
+        out.writeByte(type);
+        out.writeInt(data.length / components);
+        for (float value : data) {
+            out.writeFloat(value);
+        }
+    }
+
+    // version 4: type, filter, element count and filtered data of each attribute, indices last
+    private static byte[] filtered(Geometry geometry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int filter = GeometryFilter.SHUFFLE;
+        writeFiltered(out, LIST_POSITIONS, filter, geometry.getVertexCount(), GeometryFilter.encodeFloats(geometry.getPositionData(), 3, filter));
+        writeFiltered(out, LIST_NORMALS, filter, geometry.getVertexCount(), GeometryFilter.encodeFloats(geometry.getNormalData(), 3, filter));
+        writeFiltered(out, LIST_TEXCOORDS, filter, geometry.getVertexCount(), GeometryFilter.encodeFloats(geometry.getTexCoordData(), 2, filter));
+        filter = GeometryFilter.DELTA | GeometryFilter.SHUFFLE;
+        writeFiltered(out, LIST_INDICES, filter, geometry.getIndices().length, GeometryFilter.encodeInts(geometry.getIndices(), filter));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeFiltered(DataOutputStream out, byte type, int filter, int count, byte[] data) throws IOException {
+        out.writeByte(type);
+        out.writeByte(filter);
+        out.writeInt(count);
+        out.write(data);
+    }
+
+    // blocks with block table before them, with or without codec ids (versions 2, 3, 4 and 12)
+    private static byte[] tableFramed(Codec codec, byte[] payload, boolean codecIds) throws IOException {
+        int blockSize = CompressionUtil.MIN_BLOCK_SIZE;
+        List<byte[]> blocks = new ArrayList<>();
+        for (int offset = 0; offset < payload.length; offset += blockSize) {
+            blocks.add(compress(codec, Arrays.copyOfRange(payload, offset, Math.min(payload.length, offset + blockSize))));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeInt(blockSize);
+        out.writeInt(blocks.size());
+        for (byte[] block : blocks) {
+            if (codecIds) {
+                out.writeByte(codec.getId());
+            }
+            out.writeInt(block.length);
+        }
+        for (byte[] block : blocks) {
+            out.write(block);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] compress(Codec codec, byte[] data) {
+        byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+        return Arrays.copyOf(compressed, codec.compress(data, 0, data.length, compressed, 0, compressed.length));
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeometryOptimizerTest {
+
+    private static int[] shuffledTriangles(int[] indices) {
+        List<Integer> triangles = new ArrayList<>();
+        for (int t = 0; t < indices.length / 3; t++) {
+            triangles.add(t);
+        }
+        Collections.shuffle(triangles, new Random(19));
+
+        int[] result = new int[indices.length];
+        for (int t = 0; t < triangles.size(); t++) {
+            System.arraycopy(indices, triangles.get(t) * 3, result, t * 3, 3);
+        }
+        return result;
+    }
+
+    // triangles as strings of corner positions, rotated to start with the smallest corner, so
+    // the same triangles compare equal regardless of vertex order, rotation and triangle order
+    private static List<String> triangles(int[] indices, float[] positions) {
+        List<String> triangles = new ArrayList<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            String[] corners = new String[3];
+            int first = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[i + k];
+                corners[k] = positions[v * 3] + "," + positions[v * 3 + 1] + "," + positions[v * 3 + 2] + ";";
+                if (corners[k].compareTo(corners[first]) < 0) {
+                    first = k;
+                }
+            }
+            triangles.add(corners[first] + corners[(first + 1) % 3] + corners[(first + 2) % 3]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    @Test
+    public void testAnalyzeVertexCache() throws Exception {
+        GeometryOptimizer.CacheStatistics statistics = GeometryOptimizer.analyzeVertexCache(new int[]{0, 1, 2, 2, 1, 3}, 4, 16);
+        assertEquals(2, statistics.acmr, 0);
+        assertEquals(1, statistics.atvr, 0);
+
+        // cache of size 3 evicts vertex 0 before it is used again
+        statistics = GeometryOptimizer.analyzeVertexCache(new int[]{0, 1, 2, 3, 4, 5, 0, 1, 2}, 6, 3);
+        assertEquals(3, statistics.acmr, 0);
+        assertEquals(1.5f, statistics.atvr, 0);
+    }
+
+    @Test
+    public void testVertexCacheImprovesAcmr() throws Exception {
+        Geometry geometry = Geometry.plane(50);
+        int[] indices = shuffledTriangles(geometry.getIndices());
+        int vertexCount = geometry.getVertexCount();
+
+        float before = GeometryOptimizer.analyzeVertexCache(indices, vertexCount, GeometryOptimizer.CACHE_SIZE).acmr;
+        int[] optimized = GeometryOptimizer.optimizeVertexCache(indices, vertexCount, GeometryOptimizer.CACHE_SIZE, null);
+        float after = GeometryOptimizer.analyzeVertexCache(optimized, vertexCount, GeometryOptimizer.CACHE_SIZE).acmr;
+
+        assertTrue(before > 2);
+        assertTrue("ACMR " + after, after < 0.9f);
+        assertEquals(triangles(indices, geometry.getPositionData()), triangles(optimized, geometry.getPositionData()));
+    }
+
+    @Test
+    public void testOptimizeKeepsTriangles() throws Exception {
+        Geometry geometry = Geometry.plane(30);
+        geometry.setIndices(shuffledTriangles(geometry.getIndices()));
+        List<String> expected = triangles(geometry.getIndices(), geometry.getPositionData());
+
+        GeometryOptimizer.optimize(geometry);
+        assertEquals(expected, triangles(geometry.getIndices(), geometry.getPositionData()));
+
+        // vertices are stored in order of first use
+        int next = 0;
+        for (int index : geometry.getIndices()) {
+            assertTrue(index <= next);
+            if (index == next) {
+                next++;
+            }
+        }
+        assertEquals(geometry.getVertexCount(), next);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeometrySimplifierTest {
+
+    private static Geometry noisyPlane(int size, float amplitude) {
+        Random random = new Random(15);
+        Geometry geometry = Geometry.plane(size);
+        float[] positions = geometry.getPositionData();
+        for (int v = 0; v < geometry.getVertexCount(); v++) {
+            positions[v * 3 + 1] = random.nextFloat() * amplitude;
+        }
+        return geometry;
+    }
+
+    private static void assertValid(int[] indices, int vertexCount) {
+        assertEquals(0, indices.length % 3);
+        for (int i = 0; i < indices.length; i += 3) {
+            assertTrue(indices[i] >= 0 && indices[i] < vertexCount);
+            assertTrue(indices[i] != indices[i + 1] && indices[i + 1] != indices[i + 2] && indices[i] != indices[i + 2]);
+        }
+    }
+
+    @Test
+    public void testFlatPlaneWithoutError() throws Exception {
+        Geometry geometry = Geometry.plane(20);
+        int[] indices = geometry.getIndices();
+
+        LevelOfDetail lod = GeometrySimplifier.simplify(indices, geometry.getPositionData(), indices.length / 4, Float.MAX_VALUE);
+        assertValid(lod.getIndices(), geometry.getVertexCount());
+        assertTrue(lod.getIndices().length <= indices.length / 2);
+        assertEquals(0, lod.getError(), 1e-4f);
+    }
+
+    @Test
+    public void testErrorBound() throws Exception {
+        Geometry geometry = noisyPlane(30, 1);
+        int[] indices = geometry.getIndices();
+
+        // greater error allows more collapses
+        int previous = indices.length;
+        for (float target : new float[]{0.01f, 0.05f, 0.2f}) {
+            LevelOfDetail lod = GeometrySimplifier.simplify(indices, geometry.getPositionData(), 0, target);
+            assertValid(lod.getIndices(), geometry.getVertexCount());
+            assertTrue(lod.getError() + " > " + target, lod.getError() <= target);
+            assertTrue(lod.getIndices().length <= previous);
+            previous = lod.getIndices().length;
+        }
+        assertTrue(previous < indices.length);
+    }
+
+    @Test
+    public void testErrorGrowsWithReduction() throws Exception {
+        Geometry geometry = noisyPlane(30, 1);
+        int[] indices = geometry.getIndices();
+
+        float previous = 0;
+        for (int divisor = 2; divisor <= 16; divisor *= 2) {
+            LevelOfDetail lod = GeometrySimplifier.simplify(indices, geometry.getPositionData(), indices.length / 3 / divisor * 3, Float.MAX_VALUE);
+            assertTrue(lod.getError() >= previous);
+            previous = lod.getError();
+        }
+    }
+
+    @Test
+    public void testLodChain() throws Exception {
+        Geometry geometry = noisyPlane(40, 1);
+        LevelOfDetail[] lods = GeometrySimplifier.generateLods(geometry, 4, GeometrySimplifier.DEFAULT_RATIO);
+        assertTrue(lods.length > 1);
+
+        int previousLength = geometry.getIndices().length;
+        float previousError = 0;
+        for (LevelOfDetail lod : lods) {
+            assertValid(lod.getIndices(), geometry.getVertexCount());
+            assertTrue(lod.getIndices().length <= previousLength * 0.9f);
+            // errors of chained levels accumulate
+            assertTrue(lod.getError() >= previousError);
+            previousLength = lod.getIndices().length;
+            previousError = lod.getError();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.bf.geometry;
+
+import eu.matejkormuth.lpsim.Geometry;
+import eu.matejkormuth.lpsim.LevelOfDetail;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GeometryWelderTest {
+
+    private static Geometry geometry(float[] positions, int[] indices) {
+        Geometry geometry = new Geometry();
+        geometry.setPositionData(positions);
+        geometry.setIndices(indices);
+        return geometry;
+    }
+
+    @Test
+    public void testExactDuplicates() throws Exception {
+        // quad made of two triangles with split vertices
+        Geometry geometry = geometry(new float[]{
+                0, 0, 0, 1, 0, 0, 0, 1, 0,
+                1, 0, 0, 1, 1, 0, 0, 1, 0
+        }, new int[]{0, 1, 2, 3, 4, 5});
+
+        GeometryWelder.weld(geometry, 0);
+        assertEquals(4, geometry.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 1, 3, 2}, geometry.getIndices());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 1, 0}, geometry.getPositionData(), 0);
+    }
+
+    @Test
+    public void testZeroEpsilonMergesOnlyExact() throws Exception {
+        Geometry geometry = geometry(new float[]{0, 0, 0, Math.nextUp(0f), 0, 0, -0f, 0, 0}, new int[]{0, 1, 2});
+        int[] remap = new int[3];
+        assertEquals(2, GeometryWelder.buildRemap(geometry, 0, remap));
+        assertArrayEquals(new int[]{0, 1, 0}, remap); // -0 and +0 are the same position
+    }
+
+    @Test
+    public void testEpsilon() throws Exception {
+        float epsilon = 0.01f;
+        Geometry geometry = geometry(new float[]{
+                0, 0, 0,
+                0.009f, 0, 0, // within epsilon
+                0.02f, 0, 0, // outside epsilon of the first vertex
+                -0.005f, 0.005f, -0.005f // within epsilon on all axes
+        }, new int[]{0, 1, 2});
+
+        int[] remap = new int[4];
+        assertEquals(2, GeometryWelder.buildRemap(geometry, epsilon, remap));
+        assertArrayEquals(new int[]{0, 0, 1, 0}, remap);
+    }
+
+    @Test
+    public void testEpsilonAcrossCellBoundary() throws Exception {
+        // cell size is 2 * epsilon, vertices on both sides of cell boundary must still merge
+        float epsilon = 0.5f;
+        Geometry geometry = geometry(new float[]{0.99f, 0.99f, 0.99f, 1.01f, 1.01f, 1.01f}, new int[0]);
+        int[] remap = new int[2];
+        assertEquals(1, GeometryWelder.buildRemap(geometry, epsilon, remap));
+    }
+
+    @Test(timeout = 5000)
+    public void testLargeCoordinates() throws Exception {
+        // cells of these coordinates do not fit into int with default epsilon, they must not
+        // end up in one cell (quadratic chain walk) and must still weld correctly
+        int count = 50000;
+        float[] positions = new float[count * 2 * 3];
+        for (int v = 0; v < count; v++) {
+            float x = (v % 2 == 0 ? 1 : -1) * (1e6f + v);
+            positions[v * 3] = x;
+            positions[v * 3 + 1] = 3e7f;
+            positions[v * 3 + 2] = -1e9f;
+        }
+        System.arraycopy(positions, 0, positions, count * 3, count * 3);
+
+        int[] remap = new int[count * 2];
+        assertEquals(count, GeometryWelder.buildRemap(geometry(positions, new int[0]), GeometryWelder.DEFAULT_EPSILON, remap));
+        for (int v = 0; v < count; v++) {
+            assertEquals(v, remap[v]);
+            assertEquals(v, remap[count + v]);
+        }
+    }
+
+    @Test
+    public void testAttributesMustMatch() throws Exception {
+        Geometry geometry = geometry(new float[]{0, 0, 0, 0, 0, 0, 0, 0, 0}, new int[0]);
+        geometry.setTexCoordData(new float[]{0, 0, 0, 0, 1, 0}); // UV seam
+        int[] remap = new int[3];
+        assertEquals(2, GeometryWelder.buildRemap(geometry, 0.1f, remap));
+        assertArrayEquals(new int[]{0, 0, 1}, remap);
+    }
+
+    @Test
+    public void testNaNNeverMerges() throws Exception {
+        Geometry geometry = geometry(new float[]{Float.NaN, 0, 0, Float.NaN, 0, 0}, new int[0]);
+        assertEquals(2, GeometryWelder.buildRemap(geometry, 0, new int[2]));
+        assertEquals(2, GeometryWelder.buildRemap(geometry, 1, new int[2]));
+    }
+
+    @Test
+    public void testHashCollisions() throws Exception {
+        // many distinct cells in small table, all have to survive linear probing
+        int count = 4096;
+        float[] positions = new float[count * 3];
+        for (int v = 0; v < count; v++) {
+            positions[v * 3] = v % 16;
+            positions[v * 3 + 1] = (v / 16) % 16;
+            positions[v * 3 + 2] = v / 256;
+        }
+
+        // each vertex twice, second copy slightly moved
+        float[] doubled = new float[count * 6];
+        System.arraycopy(positions, 0, doubled, 0, positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            doubled[positions.length + i] = positions[i] + 0.001f;
+        }
+
+        int[] remap = new int[count * 2];
+        assertEquals(count, GeometryWelder.buildRemap(geometry(doubled, new int[0]), 0.01f, remap));
+        for (int v = 0; v < count; v++) {
+            assertEquals(v, remap[v]);
+            assertEquals(v, remap[count + v]);
+        }
+    }
+
+    @Test
+    public void testMatchesBruteForce() throws Exception {
+        // vertices on coarse lattice, so each pair is either well within or well outside epsilon
+        Random random = new Random(19);
+        int count = 2000;
+        float epsilon = 0.05f;
+        float[] positions = new float[count * 3];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextInt(8) * 0.5f - 2 + (random.nextFloat() - 0.5f) * 0.02f;
+        }
+
+        int[] remap = new int[count];
+        int vertices = GeometryWelder.buildRemap(geometry(positions, new int[0]), epsilon, remap);
+
+        int[] expected = new int[count];
+        int unique = 0;
+        for (int v = 0; v < count; v++) {
+            expected[v] = -1;
+            for (int u = 0; u < v && expected[v] == -1; u++) {
+                if (Math.abs(positions[u * 3] - positions[v * 3]) <= epsilon
+                        && Math.abs(positions[u * 3 + 1] - positions[v * 3 + 1]) <= epsilon
+                        && Math.abs(positions[u * 3 + 2] - positions[v * 3 + 2]) <= epsilon) {
+                    expected[v] = expected[u];
+                }
+            }
+            if (expected[v] == -1) {
+                expected[v] = unique++;
+            }
+        }
+
+        assertEquals(unique, vertices);
+        assertArrayEquals(expected, remap);
+    }
+
+    @Test
+    public void testDegenerateTrianglesRemoved() throws Exception {
+        Geometry geometry = geometry(new float[]{
+                0, 0, 0, 1, 0, 0, 0, 1, 0,
+                1, 0, 0, 1, 0.001f, 0, 1, 1, 0
+        }, new int[]{0, 1, 2, 1, 3, 4, 1, 4, 5});
+        geometry.setLods(new LevelOfDetail[]{new LevelOfDetail(new int[]{1, 3, 4}, 1)});
+
+        // 3 and 4 are welded to 1, so the second and the third triangle collapse
+        GeometryWelder.weld(geometry, 0.01f);
+        assertEquals(4, geometry.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2}, geometry.getIndices());
+        assertEquals(0, geometry.getLods()[0].getIndices().length);
+    }
+
+    @Test
+    public void testDegenerateTrianglesDropMeshlets() throws Exception {
+        Geometry geometry = geometry(new float[]{0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 1, 0}, new int[]{0, 1, 2, 0, 1, 3});
+        MeshletBuilder.build(geometry);
+
+        GeometryWelder.weld(geometry, 0);
+        assertEquals(3, geometry.getIndices().length);
+        assertNull(geometry.getMeshlets());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeEpsilon() throws Exception {
+        GeometryWelder.weld(geometry(new float[3], new int[0]), -1);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * lpsim - 
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.lpsim;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RangeAllocatorTest {
+
+    @Test
+    public void testAllocate() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        assertEquals(0, allocator.allocate(40));
+        assertEquals(40, allocator.allocate(60));
+        assertEquals(-1, allocator.allocate(1));
+        assertEquals(100, allocator.getUsed());
+        assertEquals(0, allocator.getFreeRangeCount());
+    }
+
+    @Test
+    public void testFreeCoalesces() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(20);
+        int c = allocator.allocate(30);
+        allocator.free(a);
+        allocator.free(c);
+        assertEquals(2, allocator.getFreeRangeCount());
+        assertEquals(70, allocator.getLargestFree());
+
+        allocator.free(b);
+        assertEquals(1, allocator.getFreeRangeCount());
+        assertEquals(100, allocator.getLargestFree());
+        assertEquals(0, allocator.getUsed());
+    }
+
+    @Test
+    public void testFirstFit() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        int a = allocator.allocate(10);
+        allocator.allocate(10);
+        allocator.free(a);
+        assertEquals(0, allocator.allocate(5));
+        assertEquals(5, allocator.allocate(5));
+        assertEquals(20, allocator.allocate(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFreeUnknown() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        allocator.allocate(10);
+        allocator.free(5);
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        allocator.allocate(90);
+        assertEquals(-1, allocator.allocate(20));
+
+        allocator.grow(200);
+        assertEquals(1, allocator.getFreeRangeCount());
+        assertEquals(90, allocator.allocate(20));
+        assertEquals(200, allocator.getCapacity());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        RangeAllocator allocator = new RangeAllocator(100);
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(20);
+        int c = allocator.allocate(30);
+        allocator.free(a);
+
+        List<RangeAllocator.Move> moves = allocator.compact();
+        assertEquals(2, moves.size());
+        assertEquals(b, moves.get(0).getFrom());
+        assertEquals(0, moves.get(0).getTo());
+        assertEquals(c, moves.get(1).getFrom());
+        assertEquals(20, moves.get(1).getTo());
+        assertEquals(30, allocator.sizeOf(20));
+        assertEquals(1, allocator.getFreeRangeCount());
+        assertEquals(50, allocator.getLargestFree());
+        assertEquals(0, allocator.compact().size());
+    }
+}